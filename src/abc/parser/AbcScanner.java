@@ -0,0 +1,331 @@
+package abc.parser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import abc.sound.*;
+import lib6005.parser.UnableToParseException;
+
+/**
+ * Hand-written parser for whole abc files, in the language of abcNotation.g. A single scan of the file fills in the
+ * Header and hands the elements of every line of the body straight to a MusicScanner for its voice, so the body is
+ * neither turned into a ParseTree nor copied into per-voice strings and parsed a second time. The Header and Music
+ * it builds are equal to the ones built by Music.parseHeader followed by Music.parseMusic.
+ */
+public class AbcScanner extends TextScanner {
+
+    private final HeaderBuilder header = new HeaderBuilder();
+    private final List<String> headerVoices = new ArrayList<>();
+    private final Map<String, MusicScanner> voiceScanners = new HashMap<>();
+    private String currentVoice = "";
+    private int ticksPerBeat = 0;
+
+    // Abstraction function:
+    //  represents a parse of the abc file text in which text[0..pos) has been read. The header fields read so far
+    //  are in header, except for the voices declared in the header, which are in headerVoices in the order they
+    //  were declared. voiceScanners maps every voice with lines in the body read so far to the scanner that
+    //  builds its music, and currentVoice is the voice the next line of the body belongs to. Once the header has
+    //  been read, the music of every voice is in ticks of which a beat lasts ticksPerBeat.
+    // Rep invariant:
+    //  0 <= pos <= text.length()
+    //  none of the fields are null
+
+    private AbcScanner(String text) {
+        super(text);
+        checkRep();
+    }
+
+    @Override
+    protected void checkRep() {
+        super.checkRep();
+        assert currentVoice != null;
+    }
+
+    /**
+     * Parses an abc file in a single pass
+     * @param abcFile abc file; must match abcNotation.g
+     * @return the header and music of abcFile
+     * @throws UnableToParseException if abcFile doesn't match abcNotation.g
+     * @throws IOException if abcFile can't be read
+     */
+    public static Piece parse(File abcFile) throws UnableToParseException, IOException {
+        // read the file the way parserlib does, so that every line ends in "\n"
+        StringBuilder abcText = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new FileReader(abcFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                abcText.append(line).append('\n');
+            }
+        }
+        return parse(abcText.toString());
+    }
+
+    /**
+     * Parses the text of an abc file in a single pass
+     * @param abcText text of an abc file; must match abcNotation.g
+     * @return the header and music of abcText
+     * @throws UnableToParseException if abcText doesn't match abcNotation.g
+     */
+    public static Piece parse(String abcText) throws UnableToParseException {
+        AbcScanner scanner = new AbcScanner(abcText);
+        scanner.root();
+        return scanner.build();
+    }
+
+    /**
+     * @return the piece read, with voices nested in the same order as Music.parseMusic nests them
+     */
+    private Piece build() {
+        for (String voice : headerVoices) {
+            header.voice(voice);
+        }
+        Header builtHeader = header.build(ticksPerBeat);
+        Music music = Rest.of(0);
+        for (String voice : builtHeader.getVoices().keySet()) {
+            music = new MultipleVoices(voiceScanners.get(voice).build(), music);
+        }
+        return new Piece(builtHeader, music);
+    }
+
+    // root ::= header music;
+    private void root() throws UnableToParseException {
+        header();
+        // the voices are built as the body is read, so its resolution is found first, in a quick scan of its own
+        ticksPerBeat = MusicScanner.ticksPerBeat(header.getLength(), header.getTempoBaseNote(), text, pos);
+        music();
+    }
+
+    // Header. Every production of the header is inside @skip WHITESPACE, so whitespace may appear between any two of
+    // its terminals, and the whitespace at the start of the line after each field belongs to that field.
+
+    // header ::= number comment* title others* keyfield;
+    private void header() throws UnableToParseException {
+        skipWhitespace();
+        number();
+        while (peek() == '%') {
+            comment();
+            skipWhitespace();
+        }
+        title();
+        while (others()) {
+            checkRep();
+        }
+        keyfield();
+    }
+
+    // number ::= "X:" DIGIT+ eol;
+    private void number() throws UnableToParseException {
+        expect("X:");
+        skipWhitespace();
+        if (!isDigit(peek())) {
+            throw error("a digit");
+        }
+        while (isDigit(peek())) {
+            header.index(take(1));
+            skipWhitespace();
+        }
+        eol();
+        skipWhitespace();
+    }
+
+    // title ::= "T:" text eol;
+    private void title() throws UnableToParseException {
+        expect("T:");
+        skipWhitespace();
+        header.title(readText());
+        eol();
+        skipWhitespace();
+    }
+
+    // others ::= composer | defaultlength | meterfield | tempofield | voice | comment;
+    /**
+     * @return true iff one of the others was read, false if there is none at pos
+     */
+    private boolean others() throws UnableToParseException {
+        if (text.startsWith("C:", pos)) {
+            // composer ::= "C:" text eol;
+            pos += 2;
+            skipWhitespace();
+            header.composer(readText());
+        } else if (text.startsWith("L:", pos)) {
+            // defaultlength ::= "L:"  notelengthstrict eol;
+            pos += 2;
+            skipWhitespace();
+            header.length(notelengthstrict());
+            skipWhitespace();
+        } else if (text.startsWith("M:", pos)) {
+            // meterfield ::= "M:" meter eol;
+            pos += 2;
+            skipWhitespace();
+            header.meter(meter());
+        } else if (text.startsWith("Q:", pos)) {
+            // tempofield ::= "Q:" tempo eol;
+            pos += 2;
+            skipWhitespace();
+            header.tempo(tempo());
+        } else if (text.startsWith("V:", pos)) {
+            // declared voices only come into play once the body has been read, see build()
+            headerVoices.add(voiceField());
+            return true;
+        } else if (peek() == '%') {
+            comment();
+            skipWhitespace();
+            return true;
+        } else {
+            return false;
+        }
+        eol();
+        skipWhitespace();
+        return true;
+    }
+
+    // keyfield ::= "K:" key eol;
+    // key ::= keynote modeminor?;
+    // keynote ::= basenote keyaccidental?;
+    // keyaccidental ::= "#" | "b";
+    // modeminor ::= "m";
+    private void keyfield() throws UnableToParseException {
+        expect("K:");
+        skipWhitespace();
+        int start = pos;
+        if (!isBaseNote(peek())) {
+            throw error("a key");
+        }
+        pos++;
+        skipWhitespace();
+        if (peek() == '#' || peek() == 'b') {
+            pos++;
+            skipWhitespace();
+        }
+        if (peek() == 'm') {
+            pos++;
+            skipWhitespace();
+        }
+        // like parserlib, the key includes the whitespace that follows it
+        header.key(text.substring(start, pos));
+        eol();
+        skipWhitespace();
+    }
+
+    // meter ::= "C" | "C|" | meterfraction;
+    /**
+     * @return the meter as written, including whitespace that follows it
+     */
+    private String meter() throws UnableToParseException {
+        int start = pos;
+        if (peek() == 'C') {
+            pos += (peek(1) == '|') ? 2 : 1;
+        } else {
+            meterfraction();
+        }
+        skipWhitespace();
+        return text.substring(start, pos);
+    }
+
+    // tempo ::= meterfraction "=" DIGIT+;
+    /**
+     * @return the tempo as written, including whitespace that follows it
+     */
+    private String tempo() throws UnableToParseException {
+        int start = pos;
+        meterfraction();
+        expect("=");
+        skipWhitespace();
+        digitsSkippingWhitespace();
+        return text.substring(start, pos);
+    }
+
+    // meterfraction ::= DIGIT+ "/" DIGIT+;
+    private void meterfraction() throws UnableToParseException {
+        digitsSkippingWhitespace();
+        expect("/");
+        skipWhitespace();
+        digitsSkippingWhitespace();
+    }
+
+    /**
+     * Reads DIGIT+ inside @skip WHITESPACE, i.e. digits with any whitespace between and after them
+     */
+    private void digitsSkippingWhitespace() throws UnableToParseException {
+        if (!isDigit(peek())) {
+            throw error("a digit");
+        }
+        while (isDigit(peek())) {
+            pos++;
+            skipWhitespace();
+        }
+    }
+
+    // notelengthstrict ::= DIGIT+ "/" DIGIT+;   (outside @skip, so no whitespace inside)
+    private String notelengthstrict() throws UnableToParseException {
+        int start = pos;
+        if (!isDigit(peek())) {
+            throw error("a digit");
+        }
+        while (isDigit(peek())) {
+            pos++;
+        }
+        expect("/");
+        if (!isDigit(peek())) {
+            throw error("a digit");
+        }
+        while (isDigit(peek())) {
+            pos++;
+        }
+        return text.substring(start, pos);
+    }
+
+    // Music
+
+    // music ::= line+;
+    private void music() throws UnableToParseException {
+        do {
+            line();
+            checkRep();
+        } while (pos < text.length());
+    }
+
+    // line ::= element* NEWLINE | midtunefield | comment;
+    private void line() throws UnableToParseException {
+        int start = pos;
+        if (peek() == '%') {
+            comment();
+            addLine(start);
+        } else if (atVoiceField()) {
+            // midtunefield ::= voice;
+            currentVoice = voiceField();
+            header.midtuneVoice(currentVoice);
+        } else {
+            pos = voiceScanner().elementLine(pos);
+            addLine(start);
+        }
+    }
+
+    /**
+     * Adds the line that started at start and ends at pos to the current voice
+     */
+    private void addLine(int start) {
+        voiceScanner();
+        header.line(text.substring(start, pos));
+    }
+
+    /**
+     * @return the scanner that builds the music of the current voice
+     */
+    private MusicScanner voiceScanner() {
+        MusicScanner scanner = voiceScanners.get(currentVoice);
+        if (scanner == null) {
+            VoiceBuilder voice = new VoiceBuilder(header.getKey(), header.getLength(), header.getTempoBaseNote(),
+                    ticksPerBeat);
+            scanner = new MusicScanner(text, voice, false);
+            voiceScanners.put(currentVoice, scanner);
+        }
+        return scanner;
+    }
+}
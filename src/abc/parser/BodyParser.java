@@ -0,0 +1,40 @@
+package abc.parser;
+
+import abc.sound.*;
+import lib6005.parser.UnableToParseException;
+
+/**
+ * The ways the body of a voice can be parsed into Music. All of them accept the language of musicNotation.g and
+ * build equal Music for the same voice.
+ */
+public enum BodyParser {
+
+    /**
+     * parserlib parses the voice into a ParseTree with musicNotation.g, which MusicParser.buildMusic then walks
+     */
+    PARSE_TREE {
+        @Override
+        public Music parse(String voiceText, Header header) throws UnableToParseException {
+            return MusicParser.buildMusic(Grammars.musicParser().parse(voiceText), header);
+        }
+    },
+
+    /**
+     * MusicScanner reads the voice in a single pass and builds the Music directly, without a ParseTree
+     */
+    SCANNER {
+        @Override
+        public Music parse(String voiceText, Header header) throws UnableToParseException {
+            return MusicScanner.buildMusic(voiceText, header);
+        }
+    };
+
+    /**
+     * Parses the body of a single voice
+     * @param voiceText body of the voice, as the lines of Header.getVoices() joined together
+     * @param header header of the piece the voice belongs to
+     * @return Music represented by voiceText
+     * @throws UnableToParseException if voiceText doesn't match musicNotation.g
+     */
+    public abstract Music parse(String voiceText, Header header) throws UnableToParseException;
+}
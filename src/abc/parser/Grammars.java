@@ -0,0 +1,68 @@
+package abc.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import lib6005.parser.GrammarCompiler;
+import lib6005.parser.Parser;
+import lib6005.parser.UnableToParseException;
+
+/**
+ * Registry of the compiled abc grammars. Each grammar is loaded from the classpath and compiled at most once per JVM;
+ * the resulting parsers hold no per-parse state and are shared by all callers, including concurrent ones.
+ */
+public class Grammars {
+
+    private static final String ABC_NOTATION_GRAMMAR = "abcNotation.g";
+    private static final String MUSIC_NOTATION_GRAMMAR = "musicNotation.g";
+
+    // Thread safety argument:
+    //  each parser is created by the class initializer of its holder class, which the JVM runs exactly once and
+    //  publishes safely to every thread that reads the holder's field. Parser.parse keeps its state in a fresh
+    //  ParserState per call and never mutates the compiled grammar, so sharing one instance is safe.
+
+    private static class AbcParserHolder {
+        private static final Parser<AbcGrammar> PARSER = compile(ABC_NOTATION_GRAMMAR, AbcGrammar.ROOT);
+    }
+
+    private static class MusicParserHolder {
+        private static final Parser<MusicGrammar> PARSER = compile(MUSIC_NOTATION_GRAMMAR, MusicGrammar.ROOT);
+    }
+
+    private Grammars() {
+        throw new AssertionError("Grammars should not be instantiated");
+    }
+
+    /**
+     * @return the shared parser for a whole abc file (header followed by body), rooted at AbcGrammar.ROOT
+     */
+    public static Parser<AbcGrammar> abcParser() {
+        return AbcParserHolder.PARSER;
+    }
+
+    /**
+     * @return the shared parser for the body of a single voice, rooted at MusicGrammar.ROOT
+     */
+    public static Parser<MusicGrammar> musicParser() {
+        return MusicParserHolder.PARSER;
+    }
+
+    /**
+     * Compiles a grammar file found next to this class on the classpath
+     * @param grammarName name of the grammar resource, relative to the abc.parser package
+     * @param root root nonterminal of the grammar
+     * @return parser for the grammar
+     */
+    private static <Sym extends Enum<Sym>> Parser<Sym> compile(String grammarName, Sym root) {
+        try (InputStream grammar = Grammars.class.getResourceAsStream(grammarName)) {
+            if (grammar == null) {
+                throw new IllegalStateException("Could not find grammar " + grammarName + " on the classpath");
+            }
+            return GrammarCompiler.compile(grammar, root);
+        } catch (UnableToParseException ex) {
+            throw new RuntimeException("Grammar " + grammarName + " could not be compiled, this shouldn't happen: ", ex);
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not open grammar file, this shouldn't happen: ", ex);
+        }
+    }
+}
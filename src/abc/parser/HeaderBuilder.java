@@ -0,0 +1,197 @@
+package abc.parser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import abc.sound.*;
+
+/**
+ * Mutable builder that assembles a Header from the fields and body lines of an abc file. Defaults, and the way the
+ * meter and tempo fields affect the default length, are applied here, so every parser of abc files (the ParseTree
+ * walk in HeaderParser and the hand-written AbcScanner) produces the same Header.
+ */
+class HeaderBuilder {
+
+    private String index = "";
+    private String title = "";
+    private String key = "";
+    private String composer = Music.DEFAULT_COMPOSER;
+    private String length = Music.DEFAULT_LENGTH;
+    private String meter = Music.DEFAULT_METER;
+    private String currentVoice = "";
+    private int bpm = Music.DEFAULT_TEMPO_BPM;
+    private String tempoBaseNote = length;
+    private final Map<String, List<String>> voices = new HashMap<>();
+
+    private boolean lengthDefined = false;
+    private boolean tempoDefined = false;
+
+    // Abstraction function:
+    //  represents the header read so far, with voices mapping every voice to the body lines read for it, and
+    //  currentVoice the voice that body lines are currently added to ("" before any voice field in the body)
+
+    // Rep invariant:
+    //  none of the object fields are null
+    //  voices.containsKey(currentVoice), until build() is called
+
+    HeaderBuilder() {
+        voices.put(currentVoice, new ArrayList<>());
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert index != null;
+        assert title != null;
+        assert key != null;
+        assert composer != null;
+        assert length != null;
+        assert meter != null;
+        assert tempoBaseNote != null;
+        assert voices != null;
+    }
+
+    /**
+     * @param digits digits to append to the index, from the X: field
+     */
+    void index(String digits) {
+        index = index + digits;
+    }
+
+    /**
+     * @param text text of the T: field
+     */
+    void title(String text) {
+        title = text;
+    }
+
+    /**
+     * @param text text of the C: field
+     */
+    void composer(String text) {
+        composer = text;
+    }
+
+    /**
+     * @param noteLength note length of the L: field, e.g. "1/8"
+     */
+    void length(String noteLength) {
+        length = noteLength;
+        lengthDefined = true;
+        if (!tempoDefined) {
+            tempoBaseNote = length;
+        }
+    }
+
+    /**
+     * @param newMeter meter of the M: field, "C", "C|" or a fraction; may be surrounded by whitespace
+     */
+    void meter(String newMeter) {
+        newMeter = newMeter.trim();
+        if (!(newMeter.equals("C") || newMeter.equals("C|"))) {
+            meter = newMeter;
+        } else if (newMeter.equals("C")) {
+            meter = "4/4";
+        } else {
+            meter = "2/2";
+        }
+        if (!lengthDefined) {
+            String[] splitMeter = meter.split("/");
+            if (Double.parseDouble(splitMeter[0])/Double.parseDouble(splitMeter[1]) < 0.75) {
+                length = "1/16";
+            } else {
+                length = "1/8";
+            }
+        }
+    }
+
+    /**
+     * @param tempo tempo of the Q: field, e.g. "1/4=120"
+     */
+    void tempo(String tempo) {
+        tempoDefined = true;
+        String[] splitTempo = tempo.split("=");
+        tempoBaseNote = splitTempo[0].trim();
+        bpm = Integer.parseInt(splitTempo[1].trim());
+    }
+
+    /**
+     * @param keyField key of the K: field, e.g. "F#m"
+     */
+    void key(String keyField) {
+        key = keyField;
+    }
+
+    /**
+     * Declares a voice in the header, with a V: field
+     * @param voice name of the voice
+     */
+    void voice(String voice) {
+        if (!voices.containsKey(voice)) {
+            voices.put(voice, new ArrayList<>());
+            currentVoice = voice;
+        }
+    }
+
+    /**
+     * Switches voice in the body, with a V: field
+     * @param voice name of the voice the following lines of the body belong to
+     */
+    void midtuneVoice(String voice) {
+        currentVoice = voice;
+        if (!voices.containsKey(voice)) {
+            voices.put(voice, new ArrayList<>());
+        }
+    }
+
+    /**
+     * Adds a line of the body to the current voice
+     * @param line the line, including its new line
+     */
+    void line(String line) {
+        voices.get(currentVoice).add(line);
+    }
+
+    /** @return the key read so far */
+    String getKey() {
+        return key;
+    }
+
+    /** @return the default length read so far */
+    String getLength() {
+        return length;
+    }
+
+    /** @return the tempo base note read so far */
+    String getTempoBaseNote() {
+        return tempoBaseNote;
+    }
+
+    /**
+     * Builds the header, finding its resolution by reading the lines added; no more fields or lines may be added
+     * afterwards
+     * @return the header of every field and line added so far
+     * @throws IllegalArgumentException if no resolution that fits in an int lets every note last a whole number of
+     *         ticks
+     */
+    Header build() {
+        StringBuilder body = new StringBuilder();
+        for (List<String> lines : voices.values()) {
+            lines.forEach(body::append);
+        }
+        return build(MusicScanner.ticksPerBeat(length, tempoBaseNote, body.toString()));
+    }
+
+    /**
+     * Builds the header; no more fields or lines may be added afterwards
+     * @param ticksPerBeat resolution of the piece, as found by MusicScanner.ticksPerBeat for the lines added
+     * @return the header of every field and line added so far
+     */
+    Header build(int ticksPerBeat) {
+        if (voices.containsKey("") && voices.get("").isEmpty()) {
+            voices.remove("");
+        }
+        return new Header(title, index, key, composer, meter, length, tempoBaseNote, bpm, voices, ticksPerBeat);
+    }
+}
@@ -1,10 +1,7 @@
 package abc.parser;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Queue;
 
 import abc.sound.*;
@@ -15,20 +12,7 @@ public class HeaderParser {
      public static Header buildHeader(ParseTree<AbcGrammar> tree) {        
          assert tree.getName() == AbcGrammar.ROOT;
          
-         String index = "";
-         String title = "";
-         String key = "";
-         String composer = Music.DEFAULT_COMPOSER;
-         String length = Music.DEFAULT_LENGTH;
-         String meter = Music.DEFAULT_METER;
-         String currentVoice = "";
-         int bpm = Music.DEFAULT_TEMPO_BPM;
-         String tempoBaseNote = length;
-         Map<String, List<String>> voices = new HashMap<>();
-         voices.put(currentVoice, new ArrayList<>());
-         
-         boolean lengthDefined = false;
-         boolean tempoDefined = false;
+         HeaderBuilder header = new HeaderBuilder();
          
          Queue<ParseTree<AbcGrammar>> queue = new LinkedList<>(tree.children());
          while (queue.size() > 0) {
@@ -62,92 +46,60 @@ public class HeaderParser {
                  case NUMBER: {
                      List<ParseTree<AbcGrammar>> digits = currentChild.childrenByName(AbcGrammar.DIGIT);
                      for (ParseTree<AbcGrammar> digit : digits) {
-                         index = index + digit.getContents().toString();
+                         header.index(digit.getContents().toString());
                      }
                      break;                    
                  }
                  
                  case TITLE: {
                      String text = currentChild.childrenByName(AbcGrammar.TEXT).get(0).getContents();
-                     title = text;
+                     header.title(text);
                      break;
                  }
                  
                  case COMPOSER: {
                      String text = currentChild.childrenByName(AbcGrammar.TEXT).get(0).getContents();
-                     composer = text;
+                     header.composer(text);
                      break;                    
                  }
                  
                  case DEFAULTLENGTH: {
-                     length = currentChild.childrenByName(AbcGrammar.NOTELENGTHSTRICT).get(0).getContents();
-                     lengthDefined = true;
-                     if (!tempoDefined) {
-                         tempoBaseNote = length;
-                     }
+                     header.length(currentChild.childrenByName(AbcGrammar.NOTELENGTHSTRICT).get(0).getContents());
                      break;
                  }
                  
                  case METERFIELD: {
-                     String newMeter = currentChild.childrenByName(AbcGrammar.METER).get(0).getContents().trim();
-                     if (!(newMeter.equals("C") || newMeter.equals("C|"))) {
-                         meter = newMeter;
-                     } else if (newMeter.equals("C")) {
-                         meter = "4/4";
-                     } else {
-                         meter = "2/2";
-                     }
-                     if (!lengthDefined) {
-                         String[] splitMeter = meter.split("/");
-                         if (Double.parseDouble(splitMeter[0])/Double.parseDouble(splitMeter[1]) < 0.75) {
-                             length = "1/16";
-                         } else {
-                             length = "1/8";
-                         }
-                     }
+                     header.meter(currentChild.childrenByName(AbcGrammar.METER).get(0).getContents());
                      break; 
                  }
                  
                  case TEMPOFIELD: {
-                     tempoDefined = true;
                      ParseTree<AbcGrammar> tempoNode = currentChild.childrenByName(AbcGrammar.TEMPO).get(0);
-                     String tempo = tempoNode.getContents();
-                     String[] splitTempo = tempo.split("=");
-                     tempoBaseNote = splitTempo[0].trim();
-                     bpm = Integer.parseInt(splitTempo[1].trim());
+                     header.tempo(tempoNode.getContents());
                      break;                     
                  }
                  
                  case VOICE: {
                      String voice = currentChild.childrenByName(AbcGrammar.TEXT).get(0).getContents().trim();
-                     if (!voices.containsKey(voice)) {
-                         voices.put(voice, new ArrayList<>());
-                         currentVoice = voice;   
-                     }
+                     header.voice(voice);
                      break;
                  }
                  
                  case LINE: {
                      List<ParseTree<AbcGrammar>> midtunefields = currentChild.childrenByName(AbcGrammar.MIDTUNEFIELD);
-                     //List<ParseTree<AbcGrammar>> elements = currentChild.childrenByName(AbcGrammar.ELEMENT);
                      if (midtunefields.isEmpty()) {
-                         List<String> voiceLines = new ArrayList<>(voices.get(currentVoice));
-                         voiceLines.add(currentChild.getContents());
-                         voices.put(currentVoice, voiceLines);
+                         header.line(currentChild.getContents());
                      } else {
                          String voice = midtunefields.get(0).childrenByName(AbcGrammar.VOICE).get(0).childrenByName(AbcGrammar.TEXT).get(0)
                                          .getContents().trim();
-                         currentVoice = voice;
-                         if (!voices.containsKey(voice)) {
-                             voices.put(voice, new ArrayList<>());
-                         }
+                         header.midtuneVoice(voice);
                      }
                      break;
                  }
                  
                  case KEYFIELD: {
                      ParseTree<AbcGrammar> keyNode = currentChild.childrenByName(AbcGrammar.KEY).get(0);
-                     key = keyNode.getContents();
+                     header.key(keyNode.getContents());
                      break;
                  }
                  
@@ -157,9 +109,6 @@ public class HeaderParser {
              
              }
          }
-         if (voices.get("").isEmpty()) {
-             voices.remove("");
-         }
-         return new Header(title, index, key, composer, meter, length, tempoBaseNote, bpm, voices);
+         return header.build();
      } 
-}
\ No newline at end of file
+}
@@ -0,0 +1,177 @@
+package abc.parser;
+
+import java.util.Arrays;
+
+/**
+ * Immutable key signature: how many semitones every note letter is raised (or lowered) by the key, unless an
+ * accidental says otherwise. A key is resolved once, from the K: field of a piece, into a table of the seven
+ * letters, so applying it to a note is a single array lookup.
+ * Keys are resolved around the circle of fifths, so every key is covered, with double sharps and double flats
+ * for keys past seven of them, and in any mode.
+ */
+final class KeySignature {
+
+    private static final int LETTERS = 7;
+
+    // letters sharpened, and flattened, as a key has more of them
+    private static final String SHARPS = "FCGDAEB";
+    private static final String FLATS = "BEADGCF";
+
+    // place on the circle of fifths of the major key of every letter, from A
+    private static final int[] MAJOR_FIFTHS = { 3, 5, 0, 2, 4, -1, 1 };
+
+    // fifths every mode is away from the major key of the same tonic, by the first three letters of its name
+    private static final String[] MODES = { "maj", "ion", "mix", "dor", "aeo", "min", "phr", "loc", "lyd" };
+    private static final int[] MODE_FIFTHS = { 0, 0, -1, -2, -3, -3, -4, -5, 1 };
+    private static final int MINOR_FIFTHS = -3;
+
+    private final int[] offsets;
+
+    // Abstraction function:
+    //  represents the key in which a note of letter A + i, in either case, is raised by offsets[i] semitones,
+    //  lowered if offsets[i] is negative
+    // Rep invariant:
+    //  offsets.length == 7
+    //  every offset has the same sign, and offsets differ by at most 1
+    // Safety from rep exposure:
+    //  offsets is private and never returned; the constructor is given an array no one else keeps
+
+    private KeySignature(int[] offsets) {
+        this.offsets = offsets;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert offsets.length == LETTERS;
+        int min = Arrays.stream(offsets).min().getAsInt();
+        int max = Arrays.stream(offsets).max().getAsInt();
+        assert min >= 0 || max <= 0;
+        assert max - min <= 1;
+    }
+
+    /**
+     * @param key key as written in the K: field of a piece: a letter, optionally followed by '#' or 'b', then
+     *            optionally by "m" for minor or the name of a mode, e.g. "F#m", "Bb", "Ddor" or "E Phrygian";
+     *            letter and mode in either case, with any whitespace around the letter, the '#' or 'b' and
+     *            the mode
+     * @return the key signature of key
+     * @throws IllegalArgumentException if key is not a key
+     */
+    static KeySignature of(String key) {
+        int pos = skipWhitespace(key, 0);
+        if (pos == key.length() || letterIndex(key.charAt(pos)) < 0) {
+            throw new IllegalArgumentException("expected a key, got \"" + key + "\"");
+        }
+        int fifths = MAJOR_FIFTHS[letterIndex(key.charAt(pos))];
+        // the grammar skips whitespace between the letter, the accidental and the mode, e.g. "F # m"
+        pos = skipWhitespace(key, pos + 1);
+        if (pos < key.length() && key.charAt(pos) == '#') {
+            fifths += LETTERS;
+            pos = skipWhitespace(key, pos + 1);
+        } else if (pos < key.length() && key.charAt(pos) == 'b') {
+            fifths -= LETTERS;
+            pos = skipWhitespace(key, pos + 1);
+        }
+        fifths += modeFifths(key, key.substring(pos).trim());
+
+        int[] offsets = new int[LETTERS];
+        for (int i = 0; i < fifths; i++) {
+            offsets[letterIndex(SHARPS.charAt(i % LETTERS))]++;
+        }
+        for (int i = 0; i < -fifths; i++) {
+            offsets[letterIndex(FLATS.charAt(i % LETTERS))]--;
+        }
+        return new KeySignature(offsets);
+    }
+
+    /**
+     * @param key the whole key, for the message of an exception
+     * @param mode the mode of key, with no whitespace around it; empty for major
+     * @return fifths mode is away from the major key of the same tonic
+     */
+    private static int modeFifths(String key, String mode) {
+        if (mode.isEmpty()) {
+            return 0;
+        }
+        if (mode.equalsIgnoreCase("m")) {
+            return MINOR_FIFTHS;
+        }
+        if (mode.length() >= 3) {
+            String prefix = mode.substring(0, 3);
+            for (int i = 0; i < MODES.length; i++) {
+                if (MODES[i].equalsIgnoreCase(prefix)) {
+                    return MODE_FIFTHS[i];
+                }
+            }
+        }
+        throw new IllegalArgumentException("expected a mode in the key \"" + key + "\", got \"" + mode + "\"");
+    }
+
+    /**
+     * @param text text to skip whitespace in
+     * @param pos index in text to skip from, 0 <= pos <= text.length()
+     * @return index of the first character of text at or after pos that is not whitespace; text.length() if none
+     */
+    private static int skipWhitespace(String text, int pos) {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * @param letter a character
+     * @return index of letter among A to G, in either case; -1 if it is not one of them
+     */
+    private static int letterIndex(char letter) {
+        int index = Character.toUpperCase(letter) - 'A';
+        return (index >= 0 && index < LETTERS) ? index : -1;
+    }
+
+    /**
+     * @param baseNote letter of a note as written, in {'A',...,'G','a',...,'g'}
+     * @return semitones the key raises every note of that letter by, negative if it lowers them
+     */
+    int offset(char baseNote) {
+        // 'A' and 'a' differ in a single bit, the one clearing it leaves an upper case letter
+        return offsets[(baseNote & ~0x20) - 'A'];
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        KeySignature other = (KeySignature) obj;
+        if (!Arrays.equals(offsets, other.offsets))
+            return false;
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + Arrays.hashCode(offsets);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < LETTERS; i++) {
+            key.append((char) ('A' + i));
+            char mark = offsets[i] > 0 ? '#' : 'b';
+            for (int n = 0; n < Math.abs(offsets[i]); n++) {
+                key.append(mark);
+            }
+            if (i < LETTERS - 1) {
+                key.append(' ');
+            }
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,390 @@
+package abc.parser;
+
+import abc.sound.*;
+import lib6005.parser.UnableToParseException;
+
+/**
+ * Hand-written recursive descent parser for the language of musicNotation.g. It reads the body of a voice one character
+ * at a time and hands every note, chord, tuplet, bar line and ending straight to a VoiceBuilder, so no ParseTree is
+ * ever built. It accepts exactly the strings the grammar accepts and builds the same Music as MusicParser.buildMusic.
+ */
+public class MusicScanner extends TextScanner {
+
+    private static final int NO_DIGITS = -1;
+    private static final String[] ACCIDENTALS = { "^", "^^", "_", "__", "=" };
+
+    private final VoiceBuilder voice;
+    private final boolean loneAccidentals;
+
+    // length of the note notelength() read last, in multiples of the default note length
+    private int lengthNumerator = 1;
+    private int lengthDenominator = 1;
+
+    // Abstraction function:
+    //  represents a parse of text in which the elements of text[0..pos) have been handed to voice.
+    //  loneAccidentals tells whether an accidental without a note is an element, as in musicNotation.g,
+    //  or an error, as in the body of abcNotation.g. The last note length read is
+    //  lengthNumerator / lengthDenominator default note lengths.
+    // Rep invariant:
+    //  0 <= pos <= text.length()
+
+    /**
+     * Make a scanner of the body of a voice
+     * @param text text containing the body
+     * @param voice builder the elements of the body are handed to
+     * @param loneAccidentals true iff accidentals without a note are allowed and ignored
+     */
+    MusicScanner(String text, VoiceBuilder voice, boolean loneAccidentals) {
+        super(text);
+        this.voice = voice;
+        this.loneAccidentals = loneAccidentals;
+        checkRep();
+    }
+
+    @Override
+    protected void checkRep() {
+        super.checkRep();
+        assert voice != null;
+    }
+
+    /**
+     * Builds the Music of a voice straight from its text
+     * @param voiceText body of a single voice, as the lines of Header.getVoices() joined together; must match musicNotation.g
+     * @param header header of the piece the voice belongs to
+     * @return the Music that voiceText represents, equal to the one built by MusicParser.buildMusic from its ParseTree
+     * @throws UnableToParseException if voiceText doesn't match musicNotation.g
+     */
+    public static Music buildMusic(String voiceText, Header header) throws UnableToParseException {
+        MusicScanner scanner = new MusicScanner(voiceText, new VoiceBuilder(header), true);
+        scanner.music();
+        return scanner.build();
+    }
+
+    /**
+     * Finds the resolution of a piece: a number of ticks per beat in which the default note, and every note of every
+     * voice, lasts a whole number of ticks. The body is read once for the denominators of its note lengths and the
+     * specs of its tuplets, without being parsed.
+     * @param length default note length of the piece, e.g. "1/8"
+     * @param tempoBaseNote note length of a beat of the piece, e.g. "1/4"
+     * @param body lines of the voices of the piece, each ending in a new line
+     * @return the denominator of length / tempoBaseNote, times the least common multiple of the denominators of the
+     *         note lengths in body, times that of the multipliers of the tuplets in body
+     * @throws IllegalArgumentException if that is more than an int can hold
+     */
+    public static int ticksPerBeat(String length, String tempoBaseNote, String body) {
+        return ticksPerBeat(length, tempoBaseNote, body, 0);
+    }
+
+    /**
+     * Finds the resolution of a piece whose body starts at from in text, as ticksPerBeat(length, tempoBaseNote, body)
+     * does for the body text.substring(from)
+     */
+    static int ticksPerBeat(String length, String tempoBaseNote, String text, int from) {
+        long lengths = 1;
+        long tuplets = 1;
+        int pos = from;
+        while (pos < text.length()) {
+            int lineStart = pos;
+            while (pos < text.length() && isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+            boolean elements = !text.startsWith("%", pos) && !text.startsWith("V:", pos);
+            pos = lineStart;
+            while (pos < text.length() && text.charAt(pos) != '\n') {
+                char c = text.charAt(pos++);
+                if (!elements) {
+                    continue;
+                }
+                if (c == '/') {
+                    int digitsStart = pos;
+                    long denominator = 0;
+                    while (pos < text.length() && isDigit(text.charAt(pos)) && denominator <= Integer.MAX_VALUE) {
+                        denominator = denominator * 10 + (text.charAt(pos++) - '0');
+                    }
+                    if (pos == digitsStart) {
+                        denominator = 2;
+                    }
+                    // a length of no denominator is left for the parse to reject
+                    if (denominator > 0) {
+                        lengths = lcm(lengths, denominator);
+                    }
+                } else if (c == '(' && pos < text.length() && isDigit(text.charAt(pos))) {
+                    tuplets = lcm(tuplets, MusicParser.tupletDenominator(text.charAt(pos)));
+                }
+            }
+            pos++;
+        }
+        long defaultNoteDenominator = VoiceBuilder.beats(length, tempoBaseNote)[1];
+        if (defaultNoteDenominator > Integer.MAX_VALUE || lengths > Integer.MAX_VALUE || tuplets > Integer.MAX_VALUE
+                || defaultNoteDenominator * lengths > Integer.MAX_VALUE
+                || defaultNoteDenominator * lengths * tuplets > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("no resolution of the piece fits in an int, its notes are too short");
+        }
+        return (int) (defaultNoteDenominator * lengths * tuplets);
+    }
+
+    /**
+     * @return least common multiple of a and b, both > 0; more than Integer.MAX_VALUE if either is
+     */
+    private static long lcm(long a, long b) {
+        if (a > Integer.MAX_VALUE || b > Integer.MAX_VALUE) {
+            return Math.max(a, b);
+        }
+        return a / gcd(a, b) * b;
+    }
+
+    /**
+     * @return greatest common divisor of a and b, both > 0
+     */
+    static long gcd(long a, long b) {
+        while (b != 0) {
+            long r = a % b;
+            a = b;
+            b = r;
+        }
+        return a;
+    }
+
+    /**
+     * Reads a line of elements, element* NEWLINE, and hands its elements to the voice
+     * @param from index of the start of the line in text
+     * @return index just after the new line that ends the line
+     * @throws UnableToParseException if the line isn't a line of elements
+     */
+    int elementLine(int from) throws UnableToParseException {
+        pos = from;
+        while (!atNewline()) {
+            element();
+        }
+        newline();
+        checkRep();
+        return pos;
+    }
+
+    /**
+     * @return the Music of every element read so far
+     */
+    Music build() {
+        return voice.build();
+    }
+
+    // music ::= line+;
+    private void music() throws UnableToParseException {
+        do {
+            line();
+            checkRep();
+        } while (pos < text.length());
+    }
+
+    // line ::= element* NEWLINE | midtunefield | comment;
+    private void line() throws UnableToParseException {
+        if (peek() == '%') {
+            comment();
+        } else if (atVoiceField()) {
+            // midtunefield ::= voice;
+            voiceField();
+        } else {
+            elementLine(pos);
+        }
+    }
+
+    // element ::= noteelement | tupletelement | barline | nthrepeat | WHITESPACE | accidental;
+    private void element() throws UnableToParseException {
+        char c = peek();
+        switch (c) {
+            case ' ':
+            case '\t': {
+                pos++;
+                break;
+            }
+            case '|': {
+                char next = peek(1);
+                if (next == '|' || next == ']' || next == ':') {
+                    voice.barline(take(2));
+                } else {
+                    voice.barline(take(1));
+                }
+                break;
+            }
+            case ':': {
+                expect(":|");
+                voice.barline(":|");
+                break;
+            }
+            case '[': {
+                char next = peek(1);
+                if (next == '1' || next == '2') {
+                    voice.nthRepeat(take(2));
+                } else if (next == '|') {
+                    voice.barline(take(2));
+                } else {
+                    voice.addElement(multinote(1, 1));
+                }
+                break;
+            }
+            case '(': {
+                voice.addElement(tupletelement());
+                break;
+            }
+            default: {
+                if (loneAccidentals && isAccidental(c) && !atNote(0)) {
+                    // a lone accidental is an element of its own, and contributes nothing to the music
+                    accidental();
+                } else {
+                    voice.addElement(note(1, 1));
+                }
+            }
+        }
+    }
+
+    // tupletelement ::= tupletspec noteelement+;
+    // tupletspec ::= "(" DIGIT;
+    private Music tupletelement() throws UnableToParseException {
+        expect("(");
+        char spec = peek();
+        if (!isDigit(spec)) {
+            throw error("a digit");
+        }
+        pos++;
+        int numerator = MusicParser.tupletNumerator(spec);
+        int denominator = MusicParser.tupletDenominator(spec);
+
+        Music tuplet = noteelement(numerator, denominator);
+        while (atNoteelement()) {
+            tuplet = Music.concat(tuplet, noteelement(numerator, denominator));
+        }
+        return tuplet;
+    }
+
+    // noteelement ::= note | multinote;
+    private Music noteelement(int tupletNumerator, int tupletDenominator) throws UnableToParseException {
+        if (peek() == '[') {
+            return multinote(tupletNumerator, tupletDenominator);
+        }
+        return note(tupletNumerator, tupletDenominator);
+    }
+
+    /**
+     * Looks ahead, without reading anything, for the start of a noteelement; a multinote that starts there may still
+     * turn out not to match the grammar, which is then an error wherever it is
+     * @return true iff a note, or "[" followed by a note, starts at pos
+     */
+    private boolean atNoteelement() {
+        return peek() == '[' ? atNote(1) : atNote(0);
+    }
+
+    // multinote ::= "[" note+ "]";
+    private Music multinote(int tupletNumerator, int tupletDenominator) throws UnableToParseException {
+        expect("[");
+        Music multinote = note(tupletNumerator, tupletDenominator);
+        while (peek() != ']') {
+            multinote = Music.addVoice(note(tupletNumerator, tupletDenominator), multinote);
+        }
+        pos++;
+        return multinote;
+    }
+
+    /**
+     * Looks ahead, without reading anything, for a note; once it starts, a note always matches the grammar
+     * @return true iff "z", a basenote, or an accidental followed by a basenote starts offset characters after pos
+     */
+    private boolean atNote(int offset) {
+        char c = peek(offset);
+        if (c == 'z' || isBaseNote(c)) {
+            return true;
+        }
+        if (!isAccidental(c)) {
+            return false;
+        }
+        // accidentals are read greedily, as accidental() reads them
+        int length = (c != '=' && peek(offset + 1) == c) ? 2 : 1;
+        return isBaseNote(peek(offset + length));
+    }
+
+    // note ::= noteorrest notelength?;
+    // noteorrest ::= pitch | rest;
+    // pitch ::= accidental? basenote octave?;
+    // rest ::= "z";
+    private Music note(int tupletNumerator, int tupletDenominator) throws UnableToParseException {
+        if (peek() == 'z') {
+            pos++;
+            notelength();
+            return voice.rest(lengthNumerator, lengthDenominator);
+        }
+        String accidental = isAccidental(peek()) ? accidental() : "";
+        char baseNote = peek();
+        if (!isBaseNote(baseNote)) {
+            throw error("a note");
+        }
+        pos++;
+        int octave = octave();
+        notelength();
+        return voice.note(baseNote, accidental, octave, (long) lengthNumerator * tupletNumerator,
+                (long) lengthDenominator * tupletDenominator);
+    }
+
+    // accidental ::= "^" | "^^" | "_" | "__" | "=";
+    /**
+     * @return the accidental at pos, one of ACCIDENTALS, so reading it allocates nothing
+     */
+    private String accidental() {
+        char c = peek();
+        int length = (c != '=' && peek(1) == c) ? 2 : 1;
+        pos += length;
+        for (String accidental : ACCIDENTALS) {
+            if (accidental.charAt(0) == c && accidental.length() == length) {
+                return accidental;
+            }
+        }
+        throw new AssertionError("accidental() called on " + c);
+    }
+
+    // octave ::= "'"+ | ","+;
+    private int octave() {
+        char mark = peek();
+        if (mark != '\'' && mark != ',') {
+            return 0;
+        }
+        int start = pos;
+        while (peek() == mark) {
+            pos++;
+        }
+        return mark == '\'' ? pos - start : start - pos;
+    }
+
+    // notelength ::= numerator? division?;
+    // division ::= "/" denominator?;
+    /**
+     * Reads a note length into lengthNumerator and lengthDenominator, so reading it allocates nothing
+     */
+    private void notelength() {
+        int numerator = digits();
+        lengthNumerator = (numerator != NO_DIGITS) ? numerator : 1;
+        lengthDenominator = 1;
+        if (peek() == '/') {
+            pos++;
+            int denominator = digits();
+            lengthDenominator = (denominator != NO_DIGITS) ? denominator : 2;
+        }
+    }
+
+    /**
+     * Reads DIGIT*
+     * @return value of the digits read, or NO_DIGITS if there were none
+     */
+    private int digits() {
+        if (!isDigit(peek())) {
+            return NO_DIGITS;
+        }
+        int value = 0;
+        while (isDigit(peek())) {
+            value = value * 10 + (text.charAt(pos) - '0');
+            pos++;
+        }
+        return value;
+    }
+
+    private static boolean isAccidental(char c) {
+        return c == '^' || c == '_' || c == '=';
+    }
+}
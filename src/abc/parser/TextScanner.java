@@ -0,0 +1,189 @@
+package abc.parser;
+
+import lib6005.parser.UnableToParseException;
+
+/**
+ * Common machinery of the hand-written abc parsers: a position in the text being read, and the terminals that the
+ * header and the body share (new lines, whitespace, comments and voice fields).
+ */
+abstract class TextScanner {
+
+    protected final String text;
+    protected int pos = 0;
+
+    // Abstraction function:
+    //  represents a parse of text in which text[0..pos) has been read
+    // Rep invariant:
+    //  0 <= pos <= text.length()
+
+    protected TextScanner(String text) {
+        this.text = text;
+    }
+
+    protected void checkRep() {
+        assert text != null;
+        assert 0 <= pos && pos <= text.length();
+    }
+
+    // comment ::= "%" text? NEWLINE;
+    protected void comment() throws UnableToParseException {
+        expect("%");
+        skipText();
+        newline();
+    }
+
+    // eol ::= comment | NEWLINE;
+    protected void eol() throws UnableToParseException {
+        if (peek() == '%') {
+            comment();
+        } else {
+            newline();
+        }
+    }
+
+    // voice ::= "V:" text eol;   (inside @skip WHITESPACE)
+    /**
+     * @return the name of the voice, i.e. its text with surrounding whitespace removed
+     */
+    protected String voiceField() throws UnableToParseException {
+        skipWhitespace();
+        expect("V:");
+        skipWhitespace();
+        String voice = readText().trim();
+        eol();
+        skipWhitespace();
+        return voice;
+    }
+
+    /**
+     * @return true iff a voice field starts at pos, possibly after some whitespace
+     */
+    protected boolean atVoiceField() {
+        int from = pos;
+        while (from < text.length() && isWhitespace(text.charAt(from))) {
+            from++;
+        }
+        return text.startsWith("V:", from);
+    }
+
+    // text ::= [^%\n\r]*;
+    protected String readText() {
+        int start = pos;
+        skipText();
+        return text.substring(start, pos);
+    }
+
+    protected void skipText() {
+        while (pos < text.length() && peek() != '%' && !atNewline()) {
+            pos++;
+        }
+    }
+
+    // NEWLINE ::= "\n" | "\r" "\n"?;
+    protected void newline() throws UnableToParseException {
+        if (peek() == '\r') {
+            pos++;
+            if (peek() == '\n') {
+                pos++;
+            }
+        } else if (peek() == '\n') {
+            pos++;
+        } else {
+            throw error("a new line");
+        }
+    }
+
+    protected boolean atNewline() {
+        char c = peek();
+        return c == '\n' || c == '\r';
+    }
+
+    // WHITESPACE ::= " " | "\t";
+    protected void skipWhitespace() {
+        while (isWhitespace(peek())) {
+            pos++;
+        }
+    }
+
+    protected void expect(String terminal) throws UnableToParseException {
+        if (!text.startsWith(terminal, pos)) {
+            throw error("\"" + terminal + "\"");
+        }
+        pos += terminal.length();
+    }
+
+    protected String take(int length) {
+        String taken = text.substring(pos, pos + length);
+        pos += length;
+        return taken;
+    }
+
+    /**
+     * @return the character at pos, or 0 at the end of the text
+     */
+    protected char peek() {
+        return peek(0);
+    }
+
+    /**
+     * @return the character offset characters after pos, or 0 if that is past the end of the text
+     */
+    protected char peek(int offset) {
+        int index = pos + offset;
+        return index < text.length() ? text.charAt(index) : 0;
+    }
+
+    protected static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    protected static boolean isDigit(char c) {
+        return '0' <= c && c <= '9';
+    }
+
+    protected static boolean isBaseNote(char c) {
+        return ('A' <= c && c <= 'G') || ('a' <= c && c <= 'g');
+    }
+
+    /**
+     * @param expected description of what should have been at pos
+     * @return exception describing where the text stopped matching the grammar
+     */
+    protected UnableToParseException error(String expected) {
+        return new ParseError(text, pos, expected);
+    }
+
+    /**
+     * Exception for a text that stops matching the grammar at pos. Finding the line and column of pos means reading
+     * the text up to it, so that is left until the message is asked for.
+     */
+    private static class ParseError extends UnableToParseException {
+        private static final long serialVersionUID = 1L;
+
+        private final String text;
+        private final int pos;
+        private final String expected;
+
+        ParseError(String text, int pos, String expected) {
+            super(null);
+            this.text = text;
+            this.pos = pos;
+            this.expected = expected;
+        }
+
+        @Override
+        public String getMessage() {
+            int line = 1;
+            int lineStart = 0;
+            for (int i = 0; i < pos && i < text.length(); i++) {
+                if (text.charAt(i) == '\n') {
+                    line++;
+                    lineStart = i + 1;
+                }
+            }
+            String saw = pos < text.length() ? "'" + text.charAt(pos) + "'" : "end of input";
+            return "String does not match grammar \nError in line " + line + " col " + (pos - lineStart)
+                    + "\nExpected " + expected + " but saw " + saw;
+        }
+    }
+}
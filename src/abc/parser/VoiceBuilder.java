@@ -0,0 +1,302 @@
+package abc.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import abc.sound.*;
+
+/**
+ * Mutable builder that assembles the Music of a single voice from the elements of its body, in the order they appear.
+ * Key signature, accidentals carried through a bar, repeats and first/second endings are all applied here, so every
+ * parser of the body (the ParseTree walk in MusicParser and the hand-written MusicScanner) produces the same Music.
+ */
+class VoiceBuilder {
+
+    // note letters, and octaves the accidentals of a bar are first kept for: those of MIDI notes
+    private static final int LETTERS = 7;
+    private static final int LOWEST_MIDI_OCTAVE = -5;
+    private static final int MIDI_OCTAVES = 11;
+
+    private final KeySignature keySignature;
+    private final long ticksPerDefaultNote;
+
+    // accidentals set in a bar, kept without allocating anything for a note or a bar line
+    private int[] accidentals = new int[LETTERS * MIDI_OCTAVES];
+    private int[] accidentalBars = new int[LETTERS * MIDI_OCTAVES];
+    private int lowestOctave = LOWEST_MIDI_OCTAVE;
+    private int bar = 1;
+
+    private boolean repeatBlock = false;
+    private boolean afterFirstEndingBeforeSecondEnding = false;
+    private boolean pastSecondEndingBeforeEndRepeat = false;
+
+    private final List<Music> majorSections = new ArrayList<>();
+    private Music music = Rest.of(0); // current major section music
+    private Music repeatBody = Rest.of(0);
+    private Music firstEnding = Rest.of(0);
+    private Music secondEnding = Rest.of(0);
+
+    // Abstraction function:
+    //  represents a voice whose completed major sections are majorSections, followed by the section being built in
+    //  music. If repeatBlock, the elements since the last "|:" (or the section before "[1") are in repeatBody, and
+    //  those of its endings in firstEnding and secondEnding; repeatBody is kept once, and played before each of them
+    //  by the Repeat they become. The notes of letter A + l in octave lowestOctave + o are raised by
+    //  accidentals[o * 7 + l] semitones for the rest of the current bar if accidentalBars[o * 7 + l] == bar, the
+    //  number of the current bar; keySignature applies to every other note. A note of the default length lasts
+    //  ticksPerDefaultNote ticks.
+
+    // Rep invariant:
+    //  ticksPerDefaultNote > 0
+    //  none of the object fields are null
+    //  accidentals.length == accidentalBars.length, a multiple of 7
+    //  bar != 0, so no accidental is set in the current bar before any is
+
+    /**
+     * Make a builder for a voice of the piece described by header
+     * @param header header of the piece; its key, default length, tempo base note and resolution apply to every note
+     *               of the voice
+     * @throws IllegalArgumentException if the key of header is not a key
+     */
+    VoiceBuilder(Header header) {
+        this(header.getKey(), header.getLength(), header.getTempoBaseNote(), header.getTicksPerBeat());
+    }
+
+    /**
+     * Make a builder for a voice of a piece
+     * @param keySignature key of the piece, as written in its K: field
+     * @param length default note length of the piece, e.g. "1/8"
+     * @param tempoBaseNote note length the tempo of the piece is given in, e.g. "1/4"
+     * @param ticksPerBeat resolution of the piece, as found by MusicScanner.ticksPerBeat, > 0
+     * @throws IllegalArgumentException if keySignature is not a key, or if the default note doesn't last a whole
+     *         number of ticks
+     */
+    VoiceBuilder(String keySignature, String length, String tempoBaseNote, int ticksPerBeat) {
+        // resolved once for the voice, so every note only looks up its letter
+        this.keySignature = KeySignature.of(keySignature);
+
+        long[] beats = beats(length, tempoBaseNote);
+        if (ticksPerBeat * beats[0] % beats[1] != 0) {
+            throw new IllegalArgumentException("a note of length " + length + " is not a whole number of the "
+                    + ticksPerBeat + " ticks of a beat of " + tempoBaseNote);
+        }
+        this.ticksPerDefaultNote = ticksPerBeat * beats[0] / beats[1];
+        checkRep();
+    }
+
+    /**
+     * @param length a note length, e.g. "1/8"
+     * @param tempoBaseNote note length of a beat, e.g. "1/4"
+     * @return { numerator, denominator } of the number of beats length lasts, in lowest terms
+     */
+    static long[] beats(String length, String tempoBaseNote) {
+        long[] lengthFraction = fraction(length);
+        long[] beatFraction = fraction(tempoBaseNote);
+        long numerator = lengthFraction[0] * beatFraction[1];
+        long denominator = lengthFraction[1] * beatFraction[0];
+        long gcd = MusicScanner.gcd(numerator, denominator);
+        return new long[] { numerator / gcd, denominator / gcd };
+    }
+
+    /**
+     * @param length a note length of a header field, "n/d" or "n"
+     * @return { n, d }
+     */
+    private static long[] fraction(String length) {
+        String[] parts = length.split("/");
+        long denominator = (parts.length > 1) ? Long.parseLong(parts[1].trim()) : 1;
+        return new long[] { Long.parseLong(parts[0].trim()), denominator };
+    }
+
+    private void checkRep() {
+        assert ticksPerDefaultNote > 0;
+        assert keySignature != null;
+        assert accidentals != null && accidentalBars != null;
+        assert accidentals.length == accidentalBars.length && accidentals.length % LETTERS == 0;
+        assert bar != 0;
+        assert music != null;
+        assert repeatBody != null;
+        assert firstEnding != null;
+        assert secondEnding != null;
+    }
+
+    /**
+     * Makes a rest of the voice
+     * @param lengthNumerator numerator of the length of the rest in multiples of the default note length
+     * @param lengthDenominator denominator of that length
+     * @return the rest
+     * @throws IllegalArgumentException if the rest doesn't last a whole number of ticks
+     */
+    Music rest(long lengthNumerator, long lengthDenominator) {
+        return Rest.of(ticks(lengthNumerator, lengthDenominator));
+    }
+
+    /**
+     * Makes a note of the voice, applying the key signature and the accidentals set earlier in the bar.
+     * An explicit accidental on this note is remembered until the next bar line.
+     * @param baseNote letter of the note as written, in {'A',...,'G','a',...,'g'}
+     * @param accidental accidental written before the note, one of "", "^", "^^", "_", "__", "="
+     * @param octave number of ' (if positive) or , (if negative) written after the note
+     * @param lengthNumerator numerator of the length of the note in multiples of the default note length, times that
+     *                        of the multiplier of the tuplet the note is part of
+     * @param lengthDenominator denominator of that length, times that of the multiplier of the tuplet
+     * @return the note
+     * @throws IllegalArgumentException if the note doesn't last a whole number of ticks
+     */
+    Music note(char baseNote, String accidental, int octave, long lengthNumerator, long lengthDenominator) {
+        int octavesUp = (Character.isLowerCase(baseNote)) ? octave + 1 : octave;
+        Pitch pitch = Pitch.valueOf(Character.toUpperCase(baseNote)).transpose(octavesUp*Pitch.OCTAVE);
+
+        int slot = accidentalSlot(baseNote, octavesUp);
+        int semitonesUp;
+        if (accidental.length() > 0) {
+            if (accidental.charAt(0) == '^') {
+                semitonesUp = accidental.length();
+            } else if (accidental.charAt(0) == '_') {
+                semitonesUp = -accidental.length();
+            } else {
+                semitonesUp = 0;
+            }
+            accidentals[slot] = semitonesUp;
+            accidentalBars[slot] = bar;
+        } else if (accidentalBars[slot] == bar) {
+            semitonesUp = accidentals[slot];
+        } else {
+            semitonesUp = keySignature.offset(baseNote);
+        }
+        if (semitonesUp != 0) {
+            pitch = pitch.transpose(semitonesUp);
+        }
+
+        return Note.of(pitch, ticks(lengthNumerator, lengthDenominator));
+    }
+
+    /**
+     * @param lengthNumerator numerator of a length in multiples of the default note length
+     * @param lengthDenominator denominator of that length
+     * @return number of ticks the length lasts
+     * @throws IllegalArgumentException if that isn't a whole number
+     */
+    private long ticks(long lengthNumerator, long lengthDenominator) {
+        long ticks = ticksPerDefaultNote * lengthNumerator;
+        if (lengthDenominator == 0 || ticks % lengthDenominator != 0) {
+            throw new IllegalArgumentException("a note of length " + lengthNumerator + "/" + lengthDenominator
+                    + " is not a whole number of ticks of the piece");
+        }
+        return ticks / lengthDenominator;
+    }
+
+    /**
+     * @param baseNote letter of a note as written, in {'A',...,'G','a',...,'g'}
+     * @param octavesUp octaves the note is above the middle one, negative if below
+     * @return index of the accidental of the note in accidentals and accidentalBars, which are grown to have one
+     */
+    private int accidentalSlot(char baseNote, int octavesUp) {
+        int octaves = accidentals.length / LETTERS;
+        if (octavesUp < lowestOctave || octavesUp >= lowestOctave + octaves) {
+            // far outside the notes MIDI can play, so only for the odd piece
+            int lowest = Math.min(lowestOctave, octavesUp);
+            int highest = Math.max(lowestOctave + octaves - 1, octavesUp);
+            int[] grownAccidentals = new int[(highest - lowest + 1) * LETTERS];
+            int[] grownBars = new int[grownAccidentals.length];
+            System.arraycopy(accidentals, 0, grownAccidentals, (lowestOctave - lowest) * LETTERS, accidentals.length);
+            System.arraycopy(accidentalBars, 0, grownBars, (lowestOctave - lowest) * LETTERS, accidentalBars.length);
+            accidentals = grownAccidentals;
+            accidentalBars = grownBars;
+            lowestOctave = lowest;
+            checkRep();
+        }
+        // 'A' and 'a' differ in a single bit, the one clearing it leaves an upper case letter
+        return (octavesUp - lowestOctave) * LETTERS + ((baseNote & ~0x20) - 'A');
+    }
+
+    /**
+     * Appends a note, rest, chord or tuplet to the voice
+     * @param element the music to append
+     */
+    void addElement(Music element) {
+        if (!repeatBlock) {
+            music = Music.concat(music, element);
+        } else {
+            if (afterFirstEndingBeforeSecondEnding) {
+                firstEnding = Music.concat(firstEnding, element);
+            } else if (pastSecondEndingBeforeEndRepeat) {
+                secondEnding = Music.concat(secondEnding, element);
+            } else {
+                repeatBody = Music.concat(repeatBody, element);
+            }
+        }
+    }
+
+    /**
+     * Ends the current bar
+     * @param bar the bar line as written, one of "|", "||", "[|", "|]", ":|", "|:"
+     */
+    void barline(String bar) {
+        // forget the accidentals of the bar by moving on to the next one
+        this.bar++;
+        if (this.bar == 0) {
+            // after 2^32 bars, the bars accidentals were set in start over
+            Arrays.fill(accidentalBars, 0);
+            this.bar = 1;
+        }
+
+        if (bar.equals("|]")) {
+            majorSections.add(music);
+            music = Rest.of(0);
+        } else if (bar.equals("|:")) {
+            repeatBlock = true;
+            repeatBody = Rest.of(0);
+            firstEnding = Rest.of(0);
+            secondEnding = Rest.of(0);
+        } else if (bar.equals(":|")) {
+
+            if (!repeatBlock) {
+                // this means that we started parsing at a major section and so entire section has to be repeated
+                music = Music.repeat(music, Rest.of(0), Rest.of(0));
+            } else {
+                // this means we were inside a repeat block: append it, with its endings, to rest of the major block
+                music = Music.concat(music, Music.repeat(repeatBody, firstEnding, secondEnding));
+                repeatBody = Rest.of(0);
+                firstEnding = Rest.of(0);
+                secondEnding = Rest.of(0);
+            }
+            repeatBlock = false;
+            pastSecondEndingBeforeEndRepeat = false;
+        }
+    }
+
+    /**
+     * Starts the first or second ending of a repeat
+     * @param nthRepeat the ending as written, "[1" or "[2"
+     */
+    void nthRepeat(String nthRepeat) {
+        if (nthRepeat.equals("[1")) {
+            afterFirstEndingBeforeSecondEnding = true;
+            if (!repeatBlock) {
+                // the section so far is the body of the repeat
+                repeatBody = music;
+                music = Rest.of(0);
+                repeatBlock = true;
+            }
+        } else {
+            afterFirstEndingBeforeSecondEnding = false;
+            if (repeatBlock) {
+                pastSecondEndingBeforeEndRepeat = true;
+            }
+        }
+    }
+
+    /**
+     * @return the Music of every element added so far, major sections in order
+     */
+    Music build() {
+        List<Music> sections = new ArrayList<>(majorSections);
+        sections.add(music);
+        Music finalMusic = Rest.of(0);
+        for (Music majorSection : sections) {
+            finalMusic = Music.concat(finalMusic, majorSection);
+        }
+        return finalMusic;
+    }
+}
@@ -1,18 +1,24 @@
 package abc.player;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.Optional;
-import java.util.Queue;
+import java.util.concurrent.CompletionException;
 
 import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiSystem;
 import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Synthesizer;
 
 import abc.sound.*;
 
@@ -21,9 +27,17 @@ import abc.sound.*;
  */
 public class Main {
 
+    // sequencers kept open from one tune to the next; one, as tunes are played one at a time
+    private static final SequencerPool SEQUENCERS = new SequencerPool(1);
+
+    // time the instruments of the JDK's synthesizer take to die away once a note ends
+    private static final long RELEASE_MICROS = 500000;
+
     /**
      * Plays the input file using Java MIDI API and displays
      * header information to the standard output stream.
+     * Returns once the music has played. The sequencer is kept open, for the next file to play without opening
+     * one again.
      * 
      * (Your code should not exit the application abnormally using
      * System.exit().)
@@ -32,35 +46,110 @@ public class Main {
      */
     public static void play(String file) {
         File abcFile = new File(file);
-        Header header = Music.parseHeader(abcFile);
+        Piece piece = Music.parsePiece(abcFile);
+        Header header = piece.getHeader();
         
-        Music music = Music.parseMusic(header);
+        Music music = piece.getMusic();
         try {
             int beatsPerMinute = header.getTempoBPM(); 
-            int ticksPerBeat = 192;
-            int atBeat = 12;                                                        
+            int ticksPerBeat = header.getTicksPerBeat();
+            // about a sixteenth of a beat of silence before the first note
+            int atBeat = (ticksPerBeat + 15) / 16;
             SequencePlayer player = new SequencePlayer(beatsPerMinute, ticksPerBeat); 
-            music.play(player, atBeat);
-            player.play();
+            player.addNotes(CompiledScore.compile(music), atBeat);
+            player.play(SEQUENCERS).join();
         } catch (MidiUnavailableException mue) {
             mue.printStackTrace();
         } catch (InvalidMidiDataException imde) {
             imde.printStackTrace();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Plays the input file on the JDK's synthesizer, walking it as it plays rather than building a Sequence
+     * first, and displays how closely it kept to time to the standard output stream.
+     *
+     * @param file the name of input abc file
+     */
+    public static void playRealtime(String file) {
+        Piece piece = Music.parsePiece(new File(file));
+        try (Synthesizer synthesizer = MidiSystem.getSynthesizer()) {
+            synthesizer.open();
+            RealtimeScheduler scheduler = new RealtimeScheduler(synthesizer.getReceiver(),
+                    synthesizer::getMicrosecondPosition, RealtimeScheduler.DEFAULT_LOOKAHEAD_MICROS);
+            scheduler.play(CompiledScore.compile(piece.getMusic()), piece.getHeader().getTicksPerBeat(),
+                    piece.getHeader().getTempoBPM());
+            scheduler.join();
+            // the last events were sent ahead of time, so wait on the synthesizer's clock for them, and for the
+            // notes they end to die away, before closing it
+            long endMicros = scheduler.getLastTimestamp() + RELEASE_MICROS;
+            for (long remaining = endMicros - synthesizer.getMicrosecondPosition(); remaining > 0;
+                    remaining = endMicros - synthesizer.getMicrosecondPosition()) {
+                Thread.sleep(remaining / 1000, (int) (remaining % 1000) * 1000);
+            }
+            System.out.println(file + ": " + scheduler.getJitter());
+        } catch (MidiUnavailableException mue) {
+            mue.printStackTrace();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Renders the input file to a WAV file, as fast as the CPU allows and without a
+     * sound device, and displays how fast it rendered to the standard output stream.
+     * If the JDK's synthesizer cannot be used, renders with the built-in one instead.
+     *
+     * @param file the name of input abc file
+     * @param wavFile the name of the WAV file to write
+     */
+    public static void render(String file, String wavFile) {
+        Piece piece = Music.parsePiece(new File(file));
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(wavFile))) {
+            RenderStats stats;
+            try {
+                stats = OfflineRenderer.render(piece, out);
+            } catch (MidiUnavailableException mue) {
+                System.err.println(mue.getMessage() + "; rendering with the built-in synthesizer");
+                stats = OfflineRenderer.renderBuiltIn(piece, out);
+            }
+            System.out.println(file + ": " + stats);
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+        }
+    }
+
+    /**
+     * Plays the input files one after another, with no gap between them: each file is parsed while the one
+     * before plays.
+     *
+     * @param files the names of input abc files
+     */
+    public static void playAll(List<String> files) {
+        File[] abcFiles = new File[files.size()];
+        for (int i = 0; i < abcFiles.length; i++) {
+            abcFiles[i] = new File(files.get(i));
+        }
+        try {
+            new Playlist(SEQUENCERS, abcFiles).play().join();
+        } catch (CompletionException ce) {
+            ce.getCause().printStackTrace();
         }
     }
 
-    public static void main(String[] args) { 
-        Queue<String> arguments = new LinkedList<String>(Arrays.asList(args));
+    public static void main(String[] args) {
+        List<String> arguments = new ArrayList<String>(Arrays.asList(args));
         arguments.add("sample_abc/piece1.abc");
         //arguments.add("sample_abc/piece2.abc");
         
         if (arguments.size() == 0) {
             throw new RuntimeException("No abc file specified!");
         } else {
-            for (int i = 0; i < arguments.size(); i++) {
-                String fileName = arguments.poll();
-                play(fileName);
-            }     
+            playAll(arguments);
         }
+        // the sequencers' threads would keep the application running
+        SEQUENCERS.close();
     }
 }
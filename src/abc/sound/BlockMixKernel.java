@@ -0,0 +1,106 @@
+package abc.sound;
+
+/**
+ * MixKernel whose loops HotSpot's superword pass compiles to SIMD instructions. The auto-vectorizer only takes
+ * loops whose body is the same for every element, on elements of one width, reading and writing every array at the
+ * same index. So the left and right gains are spread over an array of gains, for both channels to be scaled by one
+ * multiply-add loop, and samples are clamped as floats, in a loop of their own, before being narrowed to shorts.
+ * Loops that convert between widths are written the same way, though only newer JVMs vectorize them.
+ * Results are the same as ScalarMixKernel's, sample for sample.
+ */
+class BlockMixKernel implements MixKernel {
+
+    private float[] gains = new float[0];
+    private float[] scratch = new float[0];
+    private float leftGain;
+    private float rightGain;
+
+    // Abstraction function:
+    //  represents a stateless kernel; gains holds leftGain and rightGain, alternately, the last gains mixed with,
+    //  and scratch holds nothing between calls. Both grow to the longest block seen.
+    // Rep invariant:
+    //  gains.length is even, gains[j] == leftGain for every even j, gains[j] == rightGain for every odd j
+    // Safety from rep exposure:
+    //  all fields are private; the arrays are never returned
+
+    private void checkRep() {
+        assert gains.length % 2 == 0;
+        // gains are refilled for every change of gain, so only the first and last frames are checked
+        if (gains.length > 0) {
+            int last = gains.length - 2;
+            assert Float.compare(gains[0], leftGain) == 0 && Float.compare(gains[last], leftGain) == 0;
+            assert Float.compare(gains[1], rightGain) == 0 && Float.compare(gains[last + 1], rightGain) == 0;
+        }
+    }
+
+    @Override
+    public void mix(float[] mix, float[] source, float leftGain, float rightGain, int length) {
+        ScalarMixKernel.checkLength(length, mix.length, source.length);
+        float[] gains = gains(leftGain, rightGain, length);
+        for (int i = 0; i < length; i++) {
+            mix[i] += gains[i] * source[i];
+        }
+    }
+
+    @Override
+    public void mix(float[] mix, short[] source, float leftGain, float rightGain, int length) {
+        ScalarMixKernel.checkLength(length, mix.length, source.length);
+        float[] gains = gains(leftGain, rightGain, length);
+        // widening shorts to floats is only vectorized by newer JVMs, so the widening stays in the loop
+        for (int i = 0; i < length; i++) {
+            mix[i] += gains[i] * source[i];
+        }
+    }
+
+    @Override
+    public void toPcm(float[] mix, float gain, short[] out, int length) {
+        ScalarMixKernel.checkLength(length, mix.length, out.length);
+        float[] clamped = scratch(length);
+        for (int i = 0; i < length; i++) {
+            clamped[i] = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, gain * mix[i]));
+        }
+        for (int i = 0; i < length; i++) {
+            out[i] = (short) (int) clamped[i];
+        }
+    }
+
+    /**
+     * @return at least length gains, leftGain and rightGain alternately
+     */
+    private float[] gains(float leftGain, float rightGain, int length) {
+        boolean same = Float.compare(leftGain, this.leftGain) == 0 && Float.compare(rightGain, this.rightGain) == 0;
+        if (same && gains.length >= length) {
+            return gains;
+        }
+        if (gains.length < length) {
+            gains = new float[length];
+        }
+        this.leftGain = leftGain;
+        this.rightGain = rightGain;
+        // a voice of its own gains per call is common, so fill by doubling copies rather than a frame at a time
+        if (gains.length > 0) {
+            gains[0] = leftGain;
+            gains[1] = rightGain;
+            for (int filled = 2; filled < gains.length; filled *= 2) {
+                System.arraycopy(gains, 0, gains, filled, Math.min(filled, gains.length - filled));
+            }
+        }
+        checkRep();
+        return gains;
+    }
+
+    /**
+     * @return a scratch array of at least length samples
+     */
+    private float[] scratch(int length) {
+        if (scratch.length < length) {
+            scratch = new float[length];
+        }
+        return scratch;
+    }
+
+    @Override
+    public String toString() {
+        return "block";
+    }
+}
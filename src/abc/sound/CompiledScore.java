@@ -0,0 +1,276 @@
+package abc.sound;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable, flat form of the notes of a piece of music, for playing or exporting it many times without walking
+ * its Music tree again. Every note is kept as a MIDI note number, a start tick, a number of ticks and a voice, in
+ * one primitive array each, sorted by start tick. Ticks are the units of Music.duration(), so one compiled score
+ * can be scheduled on any number of SequencePlayers, at any tempo.
+ */
+public class CompiledScore {
+
+    // bytes the JVM takes for the header of an array and for an object with four references and three ints
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int OBJECT_BYTES = 40;
+
+    private final int[] midiPitch;
+    private final int[] startTick;
+    private final int[] durationTicks;
+    private final int[] voice;
+    private final int numberOfVoices;
+    private final int lowestMidiPitch;
+    private final int highestMidiPitch;
+
+    // Abstraction function:
+    //  represents the notes i = 0, ..., midiPitch.length-1, note i being MIDI note midiPitch[i] of voice voice[i],
+    //  starting startTick[i] ticks after the start of the piece and lasting durationTicks[i] ticks;
+    //  lowestMidiPitch and highestMidiPitch are the least and greatest of midiPitch, both 0 if it is empty
+    // Rep invariant:
+    //  midiPitch, startTick, durationTicks and voice all have the same length
+    //  startTick is sorted in ascending order, and startTick[i] >= 0, durationTicks[i] >= 0 for every i
+    //  startTick[i] + durationTicks[i] <= Integer.MAX_VALUE for every i, so no note ends on a negative tick
+    //  0 <= voice[i] < numberOfVoices for every i
+    //  lowestMidiPitch <= midiPitch[i] <= highestMidiPitch for every i, each equal to one of them if any
+    // Safety from rep exposure:
+    //  all fields are private and final, the arrays are made by compile and never returned; observers return
+    //  their elements, which are primitives
+
+    private CompiledScore(int[] midiPitch, int[] startTick, int[] durationTicks, int[] voice, int numberOfVoices) {
+        this.midiPitch = midiPitch;
+        this.startTick = startTick;
+        this.durationTicks = durationTicks;
+        this.voice = voice;
+        this.numberOfVoices = numberOfVoices;
+        int lowest = (midiPitch.length == 0) ? 0 : Integer.MAX_VALUE;
+        int highest = (midiPitch.length == 0) ? 0 : Integer.MIN_VALUE;
+        for (int pitch : midiPitch) {
+            lowest = Math.min(lowest, pitch);
+            highest = Math.max(highest, pitch);
+        }
+        this.lowestMidiPitch = lowest;
+        this.highestMidiPitch = highest;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert startTick.length == midiPitch.length;
+        assert durationTicks.length == midiPitch.length;
+        assert voice.length == midiPitch.length;
+        for (int i = 0; i < midiPitch.length; i++) {
+            assert startTick[i] >= 0;
+            assert durationTicks[i] >= 0;
+            assert (long) startTick[i] + durationTicks[i] <= Integer.MAX_VALUE;
+            assert i == 0 || startTick[i - 1] <= startTick[i];
+            assert 0 <= voice[i] && voice[i] < numberOfVoices;
+            assert lowestMidiPitch <= midiPitch[i] && midiPitch[i] <= highestMidiPitch;
+        }
+    }
+
+    /**
+     * Compiles the notes of music. Every note gets the same start tick and number of ticks as music.play(player, 0)
+     * would give it; notes that start on the same tick keep the order play would add them in.
+     * @param music music to compile
+     * @return the notes of music. The voices of music, as built by Music.parseMusic, are the pieces joined by the
+     *         outermost MultipleVoices, numbered from 0 in the order they were added.
+     * @throws ArithmeticException if a note of music ends more ticks after the start than an int can hold
+     */
+    public static CompiledScore compile(Music music) {
+        // the outermost MultipleVoices hold the voices, most recently added first
+        List<Music> voices = new ArrayList<>();
+        while (music instanceof MultipleVoices) {
+            voices.add(((MultipleVoices) music).getRecentVoice());
+            music = ((MultipleVoices) music).getRest();
+        }
+        // Music.parseMusic adds the first voice to an empty rest, which is no voice of its own
+        if (!(music instanceof Rest && music.duration() == 0) || voices.isEmpty()) {
+            voices.add(music);
+        }
+
+        NoteCollector notes = new NoteCollector();
+        for (int v = 0; v < voices.size(); v++) {
+            int voiceNumber = voices.size() - 1 - v;
+            MusicTraversal.forEachLeaf(voices.get(v), 0, (leaf, beat) -> {
+                if (leaf instanceof Note) {
+                    Note note = (Note) leaf;
+                    // checked on its end, so that start + duration cannot overflow wherever the score is played
+                    Math.toIntExact(Math.addExact(beat, note.duration()));
+                    notes.add(note.getPitch().toMidiNote(), Math.toIntExact(beat), Math.toIntExact(note.duration()),
+                            voiceNumber);
+                }
+            });
+        }
+        return notes.sorted(voices.size());
+    }
+
+    /**
+     * @return number of notes in this score
+     */
+    public int size() {
+        return midiPitch.length;
+    }
+
+    /**
+     * @param i index of a note, 0 <= i < size()
+     * @return MIDI note number of the i-th note
+     */
+    public int getMidiPitch(int i) {
+        return midiPitch[i];
+    }
+
+    /**
+     * @param i index of a note, 0 <= i < size()
+     * @return tick the i-th note starts on; never less than the start tick of the notes before it
+     */
+    public int getStartTick(int i) {
+        return startTick[i];
+    }
+
+    /**
+     * @param i index of a note, 0 <= i < size()
+     * @return number of ticks the i-th note lasts
+     */
+    public int getDurationTicks(int i) {
+        return durationTicks[i];
+    }
+
+    /**
+     * @param i index of a note, 0 <= i < size()
+     * @return voice of the i-th note, 0 <= voice < getNumberOfVoices()
+     */
+    public int getVoice(int i) {
+        return voice[i];
+    }
+
+    /**
+     * @return lowest MIDI note number of any note of this score, 0 if it has no notes
+     */
+    public int getLowestMidiPitch() {
+        return lowestMidiPitch;
+    }
+
+    /**
+     * @return highest MIDI note number of any note of this score, 0 if it has no notes
+     */
+    public int getHighestMidiPitch() {
+        return highestMidiPitch;
+    }
+
+    /**
+     * @return number of voices of this score
+     */
+    public int getNumberOfVoices() {
+        return numberOfVoices;
+    }
+
+    /**
+     * @return tick the last note of this score ends on, 0 if it has no notes
+     */
+    public int getEndTick() {
+        int endTick = 0;
+        for (int i = 0; i < size(); i++) {
+            endTick = Math.max(endTick, startTick[i] + durationTicks[i]); // cannot overflow, by the rep invariant
+        }
+        return endTick;
+    }
+
+    /**
+     * @return estimated number of bytes of heap this score takes
+     */
+    public long footprintBytes() {
+        long arrayBytes = ARRAY_HEADER_BYTES + (long) Integer.BYTES * size();
+        // arrays take a multiple of 8 bytes
+        arrayBytes = (arrayBytes + 7) / 8 * 8;
+        return OBJECT_BYTES + 4 * arrayBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledScore[" + size() + " notes, " + numberOfVoices + " voices, " + getEndTick() + " ticks]";
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + Arrays.hashCode(durationTicks);
+        result = prime * result + Arrays.hashCode(midiPitch);
+        result = prime * result + numberOfVoices;
+        result = prime * result + Arrays.hashCode(startTick);
+        result = prime * result + Arrays.hashCode(voice);
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        CompiledScore other = (CompiledScore) obj;
+        if (!Arrays.equals(durationTicks, other.durationTicks))
+            return false;
+        if (!Arrays.equals(midiPitch, other.midiPitch))
+            return false;
+        if (numberOfVoices != other.numberOfVoices)
+            return false;
+        if (!Arrays.equals(startTick, other.startTick))
+            return false;
+        if (!Arrays.equals(voice, other.voice))
+            return false;
+        return true;
+    }
+
+    /**
+     * Growable columns of notes, in the order they were added
+     */
+    private static class NoteCollector {
+        private int[] midiPitch = new int[64];
+        private int[] startTick = new int[64];
+        private int[] durationTicks = new int[64];
+        private int[] voice = new int[64];
+        private int size = 0;
+
+        void add(int pitch, int start, int duration, int voiceNumber) {
+            if (size == midiPitch.length) {
+                midiPitch = Arrays.copyOf(midiPitch, 2 * size);
+                startTick = Arrays.copyOf(startTick, 2 * size);
+                durationTicks = Arrays.copyOf(durationTicks, 2 * size);
+                voice = Arrays.copyOf(voice, 2 * size);
+            }
+            midiPitch[size] = pitch;
+            startTick[size] = start;
+            durationTicks[size] = duration;
+            voice[size] = voiceNumber;
+            size++;
+        }
+
+        /**
+         * @return score of the notes added, sorted by start tick, notes with the same start in the order added
+         */
+        CompiledScore sorted(int numberOfVoices) {
+            // sort the start ticks together with the index of each note, which also keeps the sort stable
+            long[] order = new long[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = ((long) startTick[i] << 32) | i;
+            }
+            Arrays.sort(order);
+            int[] sortedPitch = new int[size];
+            int[] sortedStart = new int[size];
+            int[] sortedDuration = new int[size];
+            int[] sortedVoice = new int[size];
+            for (int i = 0; i < size; i++) {
+                int note = (int) order[i];
+                sortedPitch[i] = midiPitch[note];
+                sortedStart[i] = startTick[note];
+                sortedDuration[i] = durationTicks[note];
+                sortedVoice[i] = voice[note];
+            }
+            return new CompiledScore(sortedPitch, sortedStart, sortedDuration, sortedVoice, numberOfVoices);
+        }
+    }
+}
@@ -9,6 +9,8 @@ public class Concat implements Music {
     
     private final Music music1;
     private final Music music2;
+    private final long duration;
+    private final int hashCode;
     
     // Abstraction function:
     //  represents two pieces of music that should be played sequentially with music1 being played first and music2 played second
@@ -16,6 +18,8 @@ public class Concat implements Music {
     // Rep Invariant:
     //  music1 != null
     //  music2 != null
+    //  duration == music1.duration() + music2.duration()
+    //  hashCode is the hash of music1 and music2, as computed by hashCode()
     
     // Safety from rep exposure:
     //  all fields are marked as private and final and are immutable
@@ -23,23 +27,49 @@ public class Concat implements Music {
     public Concat(Music music1, Music music2) {
         this.music1 = music1;
         this.music2 = music2;
+        // computed once, so that playing a long chain of concats doesn't walk the chain again for every note
+        this.duration = music1.duration() + music2.duration();
+        this.hashCode = hash(music1, music2);
         checkRep();
     }
     
     private void checkRep() {
         assert music1 != null;
         assert music2 != null;
+        assert duration == music1.duration() + music2.duration();
+        assert hashCode == hash(music1, music2);
+    }
+    
+    private static int hash(Music music1, Music music2) {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + music1.hashCode();
+        result = prime * result + music2.hashCode();
+        return result;
+    }
+    
+    /**
+     * @return the piece played first
+     */
+    Music getMusic1() {
+        return music1;
+    }
+    
+    /**
+     * @return the piece played second
+     */
+    Music getMusic2() {
+        return music2;
     }
     
     @Override
-    public double duration() {
-        return music1.duration() + music2.duration();
+    public long duration() {
+        return duration;
     }
 
     @Override
-    public void play(SequencePlayer player, double atBeat) {
-        music1.play(player, atBeat);
-        music2.play(player, atBeat + music1.duration());
+    public void play(SequencePlayer player, long atBeat) {
+        MusicTraversal.play(this, player, atBeat);
     }
 
     /**
@@ -48,16 +78,12 @@ public class Concat implements Music {
      */
     @Override
     public String toString() {
-        return music1.toString() + " " + music2.toString();
+        return MusicTraversal.toString(this);
     }
 
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + ((music1 == null) ? 0 : music1.hashCode());
-        result = prime * result + ((music2 == null) ? 0 : music2.hashCode());
-        return result;
+        return hashCode;
     }
 
     @Override
@@ -68,17 +94,6 @@ public class Concat implements Music {
             return false;
         if (getClass() != obj.getClass())
             return false;
-        Concat other = (Concat) obj;
-        if (music1 == null) {
-            if (other.music1 != null)
-                return false;
-        } else if (!music1.equals(other.music1))
-            return false;
-        if (music2 == null) {
-            if (other.music2 != null)
-                return false;
-        } else if (!music2.equals(other.music2))
-            return false;
-        return true;
+        return MusicTraversal.equal(this, (Concat) obj);
     }
 }
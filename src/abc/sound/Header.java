@@ -20,6 +20,7 @@ public class Header {
     private final String index;
     private final String key;
     private final Map<String, List<String>> voices;
+    private final int ticksPerBeat;
     
     // Abstraction Function:
     //  represents header information of a piece of music in abc notation where:
@@ -34,10 +35,12 @@ public class Header {
     //      K: key
     //  note that a header might consist of a single voice and that voice may not have been given a name. In that case, voice will be
     //  represented with ""
+    //  a beat, a tempoBaseNote, lasts ticksPerBeat ticks, the unit of the durations of the music of the voices
     
     // Rep Invariant;
     //  none of the non-primitive fields are null
     //  tempoBPM > 0
+    //  ticksPerBeat > 0, and every note of every voice lasts a whole number of ticks
     
     // Safety from rep exposure:
     //  all fields are marked as private and final. All fields except for voices is either an immutable String or a primitive
@@ -46,8 +49,13 @@ public class Header {
     
  
     
+    /**
+     * Make a header
+     * @param ticksPerBeat resolution of the piece, > 0, in which every note of voices lasts a whole number of ticks;
+     *        the parsers find it with MusicScanner.ticksPerBeat as they read the body
+     */
     public Header(String title, String index, String key, String composer, String meter, String length, String tempoBaseNote, int tempoBPM,
-                    Map<String, List<String>> voices) {
+                    Map<String, List<String>> voices, int ticksPerBeat) {
         this.title = title;
         this.index = index;
         this.key = key;
@@ -62,6 +70,7 @@ public class Header {
             voicesCopy.put(kvPair.getKey(), lines);
         }
         this.voices = voicesCopy;
+        this.ticksPerBeat = ticksPerBeat;
         checkRep();
     }
         
@@ -75,6 +84,7 @@ public class Header {
         assert tempoBaseNote != null;
         assert tempoBPM > 0;
         assert voices != null;
+        assert ticksPerBeat > 0;
     }
     
     @Override
@@ -103,6 +113,7 @@ public class Header {
         result = prime * result + ((length == null) ? 0 : length.hashCode());
         result = prime * result + ((meter == null) ? 0 : meter.hashCode());
         result = prime * result + tempoBPM;
+        result = prime * result + ticksPerBeat;
         result = prime * result + ((tempoBaseNote == null) ? 0 : tempoBaseNote.hashCode());
         result = prime * result + ((title == null) ? 0 : title.hashCode());
         result = prime * result + ((voices == null) ? 0 : voices.hashCode());
@@ -145,6 +156,8 @@ public class Header {
             return false;
         if (tempoBPM != other.tempoBPM)
             return false;
+        if (ticksPerBeat != other.ticksPerBeat)
+            return false;
         if (tempoBaseNote == null) {
             if (other.tempoBaseNote != null)
                 return false;
@@ -183,6 +196,14 @@ public class Header {
         return this.tempoBPM;
     }
     
+    /**
+     * @return resolution of the piece: the number of ticks a beat lasts, in which every note of every voice lasts a
+     *         whole number of ticks. Durations of the music of the voices are in these ticks.
+     */
+    public int getTicksPerBeat() {
+        return this.ticksPerBeat;
+    }
+    
     /** @return the composer */
     public String getComposer() {
         return this.composer;
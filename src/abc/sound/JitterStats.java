@@ -0,0 +1,80 @@
+package abc.sound;
+
+/**
+ * Immutable account of how closely a RealtimeScheduler kept to time: for every event it sent, how late it was
+ * sent, after the moment it was due to be sent.
+ */
+public class JitterStats {
+
+    private static final double NANOSECONDS_PER_MICROSECOND = 1e3;
+
+    private final long events;
+    private final double meanNanos;
+    private final double standardDeviationNanos;
+    private final long maxNanos;
+
+    // Abstraction function:
+    //  represents events events, sent meanNanos late on average, with a standard deviation of
+    //  standardDeviationNanos, the latest maxNanos late
+    // Rep invariant:
+    //  events >= 0, meanNanos >= 0, standardDeviationNanos >= 0, maxNanos >= 0
+    //  if events == 0, all of them are 0
+    // Safety from rep exposure:
+    //  all fields are private, final and primitive
+
+    /**
+     * @param events number of events sent, >= 0
+     * @param meanNanos mean nanoseconds an event was sent late, >= 0
+     * @param standardDeviationNanos standard deviation of the nanoseconds an event was sent late, >= 0
+     * @param maxNanos most nanoseconds an event was sent late, >= 0
+     */
+    public JitterStats(long events, double meanNanos, double standardDeviationNanos, long maxNanos) {
+        this.events = events;
+        this.meanNanos = meanNanos;
+        this.standardDeviationNanos = standardDeviationNanos;
+        this.maxNanos = maxNanos;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert events >= 0;
+        assert meanNanos >= 0;
+        assert standardDeviationNanos >= 0;
+        assert maxNanos >= 0;
+        assert events > 0 || (meanNanos == 0 && standardDeviationNanos == 0 && maxNanos == 0);
+    }
+
+    /**
+     * @return number of events sent
+     */
+    public long getEvents() {
+        return events;
+    }
+
+    /**
+     * @return mean microseconds an event was sent late, 0 if none was sent
+     */
+    public double getMeanMicros() {
+        return meanNanos / NANOSECONDS_PER_MICROSECOND;
+    }
+
+    /**
+     * @return standard deviation of the microseconds an event was sent late, 0 if none was sent
+     */
+    public double getStandardDeviationMicros() {
+        return standardDeviationNanos / NANOSECONDS_PER_MICROSECOND;
+    }
+
+    /**
+     * @return most microseconds an event was sent late, 0 if none was sent
+     */
+    public double getMaxMicros() {
+        return maxNanos / NANOSECONDS_PER_MICROSECOND;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d events sent %.1f us late on average, standard deviation %.1f us, at most %.1f us",
+                events, getMeanMicros(), getStandardDeviationMicros(), getMaxMicros());
+    }
+}
@@ -0,0 +1,54 @@
+package abc.sound;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Exports music as Standard MIDI Files, without a Sequencer or any other MIDI or audio device, so that tunes can be
+ * rendered on machines that have none. Files are encoded by a MidiFileWriter, straight from the compiled score.
+ */
+public class MidiExport {
+
+    private MidiExport() {
+        throw new AssertionError("MidiExport is not instantiable");
+    }
+
+    /**
+     * Writes a piece as a Standard MIDI File, at the tempo and resolution given in its header
+     * @param piece piece to export
+     * @param out stream to write to; not closed
+     * @throws IOException if out cannot be written to
+     * @throws IllegalArgumentException if the resolution of piece is finer than a MIDI file can hold
+     */
+    public static void write(Piece piece, OutputStream out) throws IOException {
+        write(piece.getMusic(), piece.getHeader().getTicksPerBeat(), piece.getHeader().getTempoBPM(), out);
+    }
+
+    /**
+     * Writes a piece as a Standard MIDI File, at the tempo and resolution given in its header
+     * @param piece piece to export
+     * @param channel channel to write to, e.g. a FileChannel; not closed
+     * @throws IOException if channel cannot be written to
+     * @throws IllegalArgumentException if the resolution of piece is finer than a MIDI file can hold
+     */
+    public static void write(Piece piece, WritableByteChannel channel) throws IOException {
+        OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+        write(piece, out);
+        out.flush();
+    }
+
+    /**
+     * Writes music as a Standard MIDI File
+     * @param music music to export
+     * @param ticksPerBeat number of the ticks of music a beat lasts, in 1..0x7FFF
+     * @param beatsPerMinute tempo to play music at, > 0
+     * @param out stream to write to; not closed
+     * @throws IOException if out cannot be written to
+     */
+    public static void write(Music music, int ticksPerBeat, int beatsPerMinute, OutputStream out) throws IOException {
+        new MidiFileWriter().write(CompiledScore.compile(music), ticksPerBeat, beatsPerMinute, out);
+    }
+}
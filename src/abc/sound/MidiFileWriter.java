@@ -0,0 +1,201 @@
+package abc.sound;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes compiled scores as Standard MIDI Files, encoding note events straight into a fixed-size buffer as it goes,
+ * without building a javax.sound.midi.Sequence first. Delta times are written as variable-length quantities and
+ * consecutive events of the same kind share their status byte (running status).
+ * Besides the score, a writer only holds its buffer and a NoteEventCursor, so its memory does not grow with the
+ * length of the score. A writer may be reused for any number of files, one at a time.
+ */
+public class MidiFileWriter {
+
+    private static final int BUFFER_BYTES = 8192;
+
+    // MIDI channel and velocity, the same as SequencePlayer's
+    private static final int CHANNEL = 0;
+    private static final int VELOCITY = 100;
+    private static final int NOTE_OFF = 0x80 | CHANNEL;
+    private static final int NOTE_ON = 0x90 | CHANNEL;
+    private static final int MIDI_NOTES = 128;
+
+    private static final int META = 0xFF;
+    private static final int META_SET_TEMPO = 0x51;
+    private static final int META_END_OF_TRACK = 0x2F;
+    private static final int MICROSECONDS_PER_MINUTE = 60000000;
+
+    private static final int MAX_TICKS_PER_BEAT = 0x7FFF;
+
+    private final byte[] buffer = new byte[BUFFER_BYTES];
+    private final NoteEventCursor events = new NoteEventCursor();
+
+    // state of the file being written, reset by every write
+    private OutputStream out; // null while only counting bytes
+    private int buffered;
+    private long written;
+    private int lastTick;
+    private int runningStatus;
+
+    // Abstraction function:
+    //  represents a writer that has written the first written bytes of the current file, of which the last
+    //  buffered are in buffer[0..buffered) and not yet in out. lastTick is the tick of the last event written and
+    //  runningStatus its status byte, or -1 if the next event must give its own. events walks the note events of
+    //  the score being written.
+    // Rep invariant:
+    //  0 <= buffered <= buffer.length, buffered <= written
+    // Safety from rep exposure:
+    //  all fields are private; the buffer and cursor are never returned
+
+    private void checkRep() {
+        assert 0 <= buffered && buffered <= buffer.length;
+        assert buffered <= written;
+    }
+
+    /**
+     * Writes score as a Standard MIDI File of a single track.
+     * The file has the same events as SequencePlayer.addNotes(score, 0) puts in its track, in the same order,
+     * preceded by the tempo.
+     * @param score notes to write
+     * @param ticksPerBeat ticks per beat of the score, 0 < ticksPerBeat <= 32767
+     * @param beatsPerMinute tempo to play score at, > 0
+     * @param out stream to write to; not closed
+     * @throws IOException if out cannot be written to
+     */
+    public void write(CompiledScore score, int ticksPerBeat, int beatsPerMinute, OutputStream out) throws IOException {
+        if (ticksPerBeat <= 0 || ticksPerBeat > MAX_TICKS_PER_BEAT) {
+            throw new IllegalArgumentException("ticks per beat must be in 1.." + MAX_TICKS_PER_BEAT);
+        }
+        if (beatsPerMinute <= 0) {
+            throw new IllegalArgumentException("beats per minute must be positive");
+        }
+        if (score.size() > NoteEventCursor.MAX_NOTES) {
+            throw new IllegalArgumentException("cannot write more than " + NoteEventCursor.MAX_NOTES + " notes");
+        }
+
+        // the track chunk starts with its length, so the events are encoded twice: once to count their bytes
+        // and once to write them
+        start(null, score);
+        track(beatsPerMinute);
+        long trackBytes = written;
+        if (trackBytes > 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("score too long for a MIDI track");
+        }
+
+        start(out, score);
+        writeAscii("MThd");
+        writeInt(6);
+        writeShort(0); // format 0: a single track
+        writeShort(1);
+        writeShort(ticksPerBeat);
+        writeAscii("MTrk");
+        writeInt((int) trackBytes);
+        track(beatsPerMinute);
+        flush();
+        this.out = null;
+    }
+
+    /**
+     * Resets the writer to write a new file of score to out, or to count the bytes of one if out is null
+     */
+    private void start(OutputStream out, CompiledScore score) {
+        this.out = out;
+        buffered = 0;
+        written = 0;
+        lastTick = 0;
+        runningStatus = -1;
+        events.start(score);
+        checkRep();
+    }
+
+    /**
+     * Encodes the events of the track of the score being written: the tempo, the note events in order of tick, the end of track
+     */
+    private void track(int beatsPerMinute) throws IOException {
+        int microsecondsPerBeat = MICROSECONDS_PER_MINUTE / beatsPerMinute;
+        metaEvent(0, META_SET_TEMPO, 3);
+        writeByte(microsecondsPerBeat >>> 16);
+        writeByte(microsecondsPerBeat >>> 8);
+        writeByte(microsecondsPerBeat);
+
+        int endTick = 0;
+        while (events.next()) {
+            endTick = events.getTick();
+            noteEvent(endTick, events.isNoteOn() ? NOTE_ON : NOTE_OFF, events.getMidiPitch());
+        }
+        metaEvent(endTick, META_END_OF_TRACK, 0);
+    }
+
+    private void noteEvent(int tick, int status, int note) throws IOException {
+        if (note < 0 || note >= MIDI_NOTES) {
+            throw new IllegalArgumentException("Cannot write note with the pitch " + note + " at tick " + tick);
+        }
+        writeDelta(tick);
+        if (status != runningStatus) {
+            writeByte(status);
+            runningStatus = status;
+        }
+        writeByte(note);
+        writeByte(VELOCITY);
+    }
+
+    private void metaEvent(int tick, int type, int length) throws IOException {
+        writeDelta(tick);
+        writeByte(META);
+        writeByte(type);
+        writeByte(length);
+        // meta events cancel running status
+        runningStatus = -1;
+    }
+
+    /**
+     * Writes the time from the last event to tick as a variable-length quantity: 7 bits a byte, most significant
+     * first, every byte but the last with its top bit set
+     */
+    private void writeDelta(int tick) throws IOException {
+        int delta = tick - lastTick;
+        assert delta >= 0 : "events must be written in order of tick";
+        lastTick = tick;
+        int shift = 28;
+        while (shift > 0 && (delta >>> shift) == 0) {
+            shift -= 7;
+        }
+        for (; shift > 0; shift -= 7) {
+            writeByte(0x80 | (delta >>> shift));
+        }
+        writeByte(delta & 0x7F);
+    }
+
+    private void writeAscii(String chunkType) throws IOException {
+        for (int i = 0; i < chunkType.length(); i++) {
+            writeByte(chunkType.charAt(i));
+        }
+    }
+
+    private void writeInt(int value) throws IOException {
+        writeShort(value >>> 16);
+        writeShort(value);
+    }
+
+    private void writeShort(int value) throws IOException {
+        writeByte(value >>> 8);
+        writeByte(value);
+    }
+
+    private void writeByte(int value) throws IOException {
+        written++;
+        if (out == null) {
+            return;
+        }
+        if (buffered == buffer.length) {
+            flush();
+        }
+        buffer[buffered++] = (byte) value;
+    }
+
+    private void flush() throws IOException {
+        out.write(buffer, 0, buffered);
+        buffered = 0;
+    }
+}
@@ -0,0 +1,50 @@
+package abc.sound;
+
+/**
+ * Sums and scales blocks of stereo PCM audio, the inner loops of a mixer. A block of a mix is held as floats,
+ * channels interleaved, so that it can be summed and scaled without clipping; sources are floats or 16-bit samples,
+ * laid out the same way. Every method works on the first length samples of its arrays, so a long mix is made one
+ * block at a time, each block in arrays of its own.
+ * Two kernels compute the same results: a scalar reference, and one whose loops HotSpot compiles to SIMD
+ * instructions. The system property abc.sound.mixKernel selects one of them: "scalar" for the reference,
+ * anything else for the SIMD one.
+ * A kernel may keep scratch buffers, so it is not safe for use by multiple threads.
+ */
+public interface MixKernel {
+
+    /**
+     * Name of the system property that selects the kernel made by create()
+     */
+    public static final String PROPERTY = "abc.sound.mixKernel";
+
+    /**
+     * @return a new kernel, the one selected by the system property PROPERTY
+     */
+    public static MixKernel create() {
+        return "scalar".equals(System.getProperty(PROPERTY)) ? new ScalarMixKernel() : new BlockMixKernel();
+    }
+
+    /**
+     * Add a source to a mix: mix[i] += leftGain * source[i] for the left samples, rightGain for the right
+     * @param mix samples to add to
+     * @param source samples to add
+     * @param leftGain factor to scale the left channel of source by
+     * @param rightGain factor to scale the right channel of source by
+     * @param length number of samples to mix, even, no more than the length of mix and source
+     */
+    void mix(float[] mix, float[] source, float leftGain, float rightGain, int length);
+
+    /**
+     * Add a source of 16-bit samples to a mix, as mix(float[], float[], float, float, int) does
+     */
+    void mix(float[] mix, short[] source, float leftGain, float rightGain, int length);
+
+    /**
+     * Convert a mix to 16-bit samples: out[i] = gain * mix[i], rounded toward zero and clamped to the range of short
+     * @param mix samples to convert
+     * @param gain factor to scale mix by
+     * @param out samples to write
+     * @param length number of samples to convert, even, no more than the length of mix and out
+     */
+    void toPcm(float[] mix, float gain, short[] out, int length);
+}
@@ -8,20 +8,34 @@ public class MultipleVoices implements Music {
     
     private final Music recentVoice;
     private final Music rest;
+    private final long duration;
+    private final int hashCode;
     
     // Abstraction function
     //  represents a piece of music consisting of recentVoice voice and the voices present in rest
     
     // Representation Invariant
     //      both fields are not null
+    //      duration is the longer of recentVoice.duration() and rest.duration()
+    //      hashCode is the hash of recentVoice and rest, as computed by hashCode()
     
     // Rep exposure
     //      Music is immutable
-    //      both fields are marked as private and final
+    //      all fields are marked as private and final
     
     private void checkRep() {
         assert recentVoice != null;
         assert rest != null;
+        assert duration == Math.max(recentVoice.duration(), rest.duration());
+        assert hashCode == hash(recentVoice, rest);
+    }
+    
+    private static int hash(Music recentVoice, Music rest) {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + recentVoice.hashCode();
+        result = prime * result + rest.hashCode();
+        return result;
     }
     
     /**
@@ -32,18 +46,33 @@ public class MultipleVoices implements Music {
     public MultipleVoices(Music recentVoice, Music rest) {
         this.recentVoice = recentVoice;
         this.rest = rest;
+        this.duration = Math.max(recentVoice.duration(), rest.duration());
+        this.hashCode = hash(recentVoice, rest);
         checkRep();
     }
+    
+    /**
+     * @return the most recently added voice
+     */
+    Music getRecentVoice() {
+        return recentVoice;
+    }
+    
+    /**
+     * @return the remaining voices
+     */
+    Music getRest() {
+        return rest;
+    }
 
     @Override
-    public double duration() {
-        return Double.max(recentVoice.duration(), rest.duration());
+    public long duration() {
+        return duration;
     }
 
     @Override
-    public void play(SequencePlayer player, double atBeat) {
-        recentVoice.play(player, atBeat);
-        rest.play(player, atBeat);
+    public void play(SequencePlayer player, long atBeat) {
+        MusicTraversal.play(this, player, atBeat);
     }
     
     /**
@@ -53,16 +82,12 @@ public class MultipleVoices implements Music {
      */
     @Override
     public String toString() {
-        return "Together[" + recentVoice.toString() + "||||" + rest.toString() +"]";
+        return MusicTraversal.toString(this);
     }
 
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + ((recentVoice == null) ? 0 : recentVoice.hashCode());
-        result = prime * result + ((rest == null) ? 0 : rest.hashCode());
-        return result;
+        return hashCode;
     }
 
     @Override
@@ -73,17 +98,6 @@ public class MultipleVoices implements Music {
             return false;
         if (getClass() != obj.getClass())
             return false;
-        MultipleVoices other = (MultipleVoices) obj;
-        if (recentVoice == null) {
-            if (other.recentVoice != null)
-                return false;
-        } else if (!recentVoice.equals(other.recentVoice))
-            return false;
-        if (rest == null) {
-            if (other.rest != null)
-                return false;
-        } else if (!rest.equals(other.rest))
-            return false;
-        return true;
+        return MusicTraversal.equal(this, (MultipleVoices) obj);
     }
 }
@@ -5,11 +5,13 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 
 import abc.parser.*;
-import lib6005.parser.GrammarCompiler;
 import lib6005.parser.ParseTree;
-import lib6005.parser.Parser;
 import lib6005.parser.UnableToParseException;
 
 /**
@@ -17,7 +19,8 @@ import lib6005.parser.UnableToParseException;
  * @author alican, mabunass, narek
  */
 public interface Music {
-    // Music = Rest(duration: double) + Note(duration: double, pitch: Pitch) + MultipleVoices(voice: Music, rest: Music) + Concat(m1: Music, m2: Music)
+    // Music = Rest(duration: long) + Note(duration: long, pitch: Pitch) + MultipleVoices(voice: Music, rest: Music) + Concat(m1: Music, m2: Music)
+    //          + MusicSequence(parts: List<Music>) + Repeat(body: Music, firstEnding: Music, secondEnding: Music)
         
      public static final String DEFAULT_METER = "4/4";
      
@@ -27,8 +30,6 @@ public interface Music {
      
      public static final String DEFAULT_COMPOSER = "Unknown";
      
-     public static final int DEFAULT_DURATION_OF_DEFAULT_NOTE = 192;
-     
      
      /**
       * Extracts header information from abc file
@@ -37,60 +38,120 @@ public interface Music {
       */
      public static Header parseHeader(File musicFile) {
         try {
-            Parser<AbcGrammar> headerParser = GrammarCompiler.compile(new File("src/abc/parser/abcNotation.g"), AbcGrammar.ROOT);
-            ParseTree<AbcGrammar> headerTree = headerParser.parse(musicFile);
+            ParseTree<AbcGrammar> headerTree = Grammars.abcParser().parse(musicFile);
             Header header = HeaderParser.buildHeader(headerTree);
             return header;
             
         } catch (UnableToParseException ex) {
             throw new IllegalArgumentException("input argument is invalid, could not be parsed: ", ex);
         } catch (IOException ex) {
-           throw new RuntimeException("Could not open grammar file, this shouldn't happen: ", ex);
-       }
+            throw new IllegalArgumentException("could not read abc file: ", ex);
+        }
      }
                     
     /**
-     * parses the lines specified in a header into Music
+     * Extracts both the header information and the music from abc file, reading the file only once
+     * @param musicFile abc file to be parsed; must be properly formatted as defined by the abc notation
+     * @return Piece whose header and music are equal to parseHeader(musicFile) and parseMusic(parseHeader(musicFile))
+     */
+    public static Piece parsePiece(File musicFile) {
+        try {
+            return AbcScanner.parse(musicFile);
+        } catch (UnableToParseException ex) {
+            throw new IllegalArgumentException("input argument is invalid, could not be parsed: ", ex);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("could not read abc file: ", ex);
+        }
+    }
+    
+    /**
+     * parses the lines specified in a header into Music, using the single pass BodyParser.SCANNER, with the voices
+     * parsed in parallel on the common fork-join pool
      * @param Header object that contains all the lines corresponding to the voices found in the abc File of the header
      * @return Music representing the music found in the Header
      */
     public static Music parseMusic(Header header) {
-        try {                      
-            Parser<MusicGrammar> musicParser = GrammarCompiler.compile(new File("src/abc/parser/musicNotation.g"), MusicGrammar.ROOT);
-            
-            Music music = new Rest(0);
-            Map<String, List<String>> voicesMap = header.getVoices();
-            List<String> voicesLines = new ArrayList<>();
-            for (List<String> lines : voicesMap.values()) {
-                if (!lines.isEmpty()) {
-                    voicesLines.add(String.join("", lines));
+        return parseMusic(header, BodyParser.SCANNER);
+    }
+    
+    /**
+     * parses the lines specified in a header into Music, with the voices parsed in parallel on the common fork-join
+     * pool, whose parallelism is set by the system property java.util.concurrent.ForkJoinPool.common.parallelism
+     * @param Header object that contains all the lines corresponding to the voices found in the abc File of the header
+     * @param bodyParser parser to use for the body of each voice
+     * @return Music representing the music found in the Header
+     */
+    public static Music parseMusic(Header header, BodyParser bodyParser) {
+        return parseMusic(header, bodyParser, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * parses the lines specified in a header into Music, parsing every voice as a separate task of pool. 
+     * The voices are nested in the same order whatever the parallelism of pool and the order the tasks finish in.
+     * @param Header object that contains all the lines corresponding to the voices found in the abc File of the header
+     * @param bodyParser parser to use for the body of each voice; must be safe to use from several threads at once
+     * @param pool pool the voices are parsed on; its parallelism bounds the number of voices parsed at once
+     * @return Music representing the music found in the Header, equal to the one parsed one voice at a time
+     */
+    public static Music parseMusic(Header header, BodyParser bodyParser, ForkJoinPool pool) {
+        Map<String, List<String>> voicesMap = header.getVoices();
+        List<String> voicesLines = new ArrayList<>();
+        for (List<String> lines : voicesMap.values()) {
+            if (!lines.isEmpty()) {
+                voicesLines.add(String.join("", lines));
+            }
+        }
+        
+        List<CompletableFuture<Music>> voices = new ArrayList<>();
+        for (String voiceLine : voicesLines) {
+            Supplier<Music> parseVoice = () -> {
+                try {
+                    return bodyParser.parse(voiceLine, header);
+                } catch (UnableToParseException ex) {
+                    throw new IllegalArgumentException("input argument is invalid, could not be parsed: ", ex);
                 }
+            };
+            if (voicesLines.size() == 1) {
+                // a single voice gains nothing from a round trip through the pool
+                voices.add(CompletableFuture.completedFuture(parseVoice.get()));
+            } else {
+                voices.add(CompletableFuture.supplyAsync(parseVoice, pool));
             }
-            for (String voiceLine : voicesLines) {
-                ParseTree<MusicGrammar> musicTree = musicParser.parse(voiceLine);
-                Music musicNew = MusicParser.buildMusic(musicTree, header);
-                music = new MultipleVoices(musicNew, music);
+        }
+        
+        // fold in the order of the voices, not the order their tasks finish in
+        Music music = Rest.of(0);
+        try {
+            for (CompletableFuture<Music> voice : voices) {
+                music = new MultipleVoices(voice.get(), music);
             }
-            return music;
-            
-        } catch (UnableToParseException ex) {
-            throw new IllegalArgumentException("input argument is invalid, could not be parsed: ", ex);
-        } catch (IOException ex) {
-            throw new RuntimeException("Could not open grammar file, this shouldn't happen: ", ex);
+        } catch (InterruptedException ex) {
+            voices.forEach(voice -> voice.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while parsing voices", ex);
+        } catch (ExecutionException ex) {
+            voices.forEach(voice -> voice.cancel(true));
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw (RuntimeException) ex.getCause();
         }
+        return music;
     }
-        
+    
     /**
-     * @return double corresponding to the total duration in number of beats for given piece of music
+     * @return total duration of this piece of music, in ticks of the piece it is part of: a beat of the piece lasts
+     *         Header.getTicksPerBeat() of them
      */
-    double duration();
+    long duration();
     
     /**
      * Play this piece.
-     * @param player player to play on
-     * @param atBeat when to play
+     * @param player player to play on, with as many ticks per beat as the piece this music is part of
+     * @param atBeat tick to play at
+     * @throws ArithmeticException if a note starts or ends past the last tick player can schedule
      */
-    public void play(SequencePlayer player, double atBeat);
+    public void play(SequencePlayer player, long atBeat);
     
     /**
      * adds the specified voice to the music to be played simultaneously
@@ -103,13 +164,36 @@ public interface Music {
     }
     
     /**
-     * concatenates two pieces of music
+     * concatenates two pieces of music. Empty music (a rest of no duration) is left out, and music2 is appended
+     * to music1 if music1 is already a MusicSequence, so a tune built one note at a time is a single MusicSequence.
      * @param music1 piece to be concanated with music2
      * @param music2 piece to be added to end of music1
      * @return new Music representing a sequence of this followed by music2
      */
     public static Music concat(Music music1, Music music2) {
-        return new Concat(music1, music2);
+        if (music2 instanceof Rest && music2.duration() == 0) {
+            return music1;
+        } else if (music1 instanceof Rest && music1.duration() == 0) {
+            return music2;
+        } else if (music1 instanceof MusicSequence) {
+            return ((MusicSequence) music1).append(music2);
+        }
+        return new MusicSequence(music1, music2);
+    }
+    
+    /**
+     * repeats a section of music, keeping it once however many times it is played. Empty music (a rest of no
+     * duration) is not repeated, so the repeat of an empty body is its endings one after the other.
+     * @param body section played twice
+     * @param firstEnding music played after the first pass through body; empty music if there is none
+     * @param secondEnding music played after the second pass through body; empty music if there is none
+     * @return new Music representing body, firstEnding, body and secondEnding played one after the other
+     */
+    public static Music repeat(Music body, Music firstEnding, Music secondEnding) {
+        if (body instanceof Rest && body.duration() == 0) {
+            return concat(firstEnding, secondEnding);
+        }
+        return new Repeat(body, firstEnding, secondEnding);
     }
 
 }
@@ -0,0 +1,165 @@
+package abc.sound;
+
+import java.util.Arrays;
+
+/**
+ * Immutable representation of two or more pieces of music played one after the other.
+ * Unlike a chain of Concats, a MusicSequence keeps its parts in a single array, along with the beat each of them starts
+ * on, so the start of any part is found in O(1) and the part playing at a given beat in O(log n).
+ * @author alican, mabunass, narek
+ *
+ */
+public class MusicSequence implements Music {
+
+    private final Music[] parts;
+    private final long[] starts;
+    private final int size;
+    private final int hashCode;
+
+    // Abstraction function:
+    //  represents parts[0], ..., parts[size-1] played one after the other, parts[i] starting starts[i] beats after
+    //  the start of the sequence
+
+    // Rep Invariant:
+    //  size >= 2, parts.length >= size, starts.length == parts.length + 1
+    //  parts[0..size) are not null
+    //  starts[0] == 0 and starts[i+1] == starts[i] + parts[i].duration() for 0 <= i < size
+    //  hashCode is the hash of parts[0..size), as computed by hashCode()
+
+    // Safety from rep exposure:
+    //  all fields are private and final, and parts and starts are never returned.
+    //  parts and starts may be shared with the longer sequences made by append. Only their elements past size are
+    //  ever written after construction, and only by the first append to claim them, so parts[0..size) and
+    //  starts[0..size] of every sequence sharing them never change.
+
+    private MusicSequence(Music[] parts, long[] starts, int size, int hashCode) {
+        this.parts = parts;
+        this.starts = starts;
+        this.size = size;
+        this.hashCode = hashCode;
+        checkRep();
+    }
+
+    /**
+     * Make a sequence of two pieces of music
+     * @param first piece played first
+     * @param second piece played after first
+     */
+    public MusicSequence(Music first, Music second) {
+        this(new Music[] { first, second },
+             new long[] { 0, first.duration(), first.duration() + second.duration() },
+             2, 31 * (31 + first.hashCode()) + second.hashCode());
+    }
+
+    private void checkRep() {
+        assert size >= 2;
+        assert parts.length >= size;
+        assert starts.length == parts.length + 1;
+        assert starts[0] == 0;
+        assert parts[size - 1] != null;
+        assert starts[size] == starts[size - 1] + parts[size - 1].duration();
+    }
+
+    /**
+     * Appends a piece of music to this sequence. Appending to the longest sequence made from the same parts so far
+     * takes amortized O(1) time, so building a sequence one note at a time is linear.
+     * @param next piece to play after this
+     * @return a new sequence of the parts of this followed by next
+     */
+    public MusicSequence append(Music next) {
+        synchronized (parts) {
+            // a free slot is one that no longer sequence sharing parts has claimed yet
+            if (size < parts.length && parts[size] == null) {
+                starts[size + 1] = starts[size] + next.duration();
+                parts[size] = next;
+                return new MusicSequence(parts, starts, size + 1, 31 * hashCode + next.hashCode());
+            }
+        }
+        // parts past size may belong to a longer sequence, so only the parts of this one are copied
+        int capacity = 2 * size;
+        Music[] grownParts = new Music[capacity];
+        System.arraycopy(parts, 0, grownParts, 0, size);
+        long[] grownStarts = new long[capacity + 1];
+        System.arraycopy(starts, 0, grownStarts, 0, size + 1);
+        grownParts[size] = next;
+        grownStarts[size + 1] = grownStarts[size] + next.duration();
+        return new MusicSequence(grownParts, grownStarts, size + 1, 31 * hashCode + next.hashCode());
+    }
+
+    /**
+     * @return number of parts of this sequence
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param i index of a part, 0 <= i < size()
+     * @return the i-th part of this sequence
+     */
+    Music part(int i) {
+        assert i < size;
+        return parts[i];
+    }
+
+    /**
+     * @param i index of a part, 0 <= i < size()
+     * @return number of beats from the start of this sequence to the start of its i-th part
+     */
+    long startOf(int i) {
+        assert i < size;
+        return starts[i];
+    }
+
+    /**
+     * @param beat number of beats since the start of this sequence, 0 <= beat < duration()
+     * @return index of the part playing at beat, i.e. the last part starting at or before beat
+     */
+    int partAt(long beat) {
+        assert beat >= 0 && beat < duration();
+        int found = Arrays.binarySearch(starts, 0, size, beat);
+        if (found < 0) {
+            return -found - 2;
+        }
+        // parts of no duration share their start with the part after them
+        while (found + 1 < size && starts[found + 1] == beat) {
+            found++;
+        }
+        return found;
+    }
+
+    @Override
+    public long duration() {
+        return starts[size];
+    }
+
+    @Override
+    public void play(SequencePlayer player, long atBeat) {
+        MusicTraversal.play(this, player, atBeat);
+    }
+
+    /**
+     * String representation of this in which the string representations of the parts are separated by a single space
+     * @return string rep of this as described above
+     */
+    @Override
+    public String toString() {
+        return MusicTraversal.toString(this);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        return MusicTraversal.equal(this, (MusicSequence) obj);
+    }
+}
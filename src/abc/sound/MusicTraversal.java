@@ -0,0 +1,276 @@
+package abc.sound;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Walks of Music trees that keep their own work stack instead of recursing, so that the depth of a tree (a chain of
+ * Concats is as deep as the tune is long) is bounded by the heap rather than by the stack of the calling thread.
+ * MusicSequence, Concat, MultipleVoices and Repeat delegate their play, equals and toString here; their duration and hashCode are
+ * computed once at construction from those of their parts, and need no walk at all.
+ */
+class MusicTraversal {
+
+    private MusicTraversal() {
+        throw new AssertionError("MusicTraversal is not instantiable");
+    }
+
+    /**
+     * Plays music, visiting its notes in the same order as a recursive walk of music1 before music2 and of
+     * recentVoice before rest would
+     * @param music music to play
+     * @param player player to play on
+     * @param atBeat when to play
+     */
+    static void play(Music music, SequencePlayer player, long atBeat) {
+        forEachLeaf(music, atBeat, (leaf, beat) -> leaf.play(player, beat));
+    }
+
+    /**
+     * Visits every note and rest of music, with the beat it starts on, in the order play plays them
+     * @param music music to walk
+     * @param atBeat beat music starts on
+     * @param visitor called with every note and rest of music and its start beat
+     */
+    static void forEachLeaf(Music music, long atBeat, ObjLongConsumer<Music> visitor) {
+        walk(music, atBeat, visitor, true);
+    }
+
+    /**
+     * Visits every note, rest and repeat of music, with the beat it starts on, in the order play plays them; a repeat
+     * is visited as it is, without walking it
+     * @param music music to walk
+     * @param atBeat beat music starts on
+     * @param visitor called with every note, rest and repeat of music that isn't part of a repeat, and its start beat
+     */
+    static void forEachPart(Music music, long atBeat, ObjLongConsumer<Music> visitor) {
+        walk(music, atBeat, visitor, false);
+    }
+
+    /**
+     * Visits every note and rest of music, with the beat it starts on, in the order play plays them; or, unless
+     * intoRepeats, every note, rest and repeat outside a repeat
+     */
+    private static void walk(Music music, long atBeat, ObjLongConsumer<Music> visitor, boolean intoRepeats) {
+        WalkStack stack = new WalkStack();
+        stack.push(music, atBeat, 0);
+        while (stack.size > 0) {
+            stack.size--;
+            Music piece = stack.pieces[stack.size];
+            long beat = stack.beats[stack.size];
+            if (piece instanceof MusicSequence) {
+                // play the parts in a loop, until one of them needs a walk of its own
+                MusicSequence sequence = (MusicSequence) piece;
+                for (int i = stack.nextParts[stack.size]; i < sequence.size(); i++) {
+                    Music part = sequence.part(i);
+                    if (isComposite(part) && (intoRepeats || !(part instanceof Repeat))) {
+                        if (i + 1 < sequence.size()) {
+                            stack.push(sequence, beat, i + 1);
+                        }
+                        stack.push(part, beat + sequence.startOf(i), 0);
+                        break;
+                    }
+                    visitor.accept(part, beat + sequence.startOf(i));
+                }
+            } else if (piece instanceof Concat) {
+                Concat concat = (Concat) piece;
+                stack.push(concat.getMusic2(), beat + concat.getMusic1().duration(), 0);
+                stack.push(concat.getMusic1(), beat, 0);
+            } else if (piece instanceof MultipleVoices) {
+                MultipleVoices voices = (MultipleVoices) piece;
+                stack.push(voices.getRest(), beat, 0);
+                stack.push(voices.getRecentVoice(), beat, 0);
+            } else if (piece instanceof Repeat && intoRepeats) {
+                // the parts of the body are listed by the repeat, and replayed for each pass instead of walked.
+                // Part i of the first pass is resumed from next part i, and of the second pass from size + i.
+                Repeat repeat = (Repeat) piece;
+                int size = repeat.bodySize();
+                int next = stack.nextParts[stack.size];
+                long secondPass = repeat.getBody().duration() + repeat.getFirstEnding().duration();
+                if (next == 0) {
+                    stack.push(repeat.getSecondEnding(), beat + secondPass + repeat.getBody().duration(), 0);
+                    if (size > 0) {
+                        stack.push(repeat, beat, size);
+                    }
+                    stack.push(repeat.getFirstEnding(), beat + repeat.getBody().duration(), 0);
+                }
+                int pass = (next < size) ? 0 : size;
+                long passBeat = (next < size) ? beat : beat + secondPass;
+                for (int i = next - pass; i < size; i++) {
+                    Music part = repeat.bodyPart(i);
+                    if (isComposite(part)) {
+                        if (i + 1 < size) {
+                            stack.push(repeat, beat, pass + i + 1);
+                        }
+                        stack.push(part, passBeat + repeat.bodyStartOf(i), 0);
+                        break;
+                    }
+                    visitor.accept(part, passBeat + repeat.bodyStartOf(i));
+                }
+            } else {
+                visitor.accept(piece, beat);
+            }
+        }
+    }
+
+    /**
+     * @return true iff music is made of other pieces of music, and so must be walked by MusicTraversal
+     */
+    private static boolean isComposite(Music music) {
+        return music instanceof MusicSequence || music instanceof Concat || music instanceof MultipleVoices
+                || music instanceof Repeat;
+    }
+
+    /**
+     * @return true iff music is a note, a rest, a repeat, or a MusicSequence of them, and so is already the list of
+     *         parts forEachPart visits
+     */
+    static boolean isFlat(Music music) {
+        if (music instanceof MusicSequence) {
+            MusicSequence sequence = (MusicSequence) music;
+            for (int i = 0; i < sequence.size(); i++) {
+                if (isComposite(sequence.part(i)) && !(sequence.part(i) instanceof Repeat)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return !isComposite(music) || music instanceof Repeat;
+    }
+
+    /**
+     * @return true iff music is a rest of no duration, the empty piece of music
+     */
+    private static boolean isEmpty(Music music) {
+        return music instanceof Rest && music.duration() == 0;
+    }
+
+    /**
+     * @param music music to compare
+     * @param other music to compare to
+     * @return true iff music and other are built of equal notes and rests, combined by equal concats, voices and
+     *         repeats
+     */
+    static boolean equal(Music music, Music other) {
+        Deque<Music> lefts = new ArrayDeque<>();
+        Deque<Music> rights = new ArrayDeque<>();
+        lefts.push(music);
+        rights.push(other);
+        while (!lefts.isEmpty()) {
+            Music left = lefts.pop();
+            Music right = rights.pop();
+            if (left == right) {
+                continue;
+            }
+            // hash codes are cached on composites, so this rules out most unequal subtrees without walking them
+            if (left.getClass() != right.getClass() || left.hashCode() != right.hashCode()) {
+                return false;
+            }
+            if (left instanceof MusicSequence) {
+                MusicSequence leftSequence = (MusicSequence) left;
+                MusicSequence rightSequence = (MusicSequence) right;
+                if (leftSequence.size() != rightSequence.size()) {
+                    return false;
+                }
+                for (int i = leftSequence.size() - 1; i >= 0; i--) {
+                    lefts.push(leftSequence.part(i));
+                    rights.push(rightSequence.part(i));
+                }
+            } else if (left instanceof Concat) {
+                lefts.push(((Concat) left).getMusic2());
+                rights.push(((Concat) right).getMusic2());
+                lefts.push(((Concat) left).getMusic1());
+                rights.push(((Concat) right).getMusic1());
+            } else if (left instanceof MultipleVoices) {
+                lefts.push(((MultipleVoices) left).getRest());
+                rights.push(((MultipleVoices) right).getRest());
+                lefts.push(((MultipleVoices) left).getRecentVoice());
+                rights.push(((MultipleVoices) right).getRecentVoice());
+            } else if (left instanceof Repeat) {
+                lefts.push(((Repeat) left).getSecondEnding());
+                rights.push(((Repeat) right).getSecondEnding());
+                lefts.push(((Repeat) left).getFirstEnding());
+                rights.push(((Repeat) right).getFirstEnding());
+                lefts.push(((Repeat) left).getBody());
+                rights.push(((Repeat) right).getBody());
+            } else if (!left.equals(right)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param music music to convert
+     * @return the string representation of music, as specified by Concat.toString, MultipleVoices.toString and
+     *         Repeat.toString
+     */
+    static String toString(Music music) {
+        StringBuilder string = new StringBuilder();
+        // holds either Music still to be converted or literal Strings to be appended as they are
+        Deque<Object> parts = new ArrayDeque<>();
+        parts.push(music);
+        while (!parts.isEmpty()) {
+            Object part = parts.pop();
+            if (part instanceof MusicSequence) {
+                MusicSequence sequence = (MusicSequence) part;
+                for (int i = sequence.size() - 1; i > 0; i--) {
+                    parts.push(sequence.part(i));
+                    parts.push(" ");
+                }
+                parts.push(sequence.part(0));
+            } else if (part instanceof Concat) {
+                parts.push(((Concat) part).getMusic2());
+                parts.push(" ");
+                parts.push(((Concat) part).getMusic1());
+            } else if (part instanceof MultipleVoices) {
+                parts.push("]");
+                parts.push(((MultipleVoices) part).getRest());
+                parts.push("||||");
+                parts.push(((MultipleVoices) part).getRecentVoice());
+                parts.push("Together[");
+            } else if (part instanceof Repeat) {
+                Repeat repeat = (Repeat) part;
+                if (!isEmpty(repeat.getSecondEnding())) {
+                    parts.push(repeat.getSecondEnding());
+                    parts.push(" ");
+                }
+                parts.push(repeat.getBody());
+                parts.push(" ");
+                if (!isEmpty(repeat.getFirstEnding())) {
+                    parts.push(repeat.getFirstEnding());
+                    parts.push(" ");
+                }
+                parts.push(repeat.getBody());
+            } else {
+                string.append(part.toString());
+            }
+        }
+        return string.toString();
+    }
+
+    /**
+     * Growable stack of the pieces forEachLeaf has yet to walk, each with the beat it starts on and, for a MusicSequence,
+     * the index of its next part to play. Kept in parallel arrays so that beats aren't boxed.
+     */
+    private static class WalkStack {
+        private Music[] pieces = new Music[16];
+        private long[] beats = new long[16];
+        private int[] nextParts = new int[16];
+        private int size = 0;
+
+        void push(Music piece, long beat, int nextPart) {
+            if (size == pieces.length) {
+                pieces = Arrays.copyOf(pieces, 2 * size);
+                beats = Arrays.copyOf(beats, 2 * size);
+                nextParts = Arrays.copyOf(nextParts, 2 * size);
+            }
+            pieces[size] = piece;
+            beats[size] = beat;
+            nextParts[size] = nextPart;
+            size++;
+        }
+    }
+}
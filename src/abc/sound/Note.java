@@ -2,6 +2,9 @@ package abc.sound;
 
 /**
  * An immutable type that represents a single note
+ * 
+ * <p> Note.of shares the notes it makes: a tune plays a few dozen pitches at a handful of lengths over and over, so
+ * its notes are mostly the same few instances.
  * @author alican, mabunass, narek
  *
  */
@@ -9,7 +12,7 @@ public class Note implements Music {
     
     private final Pitch pitch;
     
-    private final double duration;
+    private final long duration;
     
     // Abstraction function:
     //  represents a note at the specified pitch and played for duration duration
@@ -19,36 +22,70 @@ public class Note implements Music {
     // Safety from rep exposure:
     //  all fields are marked as private and final and are immutable types. Every method that returns something, returns an instance of an 
     //  immutable type
+    // Thread safety argument:
+    //  Note is immutable, and its fields are final, so a note read from CANONICAL by a thread other than the one that
+    //  made it is seen whole even though the array is shared without a lock. Two threads making the same note at once
+    //  may each store their own; either is a correct note, and only sharing is lost.
+    
+    // notes made by of, each in the slot of its hash; a slot holds the last one made for it, so the cache is bounded
+    private static final int CANONICAL_SLOTS = 1024;
+    private static final Note[] CANONICAL = new Note[CANONICAL_SLOTS];
     
     /**
      * creates a new Note with specified pitch and duration
      * @param pitch the pitch of the note
-     * @param duration of the note
+     * @param duration of the note, in ticks
      */
-    public Note(Pitch pitch, double duration) {
+    public Note(Pitch pitch, long duration) {
         this.pitch = pitch;
         this.duration = duration;
         checkRep();
     }
     
+    /**
+     * @param pitch the pitch of the note
+     * @param duration of the note, in ticks, > 0
+     * @return a note of pitch and duration, equal to new Note(pitch, duration); the same instance as an earlier call
+     *         returned for an equal note unless a different note has since taken its slot
+     */
+    public static Note of(Pitch pitch, long duration) {
+        // hashed by hand: Objects.hash would box both for every note
+        int hash = 31 * pitch.hashCode() + (int) (duration ^ (duration >>> 32));
+        int slot = (hash ^ (hash >>> 16)) & (CANONICAL_SLOTS - 1);
+        Note canonical = CANONICAL[slot];
+        if (canonical != null && canonical.duration == duration && canonical.pitch.equals(pitch)) {
+            return canonical;
+        }
+        Note note = new Note(pitch, duration);
+        CANONICAL[slot] = note;
+        return note;
+    }
+    
     private void checkRep() {
         assert pitch != null;
         assert duration > 0;
     }
 
+    /**
+     * @return the pitch of this note
+     */
+    Pitch getPitch() {
+        return pitch;
+    }
+
     @Override
-    public double duration() {
+    public long duration() {
         return this.duration;
     }
 
     @Override
-    public void play(SequencePlayer player, double atBeat) {
-        player.addNote(pitch.toMidiNote(), (int) atBeat, (int) duration);
+    public void play(SequencePlayer player, long atBeat) {
+        player.addNote(pitch.toMidiNote(), Math.toIntExact(atBeat), Math.toIntExact(duration));
     }
     
     /**
      * converts the note to a human-readable string of the format:
-     *  <pitch><duration/192.0>
+     *  <pitch><duration>
      */
     @Override
     public String toString() {
@@ -64,7 +101,7 @@ public class Note implements Music {
         if (getClass() != obj.getClass())
             return false;
         Note other = (Note) obj;
-        if (Double.doubleToLongBits(duration) != Double.doubleToLongBits(other.duration))
+        if (duration != other.duration)
             return false;
         if (pitch == null) {
             if (other.pitch != null)
@@ -78,9 +115,7 @@ public class Note implements Music {
     public int hashCode() {
         final int prime = 31;
         int result = 1;
-        long temp;
-        temp = Double.doubleToLongBits(duration);
-        result = prime * result + (int) (temp ^ (temp >>> 32));
+        result = prime * result + (int) (duration ^ (duration >>> 32));
         result = prime * result + ((pitch == null) ? 0 : pitch.hashCode());
         return result;
     }
@@ -0,0 +1,159 @@
+package abc.sound;
+
+import java.util.Arrays;
+
+/**
+ * Walks the NOTE_ON and NOTE_OFF events of a compiled score in order of tick, one at a time, in the order
+ * SequencePlayer.addNotes puts them in its track: on the same tick, notes end, then notes start, then notes of no
+ * duration end. Besides the score, a cursor only holds the notes playing at the current tick, so walking a score
+ * takes memory that does not grow with its length, and allocates nothing once the cursor has seen the most notes
+ * that play at once. A cursor may be reused for any number of scores, one at a time.
+ */
+class NoteEventCursor {
+
+    // kinds of note events, in the order they come when they fall on the same tick
+    private static final long EVENT_NOTE_OFF = 0;
+    private static final long EVENT_NOTE_ON = 1;
+    private static final long EVENT_INSTANT_NOTE_OFF = 2; // end of a note of no duration, after its start
+
+    /**
+     * Most notes a score may have for a cursor to walk it
+     */
+    static final int MAX_NOTES = (1 << 30) - 1;
+
+    private CompiledScore score = CompiledScore.compile(new Rest(0));
+    private int next;
+    private long[] playing = new long[64];
+    private int numberPlaying;
+
+    // the current event
+    private int tick;
+    private boolean noteOn;
+    private int note;
+
+    // Abstraction function:
+    //  represents a walk through the events of score, standing on the event of note `note` of score, on tick,
+    //  a NOTE_ON if noteOn, else a NOTE_OFF. Notes 0, ..., next-1 of score have started, and
+    //  playing[0..numberPlaying) is a min-heap of the NOTE_OFF events still to come, each packed by pack(...).
+    // Rep invariant:
+    //  0 <= next <= score.size(), 0 <= numberPlaying <= playing.length
+    // Safety from rep exposure:
+    //  all fields are private; the heap is never returned; score is immutable
+
+    private void checkRep() {
+        assert 0 <= next && next <= score.size();
+        assert 0 <= numberPlaying && numberPlaying <= playing.length;
+    }
+
+    /**
+     * Start walking score from its first event
+     * @param score score to walk, of at most MAX_NOTES notes
+     */
+    void start(CompiledScore score) {
+        if (score.size() > MAX_NOTES) {
+            throw new IllegalArgumentException("cannot walk more than " + MAX_NOTES + " notes");
+        }
+        this.score = score;
+        next = 0;
+        numberPlaying = 0;
+        checkRep();
+    }
+
+    /**
+     * Move to the next event of the score
+     * @return true if there was one, false if every event has been walked
+     */
+    boolean next() {
+        // merge the note on events, already in order of tick, with the note off events of the notes playing
+        if (next == score.size() && numberPlaying == 0) {
+            return false;
+        }
+        long noteOnEvent = (next < score.size()) ? pack(score.getStartTick(next), EVENT_NOTE_ON, next) : Long.MAX_VALUE;
+        long noteOffEvent = (numberPlaying > 0) ? playing[0] : Long.MAX_VALUE;
+        if (noteOffEvent < noteOnEvent) {
+            removeFirstPlaying();
+            tick = (int) (noteOffEvent >>> 32);
+            noteOn = false;
+            note = (int) noteOffEvent & MAX_NOTES;
+        } else {
+            int duration = score.getDurationTicks(next);
+            tick = score.getStartTick(next);
+            noteOn = true;
+            note = next;
+            // no note of a CompiledScore ends past Integer.MAX_VALUE, so the end tick is never negative
+            addPlaying(pack(tick + duration, duration == 0 ? EVENT_INSTANT_NOTE_OFF : EVENT_NOTE_OFF, next));
+            next++;
+        }
+        checkRep();
+        return true;
+    }
+
+    /**
+     * @return tick of the current event
+     */
+    int getTick() {
+        return tick;
+    }
+
+    /**
+     * @return true if the current event is a NOTE_ON, false if a NOTE_OFF
+     */
+    boolean isNoteOn() {
+        return noteOn;
+    }
+
+    /**
+     * @return MIDI note number of the current event
+     */
+    int getMidiPitch() {
+        return score.getMidiPitch(note);
+    }
+
+    /**
+     * @return tick, kind and note packed into a long that orders events by tick, then kind, then note:
+     *         tick (31 bits) | kind (2 bits) | note (30 bits)
+     */
+    private static long pack(int tick, long kind, int note) {
+        return ((long) tick << 32) | (kind << 30) | note;
+    }
+
+    // min-heap of the note off events of the notes playing
+
+    private void addPlaying(long noteOff) {
+        if (numberPlaying == playing.length) {
+            playing = Arrays.copyOf(playing, 2 * numberPlaying);
+        }
+        int child = numberPlaying++;
+        while (child > 0) {
+            int parent = (child - 1) / 2;
+            if (playing[parent] <= noteOff) {
+                break;
+            }
+            playing[child] = playing[parent];
+            child = parent;
+        }
+        playing[child] = noteOff;
+    }
+
+    private void removeFirstPlaying() {
+        long last = playing[--numberPlaying];
+        int parent = 0;
+        while (true) {
+            int child = 2 * parent + 1;
+            if (child >= numberPlaying) {
+                break;
+            }
+            if (child + 1 < numberPlaying && playing[child + 1] < playing[child]) {
+                child++;
+            }
+            if (last <= playing[child]) {
+                break;
+            }
+            playing[parent] = playing[child];
+            parent = child;
+        }
+        if (numberPlaying > 0) {
+            playing[parent] = last;
+        }
+    }
+}
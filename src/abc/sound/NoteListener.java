@@ -0,0 +1,24 @@
+package abc.sound;
+
+/**
+ * Receives every note scheduled on a SequencePlayer, for debugging, metrics or tracing.
+ * The note is passed as primitives, so notifying a listener allocates nothing.
+ * For example, player.setNoteListener((note, startTick, numTicks) -> System.out.println(startTick + ", " + numTicks))
+ * prints the start and length of every note as it is scheduled.
+ */
+@FunctionalInterface
+public interface NoteListener {
+
+    /**
+     * Listener that ignores every note, the default of every SequencePlayer
+     */
+    public static final NoteListener NONE = (note, startTick, numTicks) -> { };
+
+    /**
+     * Called once for every note scheduled, in the order the notes are scheduled
+     * @param note the pitch value of the note
+     * @param startTick the tick the note starts on
+     * @param numTicks the number of ticks the note is played for
+     */
+    void noteAdded(int note, int startTick, int numTicks);
+}
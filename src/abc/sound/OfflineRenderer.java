@@ -0,0 +1,384 @@
+package abc.sound;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Synthesizer;
+import javax.sound.midi.Track;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+/**
+ * Renders music to WAV audio with the JDK's software synthesizer, as fast as the CPU allows rather than in real
+ * time, and without any sound device, so previews can be made on a headless machine. The voices of a piece can
+ * also be rendered in parallel, each on a synthesizer of its own, and mixed, or on the built-in WavetableSynth,
+ * which needs no soundbank.
+ * The synthesizer is driven through its AudioSynthesizer.openStream, which is not a public API of the JDK: from
+ * Java 9 on, the JVM must be run with --add-exports java.desktop/com.sun.media.sound=ALL-UNNAMED.
+ */
+public class OfflineRenderer {
+
+    /**
+     * Format of rendered audio: 44.1 kHz, 16-bit signed little-endian, stereo
+     */
+    public static final AudioFormat FORMAT = new AudioFormat(44100, 16, 2, true, false);
+
+    /**
+     * Seconds of audio rendered after the last note ends, for it to die away; as long as SequencePlayer.play waits
+     * after the end of its track
+     */
+    public static final double RELEASE_SECONDS = 1;
+
+    private static final String AUDIO_SYNTHESIZER = "com.sun.media.sound.AudioSynthesizer";
+    private static final double MICROSECONDS_PER_SECOND = 1e6;
+    private static final double MICROSECONDS_PER_MINUTE = 60e6;
+    private static final int BUFFER_FRAMES = 4096;
+
+    private OfflineRenderer() {
+        throw new AssertionError("OfflineRenderer is not instantiable");
+    }
+
+    /**
+     * Renders a piece as WAV audio, at the tempo given in its header
+     * @param piece piece to render
+     * @param out stream to write to; not closed
+     * @return how much audio was rendered, and how fast
+     * @throws IOException if out cannot be written to
+     * @throws MidiUnavailableException if there is no software synthesizer to render with
+     */
+    public static RenderStats render(Piece piece, OutputStream out) throws IOException, MidiUnavailableException {
+        SequencePlayer player;
+        try {
+            player = new SequencePlayer(piece.getHeader().getTempoBPM(), piece.getHeader().getTicksPerBeat());
+        } catch (InvalidMidiDataException imde) {
+            throw new AssertionError("could not make a SequencePlayer to render with", imde);
+        }
+        player.addNotes(CompiledScore.compile(piece.getMusic()), 0);
+        return player.render(out);
+    }
+
+    /**
+     * Renders a piece as WAV audio, at the tempo given in its header, each of its voices on a synthesizer of its
+     * own, in parallel on the threads of pool. The voices are rendered against the same clock and mixed sample by
+     * sample; if the mix is too loud for 16 bits it is attenuated to fit, rather than clipped.
+     * The audio of every voice is held in memory until they are mixed. If any voice fails to render, or the calling
+     * thread is interrupted, the renders of the other voices are abandoned.
+     * @param piece piece to render
+     * @param out stream to write to; not closed
+     * @param pool threads to render voices on
+     * @return how much audio was rendered, and how fast
+     * @throws IOException if out cannot be written to
+     * @throws MidiUnavailableException if there is no software synthesizer to render with
+     * @throws IllegalStateException if the calling thread is interrupted while the voices render; its interrupt
+     *         status is set again
+     */
+    public static RenderStats renderVoices(Piece piece, OutputStream out, ForkJoinPool pool)
+            throws IOException, MidiUnavailableException {
+        long start = System.nanoTime();
+        int beatsPerMinute = piece.getHeader().getTempoBPM();
+        int ticksPerBeat = piece.getHeader().getTicksPerBeat();
+        CompiledScore score = CompiledScore.compile(piece.getMusic());
+        // every voice is as long as the piece, so that sample i of each is the same instant
+        double microsecondsPerTick = MICROSECONDS_PER_MINUTE / ((double) beatsPerMinute * ticksPerBeat);
+        long frames = frames(score.getEndTick() * microsecondsPerTick / MICROSECONDS_PER_SECOND + RELEASE_SECONDS);
+        if (frames > Integer.MAX_VALUE / FORMAT.getChannels()) {
+            throw new IllegalArgumentException("piece too long to render in memory");
+        }
+
+        List<CompletableFuture<short[]>> voices = new ArrayList<>();
+        AtomicBoolean abandoned = new AtomicBoolean(false);
+        for (int voice = 0; voice < score.getNumberOfVoices(); voice++) {
+            final int v = voice;
+            Supplier<short[]> render = () -> {
+                try {
+                    return voicePlayer(score, v, ticksPerBeat, beatsPerMinute).renderSamples(frames, abandoned::get);
+                } catch (MidiUnavailableException | IOException ex) {
+                    throw new CompletionException(ex);
+                }
+            };
+            // a single voice is rendered on the calling thread
+            voices.add(score.getNumberOfVoices() == 1 ? CompletableFuture.supplyAsync(render, Runnable::run)
+                                                      : CompletableFuture.supplyAsync(render, pool));
+        }
+        PcmMixer mixer = new PcmMixer((int) frames * FORMAT.getChannels());
+        try {
+            for (CompletableFuture<short[]> voice : voices) {
+                mixer.add(voice.get());
+            }
+        } catch (InterruptedException ie) {
+            abandon(voices, abandoned);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while rendering voices", ie);
+        } catch (ExecutionException ee) {
+            abandon(voices, abandoned);
+            Throwable cause = ee.getCause();
+            while (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof MidiUnavailableException) {
+                throw (MidiUnavailableException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (RuntimeException) cause;
+        }
+
+        short[] mix = mixer.mixdown(PcmMixer.Clipping.ATTENUATE);
+        byte[] bytes = new byte[2 * mix.length];
+        for (int i = 0; i < mix.length; i++) {
+            bytes[2 * i] = (byte) mix[i];
+            bytes[2 * i + 1] = (byte) (mix[i] >> 8);
+        }
+        AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(bytes), FORMAT, frames), AudioFileFormat.Type.WAVE, out);
+        return new RenderStats(frames, FORMAT.getSampleRate(), System.nanoTime() - start);
+    }
+
+    /**
+     * Renders a piece as WAV audio, each voice on a synthesizer of its own, on the threads of the common pool
+     * @see #renderVoices(Piece, OutputStream, ForkJoinPool)
+     */
+    public static RenderStats renderVoices(Piece piece, OutputStream out) throws IOException, MidiUnavailableException {
+        return renderVoices(piece, out, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Renders a piece as WAV audio, at the tempo given in its header, on the built-in WavetableSynth rather than the
+     * JDK's synthesizer, so it needs neither a soundbank nor access to the JDK's internals. The audio is rendered a
+     * block at a time as it is written, in constant memory.
+     * @param piece piece to render
+     * @param out stream to write to; not closed
+     * @return how much audio was rendered, and how fast
+     * @throws IOException if out cannot be written to
+     */
+    public static RenderStats renderBuiltIn(Piece piece, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        CompiledScore score = CompiledScore.compile(piece.getMusic());
+        double microsecondsPerTick = MICROSECONDS_PER_MINUTE
+                / ((double) piece.getHeader().getTempoBPM() * piece.getHeader().getTicksPerBeat());
+        long frames = frames(score.getEndTick() * microsecondsPerTick / MICROSECONDS_PER_SECOND + RELEASE_SECONDS);
+        WavetableSynth synth = new WavetableSynth(FORMAT.getSampleRate());
+        synth.start(score, FORMAT.getSampleRate() * microsecondsPerTick / MICROSECONDS_PER_SECOND);
+        AudioSystem.write(new AudioInputStream(new SynthStream(synth), FORMAT, frames), AudioFileFormat.Type.WAVE, out);
+        return new RenderStats(frames, FORMAT.getSampleRate(), System.nanoTime() - start);
+    }
+
+    /**
+     * Cancels the renders of voices that have not started, and stops those that have at their next block
+     */
+    private static void abandon(List<CompletableFuture<short[]>> voices, AtomicBoolean abandoned) {
+        abandoned.set(true);
+        voices.forEach(voice -> voice.cancel(true));
+    }
+
+    /**
+     * @return a player with the notes of the given voice of score scheduled, at beatsPerMinute and ticksPerBeat
+     */
+    private static SequencePlayer voicePlayer(CompiledScore score, int voice, int ticksPerBeat, int beatsPerMinute) {
+        int size = 0;
+        for (int i = 0; i < score.size(); i++) {
+            if (score.getVoice(i) == voice) {
+                size++;
+            }
+        }
+        int[] notes = new int[size];
+        int[] startTicks = new int[size];
+        int[] numTicks = new int[size];
+        for (int i = 0, n = 0; i < score.size(); i++) {
+            if (score.getVoice(i) == voice) {
+                notes[n] = score.getMidiPitch(i);
+                startTicks[n] = score.getStartTick(i);
+                numTicks[n] = score.getDurationTicks(i);
+                n++;
+            }
+        }
+        SequencePlayer player;
+        try {
+            player = new SequencePlayer(beatsPerMinute, ticksPerBeat);
+        } catch (MidiUnavailableException | InvalidMidiDataException ex) {
+            throw new AssertionError("could not make a SequencePlayer to render with", ex);
+        }
+        player.addNotes(notes, startTicks, numTicks);
+        return player;
+    }
+
+    /**
+     * Renders the note events of a track as WAV audio in FORMAT, ending RELEASE_SECONDS after the last event
+     * @param track events to render
+     * @param microsecondsPerTick length of a tick of track, > 0
+     * @param out stream to write to; not closed
+     * @return how much audio was rendered, and how fast
+     * @throws IOException if out cannot be written to
+     * @throws MidiUnavailableException if there is no software synthesizer to render with
+     */
+    static RenderStats render(Track track, double microsecondsPerTick, OutputStream out)
+            throws IOException, MidiUnavailableException {
+        long start = System.nanoTime();
+        long frames = frames(track.ticks() * microsecondsPerTick / MICROSECONDS_PER_SECOND + RELEASE_SECONDS);
+        Synthesizer synthesizer = MidiSystem.getSynthesizer();
+        try {
+            AudioSystem.write(startRender(synthesizer, track, microsecondsPerTick, frames), AudioFileFormat.Type.WAVE, out);
+            return new RenderStats(frames, FORMAT.getSampleRate(), System.nanoTime() - start);
+        } finally {
+            synthesizer.close();
+        }
+    }
+
+    /**
+     * Renders the note events of a track as samples of FORMAT
+     * @param track events to render
+     * @param microsecondsPerTick length of a tick of track, > 0
+     * @param frames number of frames to render, from the start of track
+     * @param abandoned checked between blocks of audio; once it is true, rendering stops
+     * @return the samples of frames frames, channels interleaved
+     * @throws IOException if the synthesizer fails to render
+     * @throws MidiUnavailableException if there is no software synthesizer to render with
+     * @throws CancellationException if rendering was abandoned
+     */
+    static short[] renderSamples(Track track, double microsecondsPerTick, long frames, BooleanSupplier abandoned)
+            throws IOException, MidiUnavailableException {
+        short[] samples = new short[(int) frames * FORMAT.getChannels()];
+        byte[] buffer = new byte[BUFFER_FRAMES * FORMAT.getFrameSize()];
+        Synthesizer synthesizer = MidiSystem.getSynthesizer();
+        try {
+            AudioInputStream audio = startRender(synthesizer, track, microsecondsPerTick, frames);
+            int sample = 0;
+            int read;
+            while ((read = audio.read(buffer)) > 0) {
+                if (abandoned.getAsBoolean()) {
+                    throw new CancellationException("rendering abandoned after " + sample + " samples");
+                }
+                for (int i = 0; i < read; i += 2) {
+                    samples[sample++] = (short) ((buffer[i] & 0xFF) | (buffer[i + 1] << 8));
+                }
+            }
+            if (sample != samples.length) {
+                throw new IOException("synthesizer stopped after " + sample + " of " + samples.length + " samples");
+            }
+            return samples;
+        } finally {
+            synthesizer.close();
+        }
+    }
+
+    /**
+     * Opens synthesizer to render frames frames of the note events of track
+     * @return the audio synthesizer renders, made as it is read
+     */
+    private static AudioInputStream startRender(Synthesizer synthesizer, Track track, double microsecondsPerTick, long frames)
+            throws MidiUnavailableException {
+        AudioInputStream audio = openStream(synthesizer);
+        // the synthesizer queues events by timestamp and plays each once its time comes in the stream
+        Receiver receiver = synthesizer.getReceiver();
+        for (int i = 0; i < track.size(); i++) {
+            MidiEvent event = track.get(i);
+            if (event.getMessage() instanceof ShortMessage) {
+                receiver.send(event.getMessage(), Math.round(event.getTick() * microsecondsPerTick));
+            }
+        }
+        return new AudioInputStream(audio, FORMAT, frames);
+    }
+
+    /**
+     * @param seconds length of audio, >= 0
+     * @return number of frames of FORMAT it takes to hold seconds of audio
+     */
+    static long frames(double seconds) {
+        return (long) Math.ceil(seconds * FORMAT.getSampleRate());
+    }
+
+    /**
+     * Opens synthesizer to render into a stream of FORMAT instead of to a sound device
+     * @param synthesizer synthesizer to open, not yet open
+     * @return the audio synthesizer renders, made as it is read
+     * @throws MidiUnavailableException if synthesizer cannot render to a stream, or cannot be reached
+     */
+    static AudioInputStream openStream(Synthesizer synthesizer) throws MidiUnavailableException {
+        try {
+            Class<?> audioSynthesizer = Class.forName(AUDIO_SYNTHESIZER);
+            if (!audioSynthesizer.isInstance(synthesizer)) {
+                throw new MidiUnavailableException("synthesizer cannot render offline: " + synthesizer.getDeviceInfo());
+            }
+            Method openStream = audioSynthesizer.getMethod("openStream", AudioFormat.class, Map.class);
+            return (AudioInputStream) openStream.invoke(synthesizer, FORMAT, null);
+        } catch (ClassNotFoundException | NoSuchMethodException ex) {
+            throw unavailable("this JDK has no software synthesizer to render offline with", ex);
+        } catch (IllegalAccessException ex) {
+            throw unavailable("cannot reach " + AUDIO_SYNTHESIZER
+                    + "; run with --add-exports java.desktop/com.sun.media.sound=ALL-UNNAMED", ex);
+        } catch (InvocationTargetException ex) {
+            if (ex.getCause() instanceof MidiUnavailableException) {
+                throw (MidiUnavailableException) ex.getCause();
+            }
+            throw new RuntimeException("synthesizer failed to open", ex.getCause());
+        }
+    }
+
+    /**
+     * Endless stream of the audio of a WavetableSynth, in FORMAT, rendered a block at a time as it is read
+     */
+    private static class SynthStream extends InputStream {
+        private final WavetableSynth synth;
+        private final MixKernel kernel = MixKernel.create();
+        private final float[] block = new float[BUFFER_FRAMES * FORMAT.getChannels()];
+        private final short[] samples = new short[block.length];
+        private final byte[] oneByte = new byte[1];
+        // bytes of samples already read
+        private int read = 2 * samples.length;
+
+        SynthStream(WavetableSynth synth) {
+            this.synth = synth;
+        }
+
+        @Override
+        public int read() throws IOException {
+            read(oneByte, 0, 1);
+            return oneByte[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (read == 2 * samples.length) {
+                synth.render(block, BUFFER_FRAMES);
+                kernel.toPcm(block, 1, samples, samples.length);
+                read = 0;
+            }
+            int n = Math.min(length, 2 * samples.length - read);
+            for (int i = 0; i < n; i++, read++) {
+                short sample = samples[read / 2];
+                bytes[offset + i] = (byte) (read % 2 == 0 ? sample : sample >> 8);
+            }
+            return n;
+        }
+    }
+
+    private static MidiUnavailableException unavailable(String message, Throwable cause) {
+        MidiUnavailableException ex = new MidiUnavailableException(message);
+        ex.initCause(cause);
+        return ex;
+    }
+}
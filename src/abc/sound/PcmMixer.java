@@ -0,0 +1,186 @@
+package abc.sound;
+
+/**
+ * Mixes tracks of stereo PCM audio into one, sample by sample: sample i of the mix is the sum of sample i of every
+ * track, each scaled by the gain of its channel, so tracks rendered against the same clock stay aligned to the
+ * sample. The mix is kept as floats, so nothing clips until it is turned back into 16 bits by mixdown, which deals
+ * with samples that do not fit as its Clipping says. The sums and scales are done a block at a time by a MixKernel.
+ * A mixer is mutable and not safe for use by multiple threads.
+ */
+public class PcmMixer {
+
+    /**
+     * Ways of fitting a mix into 16-bit samples
+     */
+    public enum Clipping {
+        /** clamp every sample that does not fit to the nearest that does */
+        SATURATE,
+        /** scale the whole mix down, just enough for its loudest sample to fit, if any does not */
+        ATTENUATE
+    }
+
+    // samples of a block: 1024 frames
+    private static final int BLOCK_SAMPLES = 2048;
+
+    private final int length;
+    private final float[][] blocks;
+    private final short[] shortBlock = new short[BLOCK_SAMPLES];
+    private final float[] floatBlock = new float[BLOCK_SAMPLES];
+    private final MixKernel kernel;
+
+    // Abstraction function:
+    //  represents the mix of the tracks added so far, of length samples, sample i of which is
+    //  blocks[i / BLOCK_SAMPLES][i % BLOCK_SAMPLES]
+    // Rep invariant:
+    //  length is even, blocks has ceil(length / BLOCK_SAMPLES) blocks, each of BLOCK_SAMPLES samples
+    //  shortBlock and floatBlock hold nothing between calls
+    // Safety from rep exposure:
+    //  all fields are private and final, the arrays are never returned; add copies from its argument, mixdown
+    //  returns a new array; kernel is made by the mixer or given to it, and is only used by it
+
+    /**
+     * Make a mixer of silent tracks, with the kernel selected by MixKernel.create()
+     * @param length number of samples of every track to mix, counting both channels of a frame, even, >= 0
+     */
+    public PcmMixer(int length) {
+        this(length, MixKernel.create());
+    }
+
+    /**
+     * Make a mixer of silent tracks
+     * @param length number of samples of every track to mix, counting both channels of a frame, even, >= 0
+     * @param kernel kernel to mix with, used by no one else
+     */
+    public PcmMixer(int length, MixKernel kernel) {
+        if (length < 0 || length % 2 != 0) {
+            throw new IllegalArgumentException("expected a whole number of stereo frames, got " + length + " samples");
+        }
+        this.length = length;
+        this.blocks = new float[(length + BLOCK_SAMPLES - 1) / BLOCK_SAMPLES][BLOCK_SAMPLES];
+        this.kernel = kernel;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert length % 2 == 0;
+        assert blocks.length == (length + BLOCK_SAMPLES - 1) / BLOCK_SAMPLES;
+    }
+
+    /**
+     * @return number of samples of every track to mix
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Add a track to the mix, at full volume
+     * @param samples samples of the track, channels interleaved, as many as length()
+     */
+    public void add(short[] samples) {
+        add(samples, 1, 1);
+    }
+
+    /**
+     * Add a track to the mix
+     * @param samples samples of the track, channels interleaved, as many as length()
+     * @param leftGain factor to scale the left channel of the track by
+     * @param rightGain factor to scale the right channel of the track by
+     */
+    public void add(short[] samples, float leftGain, float rightGain) {
+        checkLength(samples.length);
+        for (int b = 0; b < blocks.length; b++) {
+            int blockLength = blockLength(b);
+            System.arraycopy(samples, b * BLOCK_SAMPLES, shortBlock, 0, blockLength);
+            kernel.mix(blocks[b], shortBlock, leftGain, rightGain, blockLength);
+        }
+    }
+
+    /**
+     * Add a track of float samples, in the range of short, to the mix
+     * @param samples samples of the track, channels interleaved, as many as length()
+     * @param leftGain factor to scale the left channel of the track by
+     * @param rightGain factor to scale the right channel of the track by
+     */
+    public void add(float[] samples, float leftGain, float rightGain) {
+        checkLength(samples.length);
+        for (int b = 0; b < blocks.length; b++) {
+            int blockLength = blockLength(b);
+            System.arraycopy(samples, b * BLOCK_SAMPLES, floatBlock, 0, blockLength);
+            kernel.mix(blocks[b], floatBlock, leftGain, rightGain, blockLength);
+        }
+    }
+
+    /**
+     * @return largest magnitude of any sample of the mix
+     */
+    public float peak() {
+        return Math.max(max(), -min());
+    }
+
+    /**
+     * @param clipping how to fit samples of the mix that do not fit in 16 bits
+     * @return the samples of the mix in 16 bits, rounded toward zero; the same as the mix if every sample fits
+     */
+    public short[] mixdown(Clipping clipping) {
+        float gain = 1;
+        float max = max();
+        float min = min();
+        if (clipping == Clipping.ATTENUATE && (max > Short.MAX_VALUE || min < Short.MIN_VALUE)) {
+            gain = Math.min(max > 0 ? Short.MAX_VALUE / max : 1, min < 0 ? Short.MIN_VALUE / min : 1);
+        }
+        short[] samples = new short[length];
+        for (int b = 0; b < blocks.length; b++) {
+            int blockLength = blockLength(b);
+            kernel.toPcm(blocks[b], gain, shortBlock, blockLength);
+            System.arraycopy(shortBlock, 0, samples, b * BLOCK_SAMPLES, blockLength);
+        }
+        return samples;
+    }
+
+    /**
+     * @return largest sample of the mix, 0 if it has none
+     */
+    private float max() {
+        float max = 0;
+        for (int b = 0; b < blocks.length; b++) {
+            float[] block = blocks[b];
+            for (int i = 0; i < blockLength(b); i++) {
+                max = Math.max(max, block[i]);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return smallest sample of the mix, 0 if it has none
+     */
+    private float min() {
+        float min = 0;
+        for (int b = 0; b < blocks.length; b++) {
+            float[] block = blocks[b];
+            for (int i = 0; i < blockLength(b); i++) {
+                min = Math.min(min, block[i]);
+            }
+        }
+        return min;
+    }
+
+    /**
+     * @return number of samples of the mix in block b
+     */
+    private int blockLength(int b) {
+        return Math.min(BLOCK_SAMPLES, length - b * BLOCK_SAMPLES);
+    }
+
+    private void checkLength(int samples) {
+        if (samples != length) {
+            throw new IllegalArgumentException("expected " + length + " samples, got " + samples);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PcmMixer[" + length + " samples, peak " + peak() + ", " + kernel + " kernel]";
+    }
+}
@@ -0,0 +1,73 @@
+package abc.sound;
+
+/**
+ * Immutable pairing of the header of an abc file with the music of its body
+ *
+ */
+public class Piece {
+
+    private final Header header;
+    private final Music music;
+
+    // Abstraction function:
+    //  represents the abc file whose header fields are header and whose voices, played together, are music
+
+    // Rep invariant:
+    //  header != null
+    //  music != null
+
+    // Safety from rep exposure:
+    //  both fields are private and final, and Header and Music are immutable
+
+    /**
+     * Make a piece
+     * @param header header of the piece
+     * @param music music of every voice of the piece
+     */
+    public Piece(Header header, Music music) {
+        this.header = header;
+        this.music = music;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert header != null;
+        assert music != null;
+    }
+
+    /** @return the header */
+    public Header getHeader() {
+        return this.header;
+    }
+
+    /** @return the music */
+    public Music getMusic() {
+        return this.music;
+    }
+
+    @Override
+    public String toString() {
+        return header.toString() + "\n" + music.toString();
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + header.hashCode();
+        result = prime * result + music.hashCode();
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        Piece other = (Piece) obj;
+        return header.equals(other.header) && music.equals(other.music);
+    }
+}
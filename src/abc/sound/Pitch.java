@@ -12,6 +12,9 @@ package abc.sound;
  * <br> new Pitch('E').transpose(-1) makes E-flat
  * <br> new Pitch('C').transpose(OCTAVE) makes high C
  * <br> new Pitch('C').transpose(-OCTAVE) makes low C
+ * 
+ * <p> Pitch.valueOf('C') and transpose share a single instance of every pitch MIDI can play, so a tune of
+ * thousands of notes holds a few dozen pitches.
  */
 public class Pitch {
 
@@ -24,8 +27,23 @@ public class Pitch {
      *   AF(0),...,AF(11) map to middle C, C-sharp, D, ..., A, A-sharp, B.
      *   AF(i+12n) maps to n octaves above middle AF(i)
      *   AF(i-12n) maps to n octaves below middle AF(i)
+     *
+     * Thread safety argument:
+     *   Pitch is immutable, and MIDI_PITCHES is filled in before any other class can see it and never written again.
      */
 
+    // MIDI note of the value 0, middle C, and number of MIDI notes
+    private static final int MIDDLE_C_MIDI_NOTE = 60;
+    private static final int MIDI_NOTES = 128;
+
+    // the pitch of every MIDI note, indexed by its MIDI note
+    private static final Pitch[] MIDI_PITCHES = new Pitch[MIDI_NOTES];
+    static {
+        for (int i = 0; i < MIDI_NOTES; i++) {
+            MIDI_PITCHES[i] = new Pitch(i - MIDDLE_C_MIDI_NOTE);
+        }
+    }
+
     private static final int[] SCALE = {
         9,  // A
         11, // B
@@ -43,7 +61,7 @@ public class Pitch {
     /**
      * Middle C.
      */
-    public static final Pitch MIDDLE_C = new Pitch('C');
+    public static final Pitch MIDDLE_C = valueOf('C');
     
     /**
      * Number of pitches in an octave.
@@ -65,8 +83,36 @@ public class Pitch {
      * @param c letter in {'A',...,'G'}
      */
     public Pitch(char c) {
+        this(scale(c));
+    }
+    
+    /**
+     * @param c letter in {'A',...,'G'}
+     * @return the Pitch named c in the middle octave of the piano keyboard, equal to new Pitch(c), without making
+     *         a new one
+     */
+    public static Pitch valueOf(char c) {
+        return valueOf(scale(c));
+    }
+    
+    /**
+     * @return the shared instance of the pitch of value, or a new one if it is not a MIDI note
+     */
+    private static Pitch valueOf(int value) {
+        int midiNote = value + MIDDLE_C_MIDI_NOTE;
+        if (midiNote >= 0 && midiNote < MIDI_NOTES) {
+            return MIDI_PITCHES[midiNote];
+        }
+        return new Pitch(value);
+    }
+    
+    /**
+     * @param c letter in {'A',...,'G'}
+     * @return value of the pitch named c in the middle octave
+     */
+    private static int scale(char c) {
         try {
-            value = SCALE[c-'A'];
+            return SCALE[c-'A'];
         } catch (ArrayIndexOutOfBoundsException aioobe) {
             throw new IllegalArgumentException(c + " must be in the range A-G");
         }
@@ -75,10 +121,10 @@ public class Pitch {
     /**
      * @return pitch made by transposing this pitch by semitonesUp semitones;
      *         for example, middle C transposed by 12 semitones is high C, and
-     *         E transposed by -1 semitones is E flat
+     *         E transposed by -1 semitones is E flat. Pitches MIDI can play are shared, not made anew.
      */
     public Pitch transpose(int semitonesUp) {
-        return new Pitch(value + semitonesUp);
+        return valueOf(value + semitonesUp);
     }
 
     /**
@@ -116,7 +162,7 @@ public class Pitch {
      * @return the MIDI note of this pitch
      */
     public int toMidiNote() {
-        return value + 60;
+        return value + MIDDLE_C_MIDI_NOTE;
     }
 
     /**
@@ -0,0 +1,264 @@
+package abc.sound;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiUnavailableException;
+
+/**
+ * Plays tunes one after another with no gap between them. While a tune plays, the next one is parsed and its
+ * sequence built on a background thread, so once the sequencer reaches the end of a tune the next one only has to
+ * be started, on the same sequencer of a pool. Tunes are switched on the completion of the playback of the tune
+ * before, without waiting on a timer. Every tune starts on its first note, with no lead-in.
+ * A playlist plays once; all of its methods are safe to call from any thread.
+ */
+public class Playlist {
+
+    /**
+     * A tune of a playlist, prepared for playing on a background thread
+     */
+    @FunctionalInterface
+    interface Tune {
+        /**
+         * @return a player with every note of the tune scheduled, not yet played
+         * @throws Exception if the tune cannot be read or parsed, or its sequence built
+         */
+        SequencePlayer prepare() throws Exception;
+    }
+
+    private final List<Tune> tunes;
+    private final SequencerPool pool;
+    private final Done done = new Done();
+    private boolean started = false;
+    private boolean stopped = false;
+    private CompletableFuture<Void> playing; // playback of the tune playing, or null
+
+    // Abstraction function:
+    //  represents the playing of tunes, in order, each on a sequencer leased from pool; done completes once the
+    //  last tune has played. Playing has started iff started, and is to stop at once iff stopped; playing is the
+    //  playback of the tune playing, if any.
+    // Rep invariant:
+    //  tunes is non-empty and contains no null, pool is non-null
+    //  stopped implies started
+    // Safety from rep exposure:
+    //  all fields are private; tunes is an unmodifiable copy; done is returned, and cancelling or completing it
+    //  from outside stops the playlist
+    // Thread safety argument:
+    //  tunes and pool are immutable or threadsafe; done is a threadsafe future; started, stopped and playing are
+    //  guarded by the lock on this. Tunes are prepared on a thread of the playlist's own, without the lock, and
+    //  started on that thread or the one that completes the playback before, with it.
+
+    /**
+     * Make a playlist of abc files
+     * @param pool pool to lease a sequencer from for every tune; one sequencer is leased at a time
+     * @param files abc files to play, in order, at least one; each must be properly formatted as defined by the
+     *              abc notation
+     */
+    public Playlist(SequencerPool pool, File... files) {
+        this(pool, filesToTunes(files));
+    }
+
+    /**
+     * Make a playlist
+     * @param pool pool to lease a sequencer from for every tune
+     * @param tunes tunes to play, in order, at least one
+     */
+    Playlist(SequencerPool pool, List<Tune> tunes) {
+        if (tunes.isEmpty()) {
+            throw new IllegalArgumentException("expected at least one tune");
+        }
+        this.pool = pool;
+        this.tunes = Collections.unmodifiableList(new ArrayList<>(tunes));
+        checkRep();
+    }
+
+    private synchronized void checkRep() {
+        assert !tunes.isEmpty() && !tunes.contains(null);
+        assert pool != null;
+        assert !stopped || started;
+    }
+
+    /**
+     * @return a tune for every file, that parses it and schedules its music from tick 0 at its tempo
+     */
+    private static List<Tune> filesToTunes(File... files) {
+        List<Tune> tunes = new ArrayList<>();
+        for (File file : files) {
+            tunes.add(() -> prepare(file));
+        }
+        return tunes;
+    }
+
+    /**
+     * @param file abc file
+     * @return a player with every note of file scheduled from tick 0, at the tempo of its header
+     */
+    private static SequencePlayer prepare(File file) throws MidiUnavailableException, InvalidMidiDataException {
+        Piece piece = Music.parsePiece(file);
+        Header header = piece.getHeader();
+        SequencePlayer player = new SequencePlayer(header.getTempoBPM(), header.getTicksPerBeat());
+        player.addNotes(CompiledScore.compile(piece.getMusic()), 0);
+        return player;
+    }
+
+    /**
+     * Start playing the tunes. Returns at once; the first tune is prepared and played in the background.
+     *
+     * @return a future completed once the last tune has played, or completed exceptionally with the reason a tune
+     *         could not be prepared or played, the tunes after it not being played; cancelling or completing it
+     *         stops the playlist, like stop()
+     * @throws IllegalStateException if the playlist has been played already
+     */
+    public CompletableFuture<Void> play() {
+        synchronized (this) {
+            if (started) {
+                throw new IllegalStateException("playlist played already");
+            }
+            started = true;
+        }
+        ExecutorService preparer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Playlist preparer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        playFrom(0, prepare(0, preparer), preparer).whenComplete((nothing, ex) -> {
+            preparer.shutdown();
+            if (ex == null) {
+                done.finish();
+            } else {
+                done.fail(ex);
+            }
+        });
+        return done;
+    }
+
+    /**
+     * Start preparing a tune on preparer
+     * @param index index of the tune
+     * @return a future completed with the player of the tune once prepared
+     */
+    private CompletableFuture<SequencePlayer> prepare(int index, ExecutorService preparer) {
+        CompletableFuture<SequencePlayer> prepared = new CompletableFuture<>();
+        preparer.execute(() -> {
+            try {
+                prepared.complete(tunes.get(index).prepare());
+            } catch (Exception ex) {
+                prepared.completeExceptionally(ex);
+            }
+        });
+        return prepared;
+    }
+
+    /**
+     * Play the tunes from index on, once the tune at index is prepared
+     * @param index index of the next tune to play
+     * @param prepared future player of the tune at index
+     * @return a future completed once the last tune has played
+     */
+    private CompletableFuture<Void> playFrom(int index, CompletableFuture<SequencePlayer> prepared, ExecutorService preparer) {
+        return prepared.thenCompose(player -> {
+            CompletableFuture<Void> playback = start(player);
+            if (index + 1 == tunes.size()) {
+                return playback;
+            }
+            // the next tune is prepared while this one plays, and started as soon as this one ends
+            CompletableFuture<SequencePlayer> next = prepare(index + 1, preparer);
+            return playback.thenCompose(nothing -> playFrom(index + 1, next, preparer));
+        });
+    }
+
+    /**
+     * Start playing player, unless the playlist has been stopped
+     * @return the playback of player
+     */
+    private synchronized CompletableFuture<Void> start(SequencePlayer player) {
+        // the lock is held while the tune starts, so stop() either prevents it or finds it playing
+        if (stopped) {
+            CompletableFuture<Void> cancelled = new CompletableFuture<>();
+            cancelled.cancel(false);
+            return cancelled;
+        }
+        try {
+            playing = player.play(pool);
+        } catch (MidiUnavailableException | InterruptedException ex) {
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex);
+            return failed;
+        }
+        return playing;
+    }
+
+    /**
+     * Stop the tune playing, if any, and play no more tunes. If a tune is being started, waits until it has
+     * started, to stop it. The future play returned completes exceptionally with a CancellationException.
+     */
+    public void stop() {
+        CompletableFuture<Void> toCancel;
+        synchronized (this) {
+            // a playlist stopped before it plays never plays
+            started = true;
+            stopped = true;
+            toCancel = playing;
+        }
+        // done first, lest the cancelled playback complete it with a CompletionException
+        done.fail(new CancellationException("playlist stopped"));
+        if (toCancel != null) {
+            toCancel.cancel(false);
+        }
+    }
+
+    /**
+     * The future play returns. The playlist completes it through finish and fail; cancelling or completing it
+     * any other way stops the playlist, so no tune plays on once it is done.
+     */
+    private class Done extends CompletableFuture<Void> {
+
+        void finish() {
+            super.complete(null);
+        }
+
+        void fail(Throwable ex) {
+            super.completeExceptionally(ex);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            stop();
+            return cancelled;
+        }
+
+        @Override
+        public boolean complete(Void value) {
+            boolean completed = super.complete(value);
+            stop();
+            return completed;
+        }
+
+        @Override
+        public boolean completeExceptionally(Throwable ex) {
+            boolean completed = super.completeExceptionally(ex);
+            stop();
+            return completed;
+        }
+
+        @Override
+        public void obtrudeValue(Void value) {
+            super.obtrudeValue(value);
+            stop();
+        }
+
+        @Override
+        public void obtrudeException(Throwable ex) {
+            super.obtrudeException(ex);
+            stop();
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package abc.sound;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+
+/**
+ * Plays a compiled score in real time, by sending its NOTE_ON and NOTE_OFF messages to a Receiver, each when it is
+ * due, from a scheduling thread of its own at the highest priority. The score is walked one event at a time as it
+ * plays, rather than turned into a Sequence first, so the first note sounds as soon as play is called however long
+ * the score is, and the tempo can be changed while it plays.
+ * Events can be sent ahead of time, a lookahead window early, stamped with the time they are due on the clock of
+ * the receiver, for a receiver that plays timestamped messages on time, such as the JDK's software synthesizer;
+ * the timing of the notes then no longer depends on how promptly the scheduling thread wakes up.
+ * How late every event was sent is measured, and can be read with getJitter().
+ * A scheduler plays one score at a time; all of its methods are safe to call from any thread.
+ */
+public class RealtimeScheduler {
+
+    /**
+     * A lookahead window suited to the JDK's software synthesizer: long enough for the scheduling thread to be
+     * late now and then, short enough for a change of tempo to be heard at once
+     */
+    public static final long DEFAULT_LOOKAHEAD_MICROS = 20000;
+
+    // MIDI channel and velocity, the same as SequencePlayer's
+    private static final int CHANNEL = 0;
+    private static final int VELOCITY = 100;
+    private static final int MIDI_NOTES = 128;
+    private static final int ALL_NOTES_OFF = 123;
+
+    // the thread parks until this long before an event is due, then spins, as parking can oversleep
+    private static final long SPIN_NANOS = 2000000;
+    private static final double NANOSECONDS_PER_MINUTE = 60e9;
+    private static final long NANOSECONDS_PER_MICROSECOND = 1000;
+
+    private final Receiver receiver;
+    private final LongSupplier receiverClock;
+    private final long lookaheadNanos;
+    private final ShortMessage[] noteOn = new ShortMessage[MIDI_NOTES];
+    private final ShortMessage[] noteOff = new ShortMessage[MIDI_NOTES];
+    private final ShortMessage allNotesOff;
+    private final NoteEventCursor events = new NoteEventCursor();
+
+    private Thread thread;
+    private volatile boolean stopped;
+    private int ticksPerBeat;
+    private long startNanos;
+    private long receiverStartMicros;
+    private long lastTimestamp;
+    private double anchorTick;
+    private long anchorNanos;
+    private double nanosPerTick;
+
+    private long eventsSent;
+    private double latenessSum;
+    private double latenessSquaresSum;
+    private long maxLateness;
+
+    // Abstraction function:
+    //  represents a scheduler that sends the events of the score events walks to receiver, each lookaheadNanos
+    //  before it is due. Tick t of the score is due anchorNanos + (t - anchorTick) * nanosPerTick on the clock of
+    //  System.nanoTime(); the score started on startNanos, which is receiverStartMicros on receiverClock, or
+    //  receiverClock is null and events are sent unstamped; the latest event sent was stamped lastTimestamp, -1 if
+    //  none was. The score is playing iff thread is alive, and stops
+    //  as soon as stopped is set. eventsSent events have been sent, latenessSum nanoseconds late in all, the
+    //  squares of their lateness summing to latenessSquaresSum, the latest maxLateness nanoseconds late.
+    //  noteOn[n] and noteOff[n] are the messages of MIDI note n.
+    // Rep invariant:
+    //  lookaheadNanos >= 0, and lookaheadNanos == 0 if receiverClock is null
+    //  ticksPerBeat > 0 and nanosPerTick > 0 once thread is non-null
+    //  eventsSent >= 0, latenessSum >= 0, latenessSquaresSum >= 0, maxLateness >= 0
+    // Safety from rep exposure:
+    //  all fields are private; the messages are sent to receiver, which by its contract does not change them;
+    //  the cursor and thread are never returned
+    // Thread safety argument:
+    //  events is only used by thread once play starts it, and by play only once the thread before has died;
+    //  stopped is volatile; every other mutable field is guarded by the lock on this
+
+    /**
+     * Make a scheduler that sends each event unstamped, when it is due
+     * @param receiver receiver to send the events of scores to
+     */
+    public RealtimeScheduler(Receiver receiver) {
+        this(receiver, null, 0);
+    }
+
+    /**
+     * Make a scheduler that sends each event lookaheadMicros before it is due, stamped with the time it is due on
+     * receiverClock
+     * @param receiver receiver to send the events of scores to
+     * @param receiverClock the clock of receiver, in microseconds, for example the getMicrosecondPosition of the
+     *                      device receiver belongs to
+     * @param lookaheadMicros microseconds before it is due to send each event, >= 0
+     */
+    public RealtimeScheduler(Receiver receiver, LongSupplier receiverClock, long lookaheadMicros) {
+        if (lookaheadMicros < 0 || (receiverClock == null && lookaheadMicros != 0)) {
+            throw new IllegalArgumentException("expected a lookahead >= 0, and a clock for any lookahead, got " + lookaheadMicros);
+        }
+        this.receiver = receiver;
+        this.receiverClock = receiverClock;
+        this.lookaheadNanos = lookaheadMicros * NANOSECONDS_PER_MICROSECOND;
+        try {
+            for (int note = 0; note < MIDI_NOTES; note++) {
+                noteOn[note] = new ShortMessage(ShortMessage.NOTE_ON, CHANNEL, note, VELOCITY);
+                noteOff[note] = new ShortMessage(ShortMessage.NOTE_OFF, CHANNEL, note, VELOCITY);
+            }
+            allNotesOff = new ShortMessage(ShortMessage.CONTROL_CHANGE, CHANNEL, ALL_NOTES_OFF, 0);
+        } catch (InvalidMidiDataException imde) {
+            throw new AssertionError("note messages are valid", imde);
+        }
+        checkRep();
+    }
+
+    private synchronized void checkRep() {
+        assert lookaheadNanos >= 0;
+        assert receiverClock != null || lookaheadNanos == 0;
+        assert thread == null || (ticksPerBeat > 0 && nanosPerTick > 0);
+        assert eventsSent >= 0 && latenessSum >= 0 && latenessSquaresSum >= 0 && maxLateness >= 0;
+    }
+
+    /**
+     * Start playing score, its first events sent at once. Returns without waiting for the score to play.
+     * @param score notes to play, every MIDI pitch in 0..127
+     * @param ticksPerBeat ticks per beat of the score, > 0
+     * @param beatsPerMinute tempo to play score at, > 0
+     * @throws IllegalStateException if a score is playing
+     */
+    public synchronized void play(CompiledScore score, int ticksPerBeat, int beatsPerMinute) {
+        if (isPlaying()) {
+            throw new IllegalStateException("already playing");
+        }
+        if (ticksPerBeat <= 0 || beatsPerMinute <= 0) {
+            throw new IllegalArgumentException("expected positive ticks per beat and beats per minute");
+        }
+        if (score.getLowestMidiPitch() < 0 || score.getHighestMidiPitch() >= MIDI_NOTES) {
+            throw new IllegalArgumentException("MIDI pitches out of range: " + score.getLowestMidiPitch() + ".." + score.getHighestMidiPitch());
+        }
+        events.start(score);
+        stopped = false;
+        eventsSent = 0;
+        latenessSum = 0;
+        latenessSquaresSum = 0;
+        maxLateness = 0;
+        // the score starts a lookahead from now, for its first events to be sent at once
+        this.ticksPerBeat = ticksPerBeat;
+        startNanos = System.nanoTime() + lookaheadNanos;
+        receiverStartMicros = (receiverClock == null) ? 0 : receiverClock.getAsLong() + lookaheadNanos / NANOSECONDS_PER_MICROSECOND;
+        lastTimestamp = -1;
+        anchorTick = 0;
+        anchorNanos = startNanos;
+        nanosPerTick = NANOSECONDS_PER_MINUTE / ((double) beatsPerMinute * ticksPerBeat);
+
+        thread = new Thread(this::run, "abc realtime scheduler");
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.setDaemon(true);
+        thread.start();
+        checkRep();
+    }
+
+    /**
+     * Change the tempo of the score playing, from now on. Events already sent ahead of time keep their time.
+     * @param beatsPerMinute tempo to play at, > 0
+     */
+    public synchronized void setTempo(int beatsPerMinute) {
+        if (beatsPerMinute <= 0) {
+            throw new IllegalArgumentException("expected positive beats per minute, got " + beatsPerMinute);
+        }
+        if (thread == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        anchorTick += (now - anchorNanos) / nanosPerTick;
+        anchorNanos = now;
+        nanosPerTick = NANOSECONDS_PER_MINUTE / ((double) beatsPerMinute * ticksPerBeat);
+        // wake the thread to wait for its next event at the new tempo
+        LockSupport.unpark(thread);
+        checkRep();
+    }
+
+    /**
+     * Stop the score playing, if any, and silence every note it started, including those sent ahead of time to start
+     * later. Returns once no more events will be sent.
+     * @throws InterruptedException if interrupted while waiting for the scheduling thread to stop
+     */
+    public void stop() throws InterruptedException {
+        Thread playing;
+        synchronized (this) {
+            playing = thread;
+        }
+        if (playing == null || !playing.isAlive()) {
+            return;
+        }
+        stopped = true;
+        LockSupport.unpark(playing);
+        playing.join();
+        // events sent ahead of time are queued by the receiver until their timestamp, so the notes they start are
+        // silenced no sooner than the last of them, nor than anything sent now would be
+        long timestamp = -1;
+        synchronized (this) {
+            if (receiverClock != null) {
+                timestamp = Math.max(lastTimestamp,
+                        receiverClock.getAsLong() + lookaheadNanos / NANOSECONDS_PER_MICROSECOND);
+            }
+        }
+        receiver.send(allNotesOff, timestamp);
+    }
+
+    /**
+     * Wait for the score playing, if any, to finish or be stopped
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void join() throws InterruptedException {
+        Thread playing;
+        synchronized (this) {
+            playing = thread;
+        }
+        if (playing != null) {
+            playing.join();
+        }
+    }
+
+    /**
+     * @return true iff a score is playing: it has started and has events yet to be sent, and has not been stopped
+     */
+    public synchronized boolean isPlaying() {
+        return thread != null && thread.isAlive();
+    }
+
+    /**
+     * @return timestamp on the receiver's clock of the latest event of the score playing, or played last, sent so
+     *         far; -1 if none has been sent or the events are sent unstamped
+     */
+    public synchronized long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /**
+     * @return how late the events of the score playing, or played last, have been sent so far
+     */
+    public synchronized JitterStats getJitter() {
+        if (eventsSent == 0) {
+            return new JitterStats(0, 0, 0, 0);
+        }
+        double mean = latenessSum / eventsSent;
+        double variance = Math.max(0, latenessSquaresSum / eventsSent - mean * mean);
+        return new JitterStats(eventsSent, mean, Math.sqrt(variance), maxLateness);
+    }
+
+    /**
+     * Body of the scheduling thread: sends every event of the score when it is due, until the end or a stop
+     */
+    private void run() {
+        while (events.next()) {
+            int tick = events.getTick();
+            if (!waitFor(tick)) {
+                return;
+            }
+            long timestamp = -1;
+            long due;
+            synchronized (this) {
+                long eventNanos = nanosAt(tick);
+                due = eventNanos - lookaheadNanos;
+                if (receiverClock != null) {
+                    timestamp = receiverStartMicros + (eventNanos - startNanos) / NANOSECONDS_PER_MICROSECOND;
+                    lastTimestamp = Math.max(lastTimestamp, timestamp);
+                }
+            }
+            int note = events.getMidiPitch();
+            long sent = System.nanoTime();
+            receiver.send(events.isNoteOn() ? noteOn[note] : noteOff[note], timestamp);
+            sent(Math.max(0, sent - due));
+        }
+    }
+
+    /**
+     * Waits until the event on tick is due to be sent
+     * @return true once it is, false if the score was stopped first
+     */
+    private boolean waitFor(int tick) {
+        while (!stopped) {
+            long due;
+            synchronized (this) {
+                due = nanosAt(tick) - lookaheadNanos;
+            }
+            long remaining = due - System.nanoTime();
+            if (remaining <= 0) {
+                return true;
+            } else if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            } else {
+                Thread.yield();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return System.nanoTime() when tick is due, at the current tempo
+     */
+    private long nanosAt(int tick) {
+        assert Thread.holdsLock(this);
+        return anchorNanos + (long) ((tick - anchorTick) * nanosPerTick);
+    }
+
+    /**
+     * Records an event sent lateness nanoseconds after it was due to be
+     */
+    private synchronized void sent(long lateness) {
+        eventsSent++;
+        latenessSum += lateness;
+        latenessSquaresSum += (double) lateness * lateness;
+        maxLateness = Math.max(maxLateness, lateness);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "RealtimeScheduler[" + (isPlaying() ? "playing" : "stopped") + ", lookahead "
+                + lookaheadNanos / NANOSECONDS_PER_MICROSECOND + " us, " + getJitter() + "]";
+    }
+}
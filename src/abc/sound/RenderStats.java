@@ -0,0 +1,75 @@
+package abc.sound;
+
+/**
+ * Immutable account of an offline render: how much audio was made and how long it took to make it.
+ */
+public class RenderStats {
+
+    private static final double NANOSECONDS_PER_SECOND = 1e9;
+
+    private final long frames;
+    private final float sampleRate;
+    private final long renderNanos;
+
+    // Abstraction function:
+    //  represents frames frames of audio at sampleRate frames a second, rendered in renderNanos nanoseconds
+    // Rep invariant:
+    //  frames >= 0, sampleRate > 0, renderNanos > 0
+    // Safety from rep exposure:
+    //  all fields are private, final and primitive
+
+    /**
+     * @param frames number of frames rendered, >= 0
+     * @param sampleRate frames in a second of audio, > 0
+     * @param renderNanos nanoseconds the render took, > 0
+     */
+    public RenderStats(long frames, float sampleRate, long renderNanos) {
+        this.frames = frames;
+        this.sampleRate = sampleRate;
+        this.renderNanos = renderNanos;
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert frames >= 0;
+        assert sampleRate > 0;
+        assert renderNanos > 0;
+    }
+
+    /**
+     * @return number of frames rendered
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return seconds of audio rendered
+     */
+    public double getAudioSeconds() {
+        return frames / (double) sampleRate;
+    }
+
+    /**
+     * @return seconds the render took
+     */
+    public double getRenderSeconds() {
+        return renderNanos / NANOSECONDS_PER_SECOND;
+    }
+
+    /**
+     * @return speed of the render as a multiple of real time: 2.0 if it took a second to render two seconds of audio
+     */
+    public double getSpeed() {
+        return getAudioSeconds() / getRenderSeconds();
+    }
+
+    /**
+     * @return e.g. "rendered 12.3 s of audio in 0.41 s, 30.0x real time"
+     */
+    @Override
+    public String toString() {
+        return String.format("rendered %.1f s of audio in %.2f s, %.1fx real time", getAudioSeconds(), getRenderSeconds(),
+                getSpeed());
+    }
+}
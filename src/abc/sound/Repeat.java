@@ -0,0 +1,190 @@
+package abc.sound;
+
+import java.util.Arrays;
+
+/**
+ * Immutable representation of a repeated section of music: its body is played, then its first ending, then the body
+ * again, then its second ending. A plain repeat has endings of no duration.
+ * The body is kept once rather than copied into both passes, and its notes, rests and inner repeats are listed once,
+ * with the beat each starts on, so playing the second pass replays them at an offset without walking the body again.
+ * An inner repeat is listed as a single part, not played out, so repeats nested k deep take O(k) space. A body that is
+ * a note, a rest, a repeat or a sequence of them is already such a list, and is replayed as it is.
+ */
+public class Repeat implements Music {
+
+    private final Music body;
+    private final Music firstEnding;
+    private final Music secondEnding;
+    private final Music[] bodyParts;
+    private final long[] bodyPartStarts;
+    private final long duration;
+    private final int hashCode;
+
+    // Abstraction function:
+    //  represents body, firstEnding, body, secondEnding played one after the other; if bodyParts isn't null,
+    //  bodyParts[i] is the i-th note, rest or repeat of body in the order play plays them, starting bodyPartStarts[i]
+    //  beats after the start of body
+
+    // Rep Invariant:
+    //  body, firstEnding, secondEnding != null
+    //  bodyParts and bodyPartStarts are null iff body is flat, as decided by MusicTraversal.isFlat; otherwise they
+    //  have the same length, and are the notes, rests and repeats of body with their starts, as visited by
+    //  MusicTraversal.forEachPart(body, 0, ...)
+    //  duration == 2 * body.duration() + firstEnding.duration() + secondEnding.duration()
+    //  hashCode is the hash of body, firstEnding and secondEnding, as computed by hashCode()
+
+    // Safety from rep exposure:
+    //  all fields are private and final, and the arrays are made by the constructor and never returned; the
+    //  elements of bodyParts are immutable
+
+    /**
+     * Make a repeated section
+     * @param body music played twice
+     * @param firstEnding music played after the first pass through body; a rest of no duration if there is none
+     * @param secondEnding music played after the second pass; a rest of no duration if there is none
+     */
+    public Repeat(Music body, Music firstEnding, Music secondEnding) {
+        this.body = body;
+        this.firstEnding = firstEnding;
+        this.secondEnding = secondEnding;
+        if (MusicTraversal.isFlat(body)) {
+            this.bodyParts = null;
+            this.bodyPartStarts = null;
+        } else {
+            PartCollector parts = new PartCollector();
+            MusicTraversal.forEachPart(body, 0, parts::add);
+            this.bodyParts = Arrays.copyOf(parts.parts, parts.size);
+            this.bodyPartStarts = Arrays.copyOf(parts.starts, parts.size);
+        }
+        this.duration = 2 * body.duration() + firstEnding.duration() + secondEnding.duration();
+        this.hashCode = hash(body, firstEnding, secondEnding);
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert body != null;
+        assert firstEnding != null;
+        assert secondEnding != null;
+        assert (bodyParts == null) == MusicTraversal.isFlat(body);
+        assert bodyParts == null || bodyParts.length == bodyPartStarts.length;
+        assert duration == 2 * body.duration() + firstEnding.duration() + secondEnding.duration();
+        assert hashCode == hash(body, firstEnding, secondEnding);
+    }
+
+    private static int hash(Music body, Music firstEnding, Music secondEnding) {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + body.hashCode();
+        result = prime * result + firstEnding.hashCode();
+        result = prime * result + secondEnding.hashCode();
+        return result;
+    }
+
+    /**
+     * @return the music played twice
+     */
+    Music getBody() {
+        return body;
+    }
+
+    /**
+     * @return the music played after the first pass through the body
+     */
+    Music getFirstEnding() {
+        return firstEnding;
+    }
+
+    /**
+     * @return the music played after the second pass through the body
+     */
+    Music getSecondEnding() {
+        return secondEnding;
+    }
+
+    /**
+     * @return number of notes, rests and inner repeats the body is played as
+     */
+    int bodySize() {
+        if (bodyParts != null) {
+            return bodyParts.length;
+        }
+        return (body instanceof MusicSequence) ? ((MusicSequence) body).size() : 1;
+    }
+
+    /**
+     * @param i index of a part of the body, 0 <= i < bodySize()
+     * @return the i-th note, rest or inner repeat of the body, in the order play plays them
+     */
+    Music bodyPart(int i) {
+        if (bodyParts != null) {
+            return bodyParts[i];
+        }
+        return (body instanceof MusicSequence) ? ((MusicSequence) body).part(i) : body;
+    }
+
+    /**
+     * @param i index of a part of the body, 0 <= i < bodySize()
+     * @return number of beats from the start of the body to the start of its i-th part
+     */
+    long bodyStartOf(int i) {
+        if (bodyParts != null) {
+            return bodyPartStarts[i];
+        }
+        return (body instanceof MusicSequence) ? ((MusicSequence) body).startOf(i) : 0;
+    }
+
+    @Override
+    public long duration() {
+        return duration;
+    }
+
+    @Override
+    public void play(SequencePlayer player, long atBeat) {
+        MusicTraversal.play(this, player, atBeat);
+    }
+
+    /**
+     * String representation of this, played out: the string representations of the body, the first ending, the body
+     * again and the second ending, separated by a single space; endings of no duration are left out
+     * @return string rep of this as described above
+     */
+    @Override
+    public String toString() {
+        return MusicTraversal.toString(this);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        return MusicTraversal.equal(this, (Repeat) obj);
+    }
+
+    /**
+     * Growable list of notes, rests and repeats, with the beat each starts on
+     */
+    private static class PartCollector {
+        private Music[] parts = new Music[16];
+        private long[] starts = new long[16];
+        private int size = 0;
+
+        void add(Music part, long start) {
+            if (size == parts.length) {
+                parts = Arrays.copyOf(parts, 2 * size);
+                starts = Arrays.copyOf(starts, 2 * size);
+            }
+            parts[size] = part;
+            starts[size] = start;
+            size++;
+        }
+    }
+}
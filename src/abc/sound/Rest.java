@@ -7,7 +7,7 @@ package abc.sound;
  */
 public class Rest implements Music {
     
-    private final double duration;
+    private final long duration;
     
     // Abstraction Function: Represents rest for a certain duration given by duration.
     //                       A rest is an interval of silence in a piece of music. 
@@ -16,28 +16,51 @@ public class Rest implements Music {
     // Representation Invariant: Duration of rest, duration, must be non-negative.
     //      
     // Safety from rep exposure: Duration field is a primitive and it is made final and private
+    //
+    // Thread safety argument: Rest is immutable and its field is final, so a rest read from CANONICAL by a thread
+    //      other than the one that made it is seen whole even though the array is shared without a lock
+    
+    // rests made by of, each in the slot of its duration; a slot holds the last one made for it, so the cache is bounded
+    private static final int CANONICAL_SLOTS = 256;
+    private static final Rest[] CANONICAL = new Rest[CANONICAL_SLOTS];
+    
+    /**
+     * @param duration of the rest, in ticks, >= 0; 0 for an empty piece of music
+     * @return a rest of duration, equal to new Rest(duration); the same instance as an earlier call returned for the
+     *         same duration unless a different rest has since taken its slot
+     */
+    public static Rest of(long duration) {
+        int slot = (int) (duration ^ (duration >>> 32)) & (CANONICAL_SLOTS - 1);
+        Rest canonical = CANONICAL[slot];
+        if (canonical != null && canonical.duration == duration) {
+            return canonical;
+        }
+        Rest rest = new Rest(duration);
+        CANONICAL[slot] = rest;
+        return rest;
+    }
     
     private void checkRep(){
         assert this.duration >= 0;
     }
     
-    public Rest(double duration){
+    public Rest(long duration){
         this.duration = duration;
         checkRep();    
     }
 
     @Override
-    public double duration() {
+    public long duration() {
         return duration;
     }
 
     @Override
-    public void play(SequencePlayer player, double atBeat) {
+    public void play(SequencePlayer player, long atBeat) {
         return;
     }
     /**
      * Converts rest into a human-readable string of the format:
-     *  z*<duration>/192.0
+     *  z<duration>
      * @return string representation of this
      */
     @Override
@@ -49,9 +72,7 @@ public class Rest implements Music {
     public int hashCode() {
         final int prime = 31;
         int result = 1;
-        long temp;
-        temp = Double.doubleToLongBits(duration);
-        result = prime * result + (int) (temp ^ (temp >>> 32));
+        result = prime * result + (int) (duration ^ (duration >>> 32));
         return result;
     }
 
@@ -64,7 +85,7 @@ public class Rest implements Music {
         if (getClass() != obj.getClass())
             return false;
         Rest other = (Rest) obj;
-        if (Double.doubleToLongBits(duration) != Double.doubleToLongBits(other.duration))
+        if (duration != other.duration)
             return false;
         return true;
     }   
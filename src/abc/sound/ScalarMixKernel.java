@@ -0,0 +1,55 @@
+package abc.sound;
+
+/**
+ * Reference MixKernel: one frame at a time, each sample clamped as it is converted. Simple enough to be obviously
+ * right, and so the kernel others are tested against.
+ */
+class ScalarMixKernel implements MixKernel {
+
+    @Override
+    public void mix(float[] mix, float[] source, float leftGain, float rightGain, int length) {
+        checkLength(length, mix.length, source.length);
+        for (int i = 0; i < length; i += 2) {
+            mix[i] += leftGain * source[i];
+            mix[i + 1] += rightGain * source[i + 1];
+        }
+    }
+
+    @Override
+    public void mix(float[] mix, short[] source, float leftGain, float rightGain, int length) {
+        checkLength(length, mix.length, source.length);
+        for (int i = 0; i < length; i += 2) {
+            mix[i] += leftGain * source[i];
+            mix[i + 1] += rightGain * source[i + 1];
+        }
+    }
+
+    @Override
+    public void toPcm(float[] mix, float gain, short[] out, int length) {
+        checkLength(length, mix.length, out.length);
+        for (int i = 0; i < length; i++) {
+            float sample = gain * mix[i];
+            if (sample >= Short.MAX_VALUE) {
+                out[i] = Short.MAX_VALUE;
+            } else if (sample <= Short.MIN_VALUE) {
+                out[i] = Short.MIN_VALUE;
+            } else {
+                out[i] = (short) (int) sample;
+            }
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException unless length is a whole number of stereo frames, within both arrays
+     */
+    static void checkLength(int length, int mixLength, int otherLength) {
+        if (length < 0 || length % 2 != 0 || length > mixLength || length > otherLength) {
+            throw new IllegalArgumentException("not a block of stereo frames within both arrays: " + length);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "scalar";
+    }
+}
@@ -1,6 +1,11 @@
 package abc.sound;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
 
 import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MetaEventListener;
@@ -27,24 +32,49 @@ public class SequencePlayer {
     // the "end_of_track" meta message type
     private static final int META_END_OF_TRACK = 47;
 
-    private final Sequencer sequencer;
+    // number of MIDI note values
+    private static final int MIDI_NOTES = 128;
+
+    // kinds of note events, in the order addNotes adds them when they fall on the same tick
+    private static final long EVENT_NOTE_OFF = 0;
+    private static final long EVENT_NOTE_ON = 1;
+    private static final long EVENT_INSTANT_NOTE_OFF = 2; // end of a note of no duration, after its start
+
+    // addNotes packs note indices into 30 bits
+    private static final int MAX_NOTES_PER_CALL = (1 << 30) - 1;
+
+    // the "set_tempo" meta message type, and the microseconds in a minute it is given in
+    private static final int META_SET_TEMPO = 81;
+    private static final int MICROSECONDS_PER_MINUTE = 60000000;
+
+    // Standard MIDI File type of a single track
+    private static final int MIDI_FILE_TYPE_SINGLE_TRACK = 0;
+
+    private Sequencer sequencer; // acquired by the first play()
+    private Playback playback; // the last playback started, or null
+    private final Sequence sequence;
     private final Track track;
     private final int beatsPerMinute;
+    private NoteListener listener = NoteListener.NONE;
 
     /*
      * Rep invariant:
-     *   sequencer and track are non-null,
+     *   sequence, track and listener are non-null, track is the only track of sequence,
+     *   sequencer is null until play() is first called,
+     *   playback is null until a playback first starts,
      *   beatsPerMinute is positive
      */
 
     private void checkRep() {
-        assert sequencer != null : "sequencer should be non-null";
+        assert sequence != null : "sequence should be non-null";
         assert track != null : "track should be non-null";
         assert beatsPerMinute >= 0 : "should be positive number of beats per minute";
+        assert listener != null : "listener should be non-null";
     }
 
     /**
-     * Make a new MIDI sequence player.
+     * Make a new MIDI sequence player. No MIDI device is touched until play() is called, so a player can
+     * schedule notes and write them to a file on a machine without any.
      * 
      * @param beatsPerMinute the number of beats per minute
      * @param ticksPerBeat the number of ticks per beat; every note plays for an integer number of ticks
@@ -53,18 +83,14 @@ public class SequencePlayer {
      */
     public SequencePlayer(int beatsPerMinute, int ticksPerBeat)
             throws MidiUnavailableException, InvalidMidiDataException {
-        this.sequencer = MidiSystem.getSequencer();
-
         // create a sequence object with with tempo-based timing, where
         // the resolution of the time step is based on ticks per beat
-        Sequence sequence = new Sequence(Sequence.PPQ, ticksPerBeat);
+        this.sequence = new Sequence(Sequence.PPQ, ticksPerBeat);
         this.beatsPerMinute = beatsPerMinute;
 
         // create an empty track; notes will be added to this track
         this.track = sequence.createTrack();
 
-        sequencer.setSequence(sequence);
-
         checkRep();
     }
 
@@ -74,14 +100,133 @@ public class SequencePlayer {
      * @param note the pitch value for the note to be played; must be a valid note
      * @param startTick the starting tick; must be >= 0
      * @param numTicks the number of ticks for which this note should be played; must be >= 0
+     * @throws IllegalArgumentException if startTick or numTicks is negative
+     * @throws ArithmeticException if the note ends past the last tick a track can hold
      */
     public void addNote(int note, int startTick, int numTicks) {
-        System.out.println(startTick+", "+numTicks);
+        checkTicks(startTick, numTicks);
+        listener.noteAdded(note, startTick, numTicks);
+        scheduleNote(note, startTick, numTicks);
+    }
+
+    /**
+     * Set the listener told about every note scheduled from now on, by addNote or addNotes.
+     *
+     * @param listener the listener; NoteListener.NONE, the default, to tell no one
+     */
+    public void setNoteListener(NoteListener listener) {
+        this.listener = listener;
+        checkRep();
+    }
+
+    /**
+     * Schedule every note of a compiled score, the score starting at atTick. Scheduling the score of a piece of
+     * music is the same as playing the music at atTick, without walking it again.
+     *
+     * @param score the notes to be played
+     * @param atTick the tick the score starts on; must be >= 0
+     * @throws IllegalArgumentException if atTick is negative
+     * @throws ArithmeticException if a note starts or ends past the last tick a track can hold
+     */
+    public void addNotes(CompiledScore score, int atTick) {
+        if (atTick < 0) {
+            throw new IllegalArgumentException("expected a start tick >= 0, got " + atTick);
+        }
+        int[] notes = new int[score.size()];
+        int[] startTicks = new int[score.size()];
+        int[] numTicks = new int[score.size()];
+        for (int i = 0; i < score.size(); i++) {
+            notes[i] = score.getMidiPitch(i);
+            startTicks[i] = Math.addExact(atTick, score.getStartTick(i));
+            numTicks[i] = score.getDurationTicks(i);
+        }
+        addNotes(notes, startTicks, numTicks);
+    }
+
+    /**
+     * Schedule many notes at once, note i to be played starting at startTicks[i] for the duration of numTicks[i].
+     * The NOTE_ON and NOTE_OFF events of all the notes are sorted by tick once and appended to the track in
+     * order, so scheduling n notes takes O(n log n) time, however the notes are ordered. On the same tick, notes
+     * end before other notes start, so a note repeated without a gap is played twice.
+     *
+     * @param notes the pitch value of every note to be played; must be valid notes
+     * @param startTicks the starting tick of every note; must be >= 0, as long as notes
+     * @param numTicks the number of ticks every note should be played for; must be >= 0, as long as notes
+     * @throws IllegalArgumentException if a start tick or number of ticks is negative
+     * @throws ArithmeticException if a note ends past the last tick a track can hold
+     */
+    public void addNotes(int[] notes, int[] startTicks, int[] numTicks) {
+        if (startTicks.length != notes.length || numTicks.length != notes.length) {
+            throw new IllegalArgumentException("expected as many start ticks and durations as notes");
+        }
+        if (notes.length > MAX_NOTES_PER_CALL) {
+            throw new IllegalArgumentException("cannot schedule more than " + MAX_NOTES_PER_CALL + " notes at once");
+        }
+        // checked before any note is told to the listener, and before a negative end tick could sort first
+        for (int i = 0; i < notes.length; i++) {
+            checkTicks(startTicks[i], numTicks[i]);
+        }
+
+        // sort on the tick, then on the kind of event, then on the note, packed into a long:
+        //   tick (31 bits) | EVENT_NOTE_OFF, EVENT_NOTE_ON or EVENT_INSTANT_NOTE_OFF (2 bits) | note index (30 bits)
+        long[] events = new long[2 * notes.length];
+        for (int i = 0; i < notes.length; i++) {
+            listener.noteAdded(notes[i], startTicks[i], numTicks[i]);
+            int endTick = startTicks[i] + numTicks[i]; // checked by checkTicks
+            long endKind = (numTicks[i] == 0) ? EVENT_INSTANT_NOTE_OFF : EVENT_NOTE_OFF;
+            events[2 * i] = ((long) startTicks[i] << 32) | (EVENT_NOTE_ON << 30) | i;
+            events[2 * i + 1] = ((long) endTick << 32) | (endKind << 30) | i;
+        }
+        Arrays.sort(events);
+
+        // events of the same command and note share their message, which is never changed once made
+        ShortMessage[] noteOn = new ShortMessage[MIDI_NOTES];
+        ShortMessage[] noteOff = new ShortMessage[MIDI_NOTES];
+        for (long event : events) {
+            int tick = (int) (event >>> 32);
+            int kind = (int) (event >>> 30) & 3;
+            int note = notes[(int) event & MAX_NOTES_PER_CALL];
+            try {
+                ShortMessage msg;
+                if (kind == EVENT_NOTE_ON) {
+                    msg = (noteOn[note] != null) ? noteOn[note] : (noteOn[note] = noteMessage(ShortMessage.NOTE_ON, note));
+                } else {
+                    msg = (noteOff[note] != null) ? noteOff[note] : (noteOff[note] = noteMessage(ShortMessage.NOTE_OFF, note));
+                }
+                this.track.add(new MidiEvent(msg, tick));
+            } catch (InvalidMidiDataException | ArrayIndexOutOfBoundsException ex) {
+                String msg = MessageFormat.format("Cannot add note with the pitch {0} at tick {1}", note, tick);
+                throw new RuntimeException(msg, ex);
+            }
+        }
+    }
+
+    /**
+     * @param startTick tick a note starts on
+     * @param numTicks number of ticks the note lasts
+     * @throws IllegalArgumentException if startTick or numTicks is negative
+     * @throws ArithmeticException if the note ends past the last tick an int can hold
+     */
+    private static void checkTicks(int startTick, int numTicks) {
+        if (startTick < 0 || numTicks < 0) {
+            throw new IllegalArgumentException("expected ticks >= 0, got a note at " + startTick + " for " + numTicks);
+        }
+        Math.addExact(startTick, numTicks);
+    }
+
+    /**
+     * Schedule the NOTE_ON and NOTE_OFF events of a note.
+     *
+     * @param note valid pitch value
+     * @param startTick tick >= 0
+     * @param numTicks numTicks >= 0
+     */
+    private void scheduleNote(int note, int startTick, int numTicks) {
         try {
             // schedule two events in the track, one for starting a note and
             // the other for ending the note.
             addMidiNoteEvent(ShortMessage.NOTE_ON, note, startTick);
-            addMidiNoteEvent(ShortMessage.NOTE_OFF, note, startTick + numTicks);
+            addMidiNoteEvent(ShortMessage.NOTE_OFF, note, startTick + numTicks); // checked by checkTicks
         } catch (InvalidMidiDataException imde) {
             String msg = MessageFormat.format("Cannot add note with the pitch {0} at tick {1} " +
                                               "for duration {2}", note, startTick, numTicks);
@@ -98,33 +243,259 @@ public class SequencePlayer {
      * @throws InvalidMidiDataException
      */
     private void addMidiNoteEvent(int eventType, int note, int tick) throws InvalidMidiDataException {
-        ShortMessage msg = new ShortMessage(eventType, DEFAULT_CHANNEL, note, DEFAULT_VELOCITY);
-        this.track.add(new MidiEvent(msg, tick));
+        this.track.add(new MidiEvent(noteMessage(eventType, note), tick));
+    }
+
+    /**
+     * @param eventType valid MidiMessage type in ShortMessage
+     * @param note valid pitch value
+     * @return message of eventType for note on the default channel, at the default velocity
+     * @throws InvalidMidiDataException
+     */
+    private static ShortMessage noteMessage(int eventType, int note) throws InvalidMidiDataException {
+        return new ShortMessage(eventType, DEFAULT_CHANNEL, note, DEFAULT_VELOCITY);
     }
 
     /**
-     * Open the MIDI sequencer and play the scheduled music.
+     * Open the MIDI sequencer and start playing the scheduled music. Returns at once; the music plays on the
+     * sequencer's own thread.
      * 
+     * @return a future completed once the music has played to the end of the track, and the sequencer has been
+     *         closed; cancelling or completing it stops the music and closes the sequencer at once
      * @throws MidiUnavailableException if the sequencer cannot be opened
+     * @throws IllegalStateException if the music is already playing
      */
-    public void play() throws MidiUnavailableException {
+    public CompletableFuture<Void> play() throws MidiUnavailableException {
+        synchronized (this) {
+            if (sequencer == null) {
+                sequencer = MidiSystem.getSequencer();
+            }
+        }
+        return play(sequencer);
+    }
+
+    /**
+     * Open a sequencer and start playing the scheduled music on it.
+     * 
+     * @param sequencer sequencer to play on, not open; it is closed once the music ends or is stopped
+     * @return a future completed once the music has played to the end of the track, and sequencer has been
+     *         closed; cancelling or completing it stops the music and closes sequencer at once
+     * @throws MidiUnavailableException if sequencer cannot be opened
+     * @throws IllegalStateException if the music is already playing
+     */
+    synchronized CompletableFuture<Void> play(Sequencer sequencer) throws MidiUnavailableException {
+        checkNotPlaying();
         sequencer.open();
-        sequencer.setTempoInBPM(this.beatsPerMinute);
+        return start(sequencer, sequencer::close);
+    }
 
-        sequencer.addMetaEventListener(new MetaEventListener() {
-            public void meta(MetaMessage meta) {
-                if (meta.getType() == META_END_OF_TRACK) {
-                    // allow the sequencer to finish
-                    try { Thread.sleep(1000); } catch (InterruptedException ie) { }
-                    // stop & close the sequencer
-                    sequencer.stop();
-                    sequencer.close();
-                }
+    /**
+     * Lease an open sequencer from pool, waiting for one to be free if need be, and start playing the scheduled
+     * music on it. Playing tune after tune from a pool spares opening and closing a sequencer for each.
+     * 
+     * @param pool pool to lease a sequencer from
+     * @return a future completed once the music has played to the end of the track, and the sequencer has been
+     *         given back to pool; cancelling or completing it stops the music and gives the sequencer back at once
+     * @throws MidiUnavailableException if pool has to make a sequencer and cannot
+     * @throws InterruptedException if interrupted while waiting for a sequencer
+     * @throws IllegalStateException if the music is already playing, or pool is closed
+     */
+    public CompletableFuture<Void> play(SequencerPool pool) throws MidiUnavailableException, InterruptedException {
+        // the lease is taken before the lock on this player, as it may take a while
+        SequencerPool.Lease lease = pool.acquire();
+        synchronized (this) {
+            try {
+                checkNotPlaying();
+                return start(lease.getSequencer(), lease::close);
+            } catch (RuntimeException ex) {
+                lease.close();
+                throw ex;
             }
-        });
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if the music is playing
+     */
+    private void checkNotPlaying() {
+        assert Thread.holdsLock(this);
+        // on whether the sequencer has been let go of, not on the future, which callers can complete themselves
+        if (playback != null && !playback.released) {
+            throw new IllegalStateException("already playing");
+        }
+    }
+
+    /**
+     * Start playing the scheduled music on sequencer
+     * 
+     * @param sequencer open sequencer
+     * @param release action that lets go of sequencer once the music ends or is stopped
+     * @return the playback started
+     */
+    private Playback start(Sequencer sequencer, Runnable release) {
+        assert Thread.holdsLock(this);
+        try {
+            sequencer.setSequence(sequence);
+        } catch (InvalidMidiDataException imde) {
+            release.run();
+            throw new IllegalStateException("sequence rejected by the sequencer", imde);
+        }
+        sequencer.setTempoInBPM(this.beatsPerMinute);
+        playback = new Playback(sequencer, release);
+        sequencer.addMetaEventListener(playback);
 
         // start playing!
         sequencer.start();
+        checkRep();
+        return playback;
+    }
+
+    /**
+     * Stop the music playing, if any, and let go of its sequencer. The future play returned is cancelled.
+     */
+    public void stop() {
+        Playback playing;
+        synchronized (this) {
+            playing = playback;
+        }
+        if (playing != null) {
+            playing.cancel(false);
+        }
+    }
+
+    /**
+     * A playback of the music on a sequencer, completed once the sequencer reaches the end of the track. However
+     * it is completed, whether by the end of the track, by cancelling or by a caller completing it, the sequencer
+     * is let go of first.
+     */
+    private class Playback extends CompletableFuture<Void> implements MetaEventListener {
+        private final Sequencer sequencer;
+        private final Runnable letGo;
+        private boolean released = false; // guarded by the lock on SequencePlayer.this
+
+        Playback(Sequencer sequencer, Runnable letGo) {
+            this.sequencer = sequencer;
+            this.letGo = letGo;
+        }
+
+        @Override
+        public void meta(MetaMessage meta) {
+            if (meta.getType() == META_END_OF_TRACK) {
+                // complete lets go of the sequencer before the future completes, so whoever waits on it can play again
+                complete(null);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            release();
+            return super.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean complete(Void value) {
+            release();
+            return super.complete(value);
+        }
+
+        @Override
+        public boolean completeExceptionally(Throwable ex) {
+            release();
+            return super.completeExceptionally(ex);
+        }
+
+        @Override
+        public void obtrudeValue(Void value) {
+            release();
+            super.obtrudeValue(value);
+        }
+
+        @Override
+        public void obtrudeException(Throwable ex) {
+            release();
+            super.obtrudeException(ex);
+        }
+
+        /**
+         * Stop the sequencer and let go of it, closing it or giving it back to its pool, unless that has been done
+         */
+        private void release() {
+            synchronized (SequencePlayer.this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+                sequencer.removeMetaEventListener(this);
+                sequencer.stop();
+                letGo.run();
+            }
+        }
+    }
+
+    /**
+     * Write the scheduled notes to out as a Standard MIDI File of a single track, which plays them at the tempo
+     * of this player. No sequencer or other MIDI device is involved.
+     * 
+     * @param out stream to write to; not closed
+     * @throws IOException if out cannot be written to
+     */
+    public void write(OutputStream out) throws IOException {
+        // the tempo is set on the sequencer when playing, so it is only part of the track while writing
+        MidiEvent tempo = new MidiEvent(tempoMessage(beatsPerMinute), 0);
+        track.add(tempo);
+        try {
+            MidiSystem.write(sequence, MIDI_FILE_TYPE_SINGLE_TRACK, out);
+        } finally {
+            track.remove(tempo);
+        }
+    }
+
+    /**
+     * Render the scheduled notes to out as WAV audio, at the tempo of this player, as fast as the CPU allows.
+     * No sequencer or sound device is involved; see OfflineRenderer.
+     *
+     * @param out stream to write to; not closed
+     * @return how much audio was rendered, and how fast
+     * @throws IOException if out cannot be written to
+     * @throws MidiUnavailableException if there is no software synthesizer to render with
+     */
+    public RenderStats render(OutputStream out) throws IOException, MidiUnavailableException {
+        return OfflineRenderer.render(track, getMicrosecondsPerTick(), out);
+    }
+
+    /**
+     * Render the scheduled notes as samples of OfflineRenderer.FORMAT, at the tempo of this player.
+     *
+     * @param frames number of frames to render, from tick 0
+     * @param abandoned checked between blocks of audio; once it is true, rendering stops
+     * @return the samples of frames frames, channels interleaved
+     * @throws IOException if the synthesizer fails to render
+     * @throws MidiUnavailableException if there is no software synthesizer to render with
+     * @see OfflineRenderer#renderSamples(Track, double, long, BooleanSupplier)
+     */
+    short[] renderSamples(long frames, BooleanSupplier abandoned) throws IOException, MidiUnavailableException {
+        return OfflineRenderer.renderSamples(track, getMicrosecondsPerTick(), frames, abandoned);
+    }
+
+    /**
+     * @return length of a tick at the tempo of this player
+     */
+    private double getMicrosecondsPerTick() {
+        return MICROSECONDS_PER_MINUTE / ((double) beatsPerMinute * sequence.getResolution());
+    }
+
+    /**
+     * @param beatsPerMinute the number of beats per minute, > 0
+     * @return the "set_tempo" meta message of beatsPerMinute
+     */
+    private static MetaMessage tempoMessage(int beatsPerMinute) {
+        int microsecondsPerBeat = MICROSECONDS_PER_MINUTE / beatsPerMinute;
+        byte[] data = { (byte) (microsecondsPerBeat >>> 16), (byte) (microsecondsPerBeat >>> 8), (byte) microsecondsPerBeat };
+        try {
+            return new MetaMessage(META_SET_TEMPO, data, data.length);
+        } catch (InvalidMidiDataException imde) {
+            throw new AssertionError("set_tempo is a valid meta message", imde);
+        }
     }
 
     /**
@@ -208,8 +579,8 @@ public class SequencePlayer {
 
             System.out.println(player);
 
-            // play!
-            player.play();
+            // play, and wait for the music to end
+            player.play().join();
 
             /*
              * Note: A possible weird behavior of the Java sequencer: Even if the
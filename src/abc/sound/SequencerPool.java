@@ -0,0 +1,366 @@
+package abc.sound;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Sequencer;
+
+/**
+ * Bounded pool of open sequencers, for playing one tune after another without opening and closing a sequencer,
+ * and the synthesizer it is connected to, for every tune. A sequencer is leased from the pool, has its Sequence
+ * set for the tune, and is given back once the tune ends; see SequencePlayer.play(SequencerPool).
+ * The pool makes sequencers as they are first needed, up to its size, and then makes callers wait for one to be
+ * given back. A lease that is never given back, and is garbage collected, is a leak: the pool reports it, with
+ * the stack of the caller that leased it, and takes its sequencer back.
+ * A pool is safe for use by multiple threads.
+ */
+public class SequencerPool implements AutoCloseable {
+
+    /**
+     * Makes sequencers for a pool
+     */
+    @FunctionalInterface
+    interface SequencerFactory {
+        /**
+         * @return a sequencer, not yet open
+         * @throws MidiUnavailableException if there is none to be had
+         */
+        Sequencer create() throws MidiUnavailableException;
+    }
+
+    /**
+     * Leak listener that prints every leak to the standard error stream, the default of every pool
+     */
+    public static final Consumer<Throwable> PRINT_LEAKS = leak -> leak.printStackTrace();
+
+    private final int maxSize;
+    private final SequencerFactory factory;
+    private final Consumer<Throwable> leakListener;
+    private final Deque<Sequencer> idle = new ArrayDeque<>();
+    private final Set<LeaseReference> leased = new HashSet<>();
+    private final ReferenceQueue<Lease> abandoned = new ReferenceQueue<>();
+    private int size = 0;
+    private int leaks = 0;
+    private boolean closed = false;
+
+    // Abstraction function:
+    //  represents a pool of at most maxSize sequencers, made by factory: size of them made and not closed,
+    //  of which those in idle are open and free to lease, and those of the references in leased are leased;
+    //  the rest are being made. A lease whose reference is enqueued on abandoned has been garbage collected
+    //  without being given back; leaks have been found so far, each reported to leakListener.
+    //  Once closed, the pool leases no more sequencers, and closes those given back.
+    // Rep invariant:
+    //  maxSize > 0, 0 <= size <= maxSize, idle.size() + leased.size() <= size, leaks >= 0
+    //  idle is empty if closed
+    // Safety from rep exposure:
+    //  all fields are private; sequencers are only handed out in leases, and the pool keeps no sequencer of a
+    //  lease but through leased
+    // Thread safety argument:
+    //  every mutable field is guarded by the lock on this; sequencers are made, opened and closed, and leaks
+    //  reported, outside it
+
+    /**
+     * Make an empty pool of sequencers connected to the default synthesizer
+     * @param maxSize most sequencers the pool holds, > 0
+     */
+    public SequencerPool(int maxSize) {
+        this(maxSize, MidiSystem::getSequencer, PRINT_LEAKS);
+    }
+
+    /**
+     * Make an empty pool
+     * @param maxSize most sequencers the pool holds, > 0
+     * @param factory makes the sequencers of the pool
+     * @param leakListener told of every leak found, with the stack of the caller that leased it
+     */
+    SequencerPool(int maxSize, SequencerFactory factory, Consumer<Throwable> leakListener) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("expected a positive size, got " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.factory = factory;
+        this.leakListener = leakListener;
+        checkRep();
+    }
+
+    private synchronized void checkRep() {
+        assert maxSize > 0;
+        assert 0 <= size && size <= maxSize;
+        assert idle.size() + leased.size() <= size;
+        assert leaks >= 0;
+        assert !closed || idle.isEmpty();
+    }
+
+    /**
+     * Lease an open sequencer, waiting for one to be given back if the pool is at its size and none is free
+     * @return the lease of an open sequencer, to be closed once done with
+     * @throws MidiUnavailableException if a new sequencer cannot be made or opened
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalStateException if the pool is closed
+     */
+    public Lease acquire() throws MidiUnavailableException, InterruptedException {
+        return acquire(Long.MAX_VALUE);
+    }
+
+    /**
+     * Lease an open sequencer, waiting at most timeout for one to be given back if the pool is at its size and
+     * none is free
+     * @param timeout most time to wait, >= 0
+     * @param unit unit of timeout
+     * @return the lease of an open sequencer, to be closed once done with; null if none was free in time
+     * @throws MidiUnavailableException if a new sequencer cannot be made or opened
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalStateException if the pool is closed
+     */
+    public Lease tryAcquire(long timeout, TimeUnit unit) throws MidiUnavailableException, InterruptedException {
+        // toNanos saturates at Long.MAX_VALUE, which is as long as acquire() waits
+        return acquire(unit.toNanos(timeout));
+    }
+
+    /**
+     * @param timeoutNanos most nanoseconds to wait; Long.MAX_VALUE to wait for ever
+     * @return the lease of an open sequencer; null if none was free in time
+     */
+    private Lease acquire(long timeoutNanos) throws MidiUnavailableException, InterruptedException {
+        // elapsed time is measured from start rather than checked against a deadline, which could overflow
+        final long start = System.nanoTime();
+        while (true) {
+            List<LeaseReference> found;
+            synchronized (this) {
+                found = reclaimLeaks();
+                if (found.isEmpty()) {
+                    if (closed) {
+                        throw new IllegalStateException("pool is closed");
+                    }
+                    if (!idle.isEmpty()) {
+                        return lease(idle.pop());
+                    }
+                    if (size < maxSize) {
+                        // make the sequencer outside the lock, as opening one can take a while
+                        size++;
+                        break;
+                    }
+                    long remaining = timeoutNanos - (System.nanoTime() - start);
+                    if (remaining <= 0) {
+                        return null;
+                    }
+                    // leaks are only found by looking for them, so wake now and then to look while waiting
+                    TimeUnit.NANOSECONDS.timedWait(this, Math.min(remaining, TimeUnit.SECONDS.toNanos(1)));
+                }
+            }
+            reportLeaks(found);
+        }
+        Sequencer sequencer = null;
+        try {
+            sequencer = factory.create();
+            sequencer.open();
+        } catch (MidiUnavailableException | RuntimeException ex) {
+            synchronized (this) {
+                size--;
+                notifyAll();
+            }
+            throw ex;
+        }
+        synchronized (this) {
+            return lease(sequencer);
+        }
+    }
+
+    /**
+     * @return a new lease of sequencer
+     */
+    private Lease lease(Sequencer sequencer) {
+        assert Thread.holdsLock(this);
+        Lease lease = new Lease(sequencer);
+        leased.add(lease.reference);
+        checkRep();
+        return lease;
+    }
+
+    /**
+     * Take back the sequencer of a lease
+     */
+    private void giveBack(LeaseReference reference) {
+        boolean keep;
+        synchronized (this) {
+            if (!leased.remove(reference)) {
+                return;
+            }
+            reference.clear();
+            keep = !closed && reference.sequencer.isOpen();
+            if (!keep) {
+                size--;
+            }
+        }
+        Sequencer sequencer = reference.sequencer;
+        if (keep) {
+            // the next tune sets a sequence of its own; the sequencer only has to be still, at the start
+            sequencer.stop();
+            sequencer.setTickPosition(0);
+        } else {
+            sequencer.close();
+        }
+        boolean closedMeanwhile = false;
+        synchronized (this) {
+            if (keep && closed) {
+                size--;
+                closedMeanwhile = true;
+            } else if (keep) {
+                idle.push(sequencer);
+            }
+            notifyAll();
+            checkRep();
+        }
+        if (closedMeanwhile) {
+            sequencer.close();
+        }
+    }
+
+    /**
+     * Take back the room of leases that were garbage collected without being given back
+     * @return references of the leases found, to be passed to reportLeaks once the lock is released
+     */
+    private List<LeaseReference> reclaimLeaks() {
+        assert Thread.holdsLock(this);
+        List<LeaseReference> found = Collections.emptyList();
+        Reference<? extends Lease> reference;
+        while ((reference = abandoned.poll()) != null) {
+            LeaseReference leak = (LeaseReference) reference;
+            if (leased.remove(leak)) {
+                if (found.isEmpty()) {
+                    found = new ArrayList<>();
+                }
+                found.add(leak);
+                leaks++;
+                size--;
+            }
+        }
+        if (!found.isEmpty()) {
+            // there is room for a new sequencer for whoever is waiting
+            notifyAll();
+        }
+        return found;
+    }
+
+    /**
+     * Close the sequencers of leaks found by reclaimLeaks, and report them to the leak listener
+     */
+    private void reportLeaks(List<LeaseReference> found) {
+        assert !Thread.holdsLock(this);
+        for (LeaseReference leak : found) {
+            // the sequencer may be playing still; it is closed rather than given to someone else
+            leak.sequencer.close();
+            leakListener.accept(leak.acquiredAt);
+        }
+    }
+
+    /**
+     * @return number of sequencers the pool has made and not closed
+     */
+    public synchronized int getSize() {
+        return size;
+    }
+
+    /**
+     * @return number of sequencers free to lease at once
+     */
+    public synchronized int getIdle() {
+        return idle.size();
+    }
+
+    /**
+     * @return number of leaks found: leases garbage collected without being given back
+     */
+    public int getLeaks() {
+        List<LeaseReference> found;
+        int leaksFound;
+        synchronized (this) {
+            found = reclaimLeaks();
+            leaksFound = leaks;
+        }
+        reportLeaks(found);
+        return leaksFound;
+    }
+
+    /**
+     * Close the pool: close every sequencer free to lease now, and every sequencer leased once it is given back.
+     * No more sequencers are leased.
+     */
+    @Override
+    public void close() {
+        Sequencer[] toClose;
+        List<LeaseReference> found;
+        synchronized (this) {
+            closed = true;
+            found = reclaimLeaks();
+            toClose = idle.toArray(new Sequencer[0]);
+            size -= idle.size();
+            idle.clear();
+            notifyAll();
+            checkRep();
+        }
+        reportLeaks(found);
+        for (Sequencer sequencer : toClose) {
+            sequencer.close();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SequencerPool[" + size + " of " + maxSize + " sequencers, " + idle.size() + " idle, " + leaks + " leaks"
+                + (closed ? ", closed" : "") + "]";
+    }
+
+    /**
+     * Lease of an open sequencer of a pool, until it is closed
+     */
+    public class Lease implements AutoCloseable {
+        private final LeaseReference reference;
+
+        private Lease(Sequencer sequencer) {
+            this.reference = new LeaseReference(this, sequencer, abandoned);
+        }
+
+        /**
+         * @return the sequencer leased, open; not to be closed, nor used once the lease is
+         */
+        public Sequencer getSequencer() {
+            return reference.sequencer;
+        }
+
+        /**
+         * Give the sequencer back to the pool. Closing a lease more than once has no further effect.
+         */
+        @Override
+        public void close() {
+            giveBack(reference);
+        }
+    }
+
+    /**
+     * Reference to a lease, enqueued once the lease has been garbage collected, that keeps what is needed to
+     * report it and take its sequencer back
+     */
+    private static class LeaseReference extends PhantomReference<Lease> {
+        private final Sequencer sequencer;
+        private final Throwable acquiredAt;
+
+        LeaseReference(Lease lease, Sequencer sequencer, ReferenceQueue<Lease> queue) {
+            super(lease, queue);
+            this.sequencer = sequencer;
+            this.acquiredAt = new Throwable("sequencer leased here was never given back to its pool");
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package abc.sound;
+
+import java.util.Arrays;
+
+/**
+ * Small built-in synthesizer, for machines with no soundbank for the JDK's: renders the notes of a compiled score,
+ * as Note.play would schedule them, to stereo float samples in the range of short, ready for a PcmMixer or a
+ * MixKernel. Every note is played by an oscillator reading a wavetable, under a linear attack and release; the
+ * wavetables, one for every number of harmonics up to HARMONICS, and the phase increment and wavetable of every
+ * MIDI note are computed once, when the synthesizer is made. Rendering allocates nothing, and is deterministic:
+ * the same score gives the same samples, bit for bit, on every JVM and whatever the size of the blocks it is
+ * rendered in.
+ * A synthesizer is mutable and not safe for use by multiple threads.
+ */
+public class WavetableSynth {
+
+    /**
+     * Number of notes that can sound at once; a note started when all are sounding takes the place of the oldest
+     */
+    public static final int MAX_VOICES = 64;
+
+    /**
+     * Most harmonics a wavetable has; a note gets as many of them as fit under the Nyquist frequency
+     */
+    public static final int HARMONICS = 8;
+
+    /**
+     * Seconds a note takes to rise to full volume
+     */
+    public static final double ATTACK_SECONDS = 0.005;
+
+    /**
+     * Seconds a note at full volume takes to die away, once it ends
+     */
+    public static final double RELEASE_SECONDS = 0.1;
+
+    /**
+     * Loudest a single note gets, in the range of short; a few notes can sound at once before the mix clips
+     */
+    public static final float VOICE_GAIN = 0.25f * Short.MAX_VALUE;
+
+    private static final int TABLE_BITS = 11;
+    private static final int TABLE_SIZE = 1 << TABLE_BITS;
+    // bits of the phase below those of the table index that interpolate between its entries
+    private static final int FRACTION_BITS = 16;
+    private static final int FRACTION_SHIFT = 32 - TABLE_BITS - FRACTION_BITS;
+    private static final float FRACTION_SCALE = 1f / (1 << FRACTION_BITS);
+    private static final int MIDI_NOTES = 128;
+    private static final int A4 = 69;
+    private static final double A4_HERTZ = 440;
+    private static final int CHANNELS = 2;
+
+    private final float sampleRate;
+    private final float[][] tables;
+    private final int[] noteIncrement = new int[MIDI_NOTES];
+    private final int[] noteTable = new int[MIDI_NOTES];
+    private final float attackStep;
+    private final float releaseStep;
+
+    private CompiledScore score = CompiledScore.compile(new Rest(0));
+    private double framesPerTick = 1;
+    private long position = 0;
+    private int nextNote = 0;
+
+    private final boolean[] sounding = new boolean[MAX_VOICES];
+    private final int[] phase = new int[MAX_VOICES];
+    private final int[] increment = new int[MAX_VOICES];
+    private final int[] table = new int[MAX_VOICES];
+    private final float[] level = new float[MAX_VOICES];
+    private final float[] step = new float[MAX_VOICES];
+    private final long[] releaseFrame = new long[MAX_VOICES];
+    private final int[] noteOfVoice = new int[MAX_VOICES];
+
+    // Abstraction function:
+    //  represents a synthesizer at sampleRate frames a second, that has rendered the first position frames of
+    //  score, at framesPerTick frames a tick. Notes 0, ..., nextNote-1 of score have started; voice v plays a
+    //  note iff sounding[v], namely note noteOfVoice[v], with its oscillator at phase[v] / 2^32 of a period,
+    //  advancing increment[v] / 2^32 of a period a frame through wavetable tables[table[v]], at volume level[v],
+    //  which changes by step[v] a frame, and is released on frame releaseFrame[v], Long.MAX_VALUE once it has been.
+    //  noteIncrement[n] and noteTable[n] are the increment and wavetable of MIDI note n.
+    // Rep invariant:
+    //  sampleRate > 0, framesPerTick > 0, position >= 0, 0 <= nextNote <= score.size()
+    //  tables[h] has TABLE_SIZE + 1 entries, the last a copy of the first, for every h
+    //  0 <= noteTable[n] < tables.length for every n
+    //  for every voice v: 0 <= level[v] <= 1; 0 <= table[v] < tables.length;
+    //      if !sounding[v], level[v] == 0 and step[v] == 0, else 0 <= noteOfVoice[v] < nextNote
+    // Safety from rep exposure:
+    //  all fields are private; the arrays are made by the synthesizer and never returned; score is immutable
+
+    /**
+     * Make a synthesizer, with no score to play
+     * @param sampleRate frames in a second of the audio to render, > 0
+     */
+    public WavetableSynth(float sampleRate) {
+        if (!(sampleRate > 0)) {
+            throw new IllegalArgumentException("expected a positive sample rate, got " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+        this.tables = new float[HARMONICS + 1][];
+        for (int harmonics = 1; harmonics <= HARMONICS; harmonics++) {
+            tables[harmonics] = wavetable(harmonics);
+        }
+        // no note has no harmonics; the table is there for every index to be one of a table
+        tables[0] = tables[1];
+        for (int note = 0; note < MIDI_NOTES; note++) {
+            // StrictMath, so that every JVM computes the same tables
+            double hertz = A4_HERTZ * StrictMath.pow(2, (note - A4) / 12.0);
+            noteIncrement[note] = (int) Math.round(hertz / sampleRate * 0x1p32);
+            noteTable[note] = Math.max(1, Math.min(HARMONICS, (int) (sampleRate / 2 / hertz)));
+        }
+        this.attackStep = (float) (1 / Math.max(1, ATTACK_SECONDS * sampleRate));
+        this.releaseStep = (float) (1 / Math.max(1, RELEASE_SECONDS * sampleRate));
+        checkRep();
+    }
+
+    private void checkRep() {
+        assert sampleRate > 0;
+        assert framesPerTick > 0;
+        assert position >= 0;
+        assert 0 <= nextNote && nextNote <= score.size();
+        for (float[] wavetable : tables) {
+            assert wavetable.length == TABLE_SIZE + 1;
+            assert Float.compare(wavetable[0], wavetable[TABLE_SIZE]) == 0;
+        }
+        for (int v = 0; v < MAX_VOICES; v++) {
+            assert 0 <= level[v] && level[v] <= 1;
+            assert 0 <= table[v] && table[v] < tables.length;
+            if (sounding[v]) {
+                assert 0 <= noteOfVoice[v] && noteOfVoice[v] < nextNote;
+            } else {
+                assert level[v] == 0 && step[v] == 0;
+            }
+        }
+    }
+
+    /**
+     * @param harmonics number of harmonics, >= 1
+     * @return a period of the sum of harmonics 1, ..., harmonics, harmonic k at 1/k the amplitude of the first,
+     *         scaled for its peak to be 1, in TABLE_SIZE entries and a copy of the first
+     */
+    private static float[] wavetable(int harmonics) {
+        double[] wave = new double[TABLE_SIZE];
+        double peak = 0;
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            for (int k = 1; k <= harmonics; k++) {
+                wave[i] += StrictMath.sin(2 * Math.PI * k * i / TABLE_SIZE) / k;
+            }
+            peak = Math.max(peak, Math.abs(wave[i]));
+        }
+        float[] table = new float[TABLE_SIZE + 1];
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            table[i] = (float) (wave[i] / peak);
+        }
+        table[TABLE_SIZE] = table[0];
+        return table;
+    }
+
+    /**
+     * Silence every note, and start playing score from its beginning
+     * @param score notes to play, every MIDI pitch in 0..127
+     * @param framesPerTick frames in a tick of score, > 0
+     */
+    public void start(CompiledScore score, double framesPerTick) {
+        if (!(framesPerTick > 0) || Double.isInfinite(framesPerTick)) {
+            throw new IllegalArgumentException("expected a positive number of frames a tick, got " + framesPerTick);
+        }
+        if (score.getLowestMidiPitch() < 0 || score.getHighestMidiPitch() >= MIDI_NOTES) {
+            throw new IllegalArgumentException("MIDI pitches out of range: " + score.getLowestMidiPitch() + ".." + score.getHighestMidiPitch());
+        }
+        this.score = score;
+        this.framesPerTick = framesPerTick;
+        this.position = 0;
+        this.nextNote = 0;
+        Arrays.fill(sounding, false);
+        Arrays.fill(level, 0);
+        Arrays.fill(step, 0);
+        checkRep();
+    }
+
+    /**
+     * @return number of frames rendered since the score started
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return true iff every note of the score has started and died away, so that from here on only silence is
+     *         rendered
+     */
+    public boolean isFinished() {
+        if (nextNote < score.size()) {
+            return false;
+        }
+        for (int v = 0; v < MAX_VOICES; v++) {
+            if (sounding[v]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Renders the next frames of the score
+     * @param block array to render into: the samples of frame i, left then right, go to block[2*i], block[2*i+1],
+     *              replacing what was there; the rest of block is untouched
+     * @param frames number of frames to render, 0 <= frames <= block.length / 2
+     */
+    public void render(float[] block, int frames) {
+        if (frames < 0 || frames > block.length / CHANNELS) {
+            throw new IllegalArgumentException("cannot render " + frames + " frames into " + block.length + " samples");
+        }
+        Arrays.fill(block, 0, CHANNELS * frames, 0);
+        long end = position + frames;
+        long now = position;
+        while (now < end) {
+            while (nextNote < score.size() && startFrame(nextNote) <= now) {
+                startNote(nextNote++, now);
+            }
+            // render up to the next note that starts or ends, so that within a segment every voice just runs
+            long segmentEnd = end;
+            if (nextNote < score.size()) {
+                segmentEnd = Math.min(segmentEnd, startFrame(nextNote));
+            }
+            for (int v = 0; v < MAX_VOICES; v++) {
+                if (sounding[v]) {
+                    if (releaseFrame[v] <= now) {
+                        releaseFrame[v] = Long.MAX_VALUE;
+                        step[v] = -releaseStep;
+                    }
+                    segmentEnd = Math.min(segmentEnd, releaseFrame[v]);
+                }
+            }
+            for (int v = 0; v < MAX_VOICES; v++) {
+                if (sounding[v]) {
+                    renderVoice(v, block, (int) (now - position), (int) (segmentEnd - position));
+                }
+            }
+            now = segmentEnd;
+        }
+        position = end;
+        checkRep();
+    }
+
+    /**
+     * Adds frames from, ..., to-1 of voice v to block
+     */
+    private void renderVoice(int v, float[] block, int from, int to) {
+        float[] wave = tables[table[v]];
+        int p = phase[v];
+        int inc = increment[v];
+        float l = level[v];
+        float s = step[v];
+        for (int i = from; i < to; i++) {
+            if (s != 0) {
+                l += s;
+                if (l >= 1) {
+                    l = 1;
+                    s = 0;
+                } else if (l <= 0) {
+                    l = 0;
+                    s = 0;
+                    sounding[v] = false;
+                    break;
+                }
+            }
+            int index = p >>> (32 - TABLE_BITS);
+            float fraction = ((p >>> FRACTION_SHIFT) & ((1 << FRACTION_BITS) - 1)) * FRACTION_SCALE;
+            float sample = VOICE_GAIN * l * (wave[index] + fraction * (wave[index + 1] - wave[index]));
+            block[CHANNELS * i] += sample;
+            block[CHANNELS * i + 1] += sample;
+            p += inc;
+        }
+        phase[v] = p;
+        level[v] = l;
+        step[v] = s;
+    }
+
+    /**
+     * Starts note i of the score on frame now, on a voice that is not sounding, or else the oldest voice
+     */
+    private void startNote(int i, long now) {
+        int voice = 0;
+        for (int v = 0; v < MAX_VOICES; v++) {
+            if (!sounding[v]) {
+                voice = v;
+                break;
+            }
+            if (noteOfVoice[v] < noteOfVoice[voice]) {
+                voice = v;
+            }
+        }
+        int pitch = score.getMidiPitch(i);
+        sounding[voice] = true;
+        noteOfVoice[voice] = i;
+        phase[voice] = 0;
+        increment[voice] = noteIncrement[pitch];
+        table[voice] = noteTable[pitch];
+        level[voice] = 0;
+        step[voice] = attackStep;
+        releaseFrame[voice] = Math.max(now, frame(score.getStartTick(i) + score.getDurationTicks(i)));
+    }
+
+    /**
+     * @return frame note i of the score starts on
+     */
+    private long startFrame(int i) {
+        return frame(score.getStartTick(i));
+    }
+
+    /**
+     * @return frame tick of the score falls on, rounded to the nearest
+     */
+    private long frame(long tick) {
+        return Math.round(tick * framesPerTick);
+    }
+
+    @Override
+    public String toString() {
+        return "WavetableSynth[" + sampleRate + " Hz, frame " + position + " of " + score + "]";
+    }
+}
@@ -0,0 +1,98 @@
+package abc.parser;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import abc.sound.*;
+import lib6005.parser.UnableToParseException;
+
+/** This file contains tests on the single pass AbcScanner, by comparing it with parsing the header with
+ *  abcNotation.g and then every voice with musicNotation.g
+ *
+ */
+public class AbcScannerTests {
+
+    /*
+     * Testing strategy:
+     *  parse(abcFile) --> piece
+     *      abcFile is every file in sample_abc
+     *
+     *  parse(abcText) --> piece
+     *      header contains whitespace between fields' terminals, comments, voices that are never used in the body
+     *      meter is C, C|, a fraction; key has an accidental, is minor, is followed by whitespace
+     *      body contains comment lines, voice fields with comments, lines for no voice before the first voice field
+     *      abcText doesn't match the grammar: missing index, missing key, lone accidental in the body, no body
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers every file in sample_abc
+    @Test
+    public void testSampleCorpusMatchesTwoPassParse() throws UnableToParseException, IOException {
+        File[] tunes = new File("sample_abc").listFiles((dir, name) -> name.endsWith(".abc"));
+        Arrays.sort(tunes);
+        for (File tune : tunes) {
+            assertEquals("expected same piece for " + tune, parseTwice(tune), AbcScanner.parse(tune));
+            assertEquals("expected same piece for " + tune, parseTwice(tune), Music.parsePiece(tune));
+        }
+    }
+
+    // covers whitespace in header fields, header comments, unused voices, meter C|, key with accidental and mode
+    @Test
+    public void testHeaderFields() throws UnableToParseException {
+        assertSameAsTwoPassParse("X: 1 2 \n%comment\nT: a title \nC:someone\nM: C|\nL:1/4 \nQ: 1 / 4 = 90 \n"
+                                + "V: unused %declared only\nV:1\nK: F#m \nV:1\nABc|\n");
+        assertSameAsTwoPassParse("X:3\nT:t\nM:3 / 4\n% between fields\nK:Bb\nB E e b|\n");
+        assertSameAsTwoPassParse("X:3\nT:t\nM:C\nK:C m\n  C D E|\n");
+    }
+
+    // covers comment lines, voice fields with comments, lines before the first voice field
+    @Test
+    public void testBodyVoicesAndComments() throws UnableToParseException {
+        assertSameAsTwoPassParse("X:1\nT:voices\nK:C\nz4|\n%\nV: 1 % melody\nC D E F|\n  V:2\n  C, D, E, F,|\n%\nV:1\n[1 G :|[2 A|]\n");
+        assertSameAsTwoPassParse("X:1\nT:only comments\nK:C\n%\n");
+    }
+
+    // covers missing index
+    @Test(expected=UnableToParseException.class)
+    public void testMissingIndex() throws UnableToParseException {
+        AbcScanner.parse("T:title\nK:C\nC|\n");
+    }
+
+    // covers missing key
+    @Test(expected=UnableToParseException.class)
+    public void testMissingKey() throws UnableToParseException {
+        AbcScanner.parse("X:1\nT:title\nC|\n");
+    }
+
+    // covers lone accidental in the body
+    @Test(expected=UnableToParseException.class)
+    public void testLoneAccidental() throws UnableToParseException {
+        AbcScanner.parse("X:1\nT:title\nK:C\n^ C|\n");
+    }
+
+    // covers no body
+    @Test(expected=UnableToParseException.class)
+    public void testNoBody() throws UnableToParseException {
+        AbcScanner.parse("X:1\nT:title\nK:C\n");
+    }
+
+    private static Piece parseTwice(File tune) {
+        Header header = Music.parseHeader(tune);
+        return new Piece(header, Music.parseMusic(header, BodyParser.PARSE_TREE));
+    }
+
+    private static void assertSameAsTwoPassParse(String abcText) throws UnableToParseException {
+        Header header = HeaderParser.buildHeader(Grammars.abcParser().parse(abcText));
+        Piece expected = new Piece(header, Music.parseMusic(header, BodyParser.PARSE_TREE));
+        assertEquals("expected same piece for \"" + abcText + "\"", expected, AbcScanner.parse(abcText));
+    }
+}
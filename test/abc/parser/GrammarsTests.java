@@ -0,0 +1,74 @@
+package abc.parser;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import abc.sound.*;
+import lib6005.parser.GrammarCompiler;
+import lib6005.parser.ParseTree;
+import lib6005.parser.Parser;
+import lib6005.parser.UnableToParseException;
+
+/** This file contains tests on the shared grammar registry
+ *
+ */
+public class GrammarsTests {
+
+    /*
+     * Testing strategy:
+     *  abcParser(), musicParser() --> parser
+     *      called once, called repeatedly, called from several threads at once
+     *      resulting parser used for a single voice piece, a multiple voice piece
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers called repeatedly
+    @Test
+    public void testParsersAreCompiledOnce() {
+        assertSame("expected the same abc parser on every call", Grammars.abcParser(), Grammars.abcParser());
+        assertSame("expected the same music parser on every call", Grammars.musicParser(), Grammars.musicParser());
+    }
+
+    // covers called from several threads at once, multiple voice piece
+    @Test
+    public void testParsersSharedAcrossThreads() throws Exception {
+        final File musicFile = new File("sample_abc/invention.abc");
+        final Music expected = Music.parseMusic(Music.parseHeader(musicFile));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Callable<Music>> tasks = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                tasks.add(() -> Music.parseMusic(Music.parseHeader(musicFile)));
+            }
+            for (Future<Music> result : executor.invokeAll(tasks)) {
+                assertEquals("expected concurrent parses to agree", expected, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // covers single voice piece, parsers loaded from the classpath
+    @Test
+    public void testSharedParserMatchesFreshlyCompiledParser() throws UnableToParseException, IOException {
+        File musicFile = new File("sample_abc/piece1.abc");
+        Parser<AbcGrammar> freshParser = GrammarCompiler.compile(new File("src/abc/parser/abcNotation.g"), AbcGrammar.ROOT);
+        Header expected = HeaderParser.buildHeader(freshParser.parse(musicFile));
+        ParseTree<AbcGrammar> tree = Grammars.abcParser().parse(musicFile);
+        assertEquals("expected the same header from both parsers", expected, HeaderParser.buildHeader(tree));
+    }
+}
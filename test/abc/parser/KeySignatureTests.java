@@ -0,0 +1,133 @@
+package abc.parser;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/** This file contains tests on resolving keys into KeySignature tables
+ *
+ */
+public class KeySignatureTests {
+
+    /*
+     * Testing strategy:
+     *  of(key) --> key signature
+     *      key is major, minor ("m"), another mode, by its full name or first three letters, in either case
+     *      key has no sharps or flats, sharps, flats, more than seven of them
+     *      keynote has no accidental, '#', 'b'
+     *      whitespace: none, around the letter, the accidental, the mode
+     *      key is not a key: empty, only whitespace, not a letter, unknown mode
+     *
+     *  offset(baseNote)
+     *      baseNote upper case, lower case
+     *
+     *  equals, hashCode
+     *      same offsets from different keys, different offsets
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers major and minor, no sharps or flats, sharps, flats, keynote with and without accidental;
+    // every key of the tables applyKeySignature used to scan
+    @Test
+    public void testMajorAndMinorKeys() {
+        String[][] keys = {
+                { "C", "Am", "A B C D E F G" },
+                { "G", "Em", "A B C D E F# G" },
+                { "D", "Bm", "A B C# D E F# G" },
+                { "A", "F#m", "A B C# D E F# G#" },
+                { "E", "C#m", "A B C# D# E F# G#" },
+                { "B", "G#m", "A# B C# D# E F# G#" },
+                { "F#", "D#m", "A# B C# D# E# F# G#" },
+                { "C#", "A#m", "A# B# C# D# E# F# G#" },
+                { "F", "Dm", "A Bb C D E F G" },
+                { "Bb", "Gm", "A Bb C D Eb F G" },
+                { "Eb", "Cm", "Ab Bb C D Eb F G" },
+                { "Ab", "Fm", "Ab Bb C Db Eb F G" },
+                { "Db", "Bbm", "Ab Bb C Db Eb F Gb" },
+                { "Gb", "Ebm", "Ab Bb Cb Db Eb F Gb" },
+                { "Cb", "Abm", "Ab Bb Cb Db Eb Fb Gb" },
+        };
+        for (String[] key : keys) {
+            assertEquals("expected the signature of " + key[0], key[2], KeySignature.of(key[0]).toString());
+            assertEquals("expected the signature of " + key[1], key[2], KeySignature.of(key[1]).toString());
+        }
+    }
+
+    // covers more than seven sharps or flats
+    @Test
+    public void testTheoreticalKeys() {
+        assertEquals("expected F double sharp", "A# B# C# D# E# F## G#", KeySignature.of("G#").toString());
+        assertEquals("expected B double flat", "Ab Bbb Cb Db Eb Fb Gb", KeySignature.of("Fb").toString());
+        assertEquals("expected the key of D flat major", KeySignature.of("Db"), KeySignature.of("Bbm"));
+        assertEquals("expected the key of F flat major", KeySignature.of("Fb"), KeySignature.of("Dbm"));
+    }
+
+    // covers whitespace around the letter, the accidental, the mode, as the grammar of the K: field allows
+    @Test
+    public void testWhitespace() {
+        assertEquals("expected F sharp major", KeySignature.of("F#"), KeySignature.of("F #"));
+        assertEquals("expected B flat major", KeySignature.of("Bb"), KeySignature.of(" B b "));
+        assertEquals("expected F sharp minor", KeySignature.of("F#m"), KeySignature.of("F # m"));
+        assertEquals("expected E flat dorian", KeySignature.of("Ebdor"), KeySignature.of("E\tb Dorian"));
+    }
+
+    // covers other modes, by their full name or first three letters, in either case
+    @Test
+    public void testModes() {
+        KeySignature c = KeySignature.of("C");
+        String[] modes = { "Cmaj", "CIonian", "Ddor", "D Dorian", "Ephr", "Flyd", "Gmix", "G mixolydian", "Aaeo", "Amin",
+                "AM", "Bloc", "BLOCRIAN" };
+        for (String mode : modes) {
+            assertEquals("expected no sharps or flats in " + mode, c, KeySignature.of(mode));
+        }
+        assertEquals("expected one sharp in A dorian", KeySignature.of("G"), KeySignature.of("Ador"));
+        assertEquals("expected one sharp in D mixolydian", KeySignature.of("G"), KeySignature.of("Dmix"));
+        assertEquals("expected one flat in B flat lydian", KeySignature.of("F"), KeySignature.of("Bblyd"));
+    }
+
+    // covers baseNote upper case, lower case
+    @Test
+    public void testOffset() {
+        KeySignature eFlat = KeySignature.of("Eb");
+        assertEquals("expected E lowered", -1, eFlat.offset('E'));
+        assertEquals("expected e lowered", -1, eFlat.offset('e'));
+        assertEquals("expected C untouched", 0, eFlat.offset('c'));
+        assertEquals("expected F raised twice", 2, KeySignature.of("G#").offset('f'));
+    }
+
+    // covers same offsets from different keys, different offsets
+    @Test
+    public void testEquality() {
+        assertEquals("expected relative keys equal", KeySignature.of("A"), KeySignature.of("F#m"));
+        assertEquals("expected equal hash codes", KeySignature.of("A").hashCode(), KeySignature.of("F#m").hashCode());
+        assertNotEquals("expected different keys", KeySignature.of("A"), KeySignature.of("Am"));
+    }
+
+    // covers empty key
+    @Test(expected=IllegalArgumentException.class)
+    public void testEmptyKey() {
+        KeySignature.of("");
+    }
+
+    // covers key of only whitespace
+    @Test(expected=IllegalArgumentException.class)
+    public void testOnlyWhitespace() {
+        KeySignature.of("  ");
+    }
+
+    // covers key not starting with a letter
+    @Test(expected=IllegalArgumentException.class)
+    public void testNotALetter() {
+        KeySignature.of("H");
+    }
+
+    // covers unknown mode
+    @Test(expected=IllegalArgumentException.class)
+    public void testUnknownMode() {
+        KeySignature.of("Cxyz");
+    }
+}
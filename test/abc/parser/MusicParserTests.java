@@ -144,7 +144,7 @@ public class MusicParserTests {
         Parser<MusicGrammar> musicParser = GrammarCompiler.compile(musicGrammarFile, MusicGrammar.ROOT);
         ParseTree<MusicGrammar> musicTree = musicParser.parse(musicString);
         Music music = MusicParser.buildMusic(musicTree, header);
-        assertEquals("expected correct music", Music.concat(new Rest(0), Music.concat(new Rest(0), new Note(new Pitch('C'), 192.0))), music);
+        assertEquals("expected correct music", Music.concat(new Rest(0), Music.concat(new Rest(0), new Note(new Pitch('C'), 1))), music);
     }
     
     // covers the parsing of a tuplet
@@ -158,9 +158,9 @@ public class MusicParserTests {
         Parser<MusicGrammar> musicParser = GrammarCompiler.compile(musicGrammarFile, MusicGrammar.ROOT);
         ParseTree<MusicGrammar> musicTree = musicParser.parse(musicString);
         Music music = MusicParser.buildMusic(musicTree, header);
-        Music C = new Note(new Pitch('C'), 128);
-        Music G = new Note(new Pitch('G'), 384);
-        Music E = new Note(new Pitch('E'), 512);
+        Music C = new Note(new Pitch('C'), 2);
+        Music G = new Note(new Pitch('G'), 6);
+        Music E = new Note(new Pitch('E'), 8);
 
         Music tuplet = Music.concat(Music.concat(C, E), G);
         assertEquals("expected correct music", Music.concat(new Rest(0), Music.concat(new Rest(0),tuplet)), music);        
@@ -177,8 +177,8 @@ public class MusicParserTests {
         Parser<MusicGrammar> musicParser = GrammarCompiler.compile(musicGrammarFile, MusicGrammar.ROOT);
         ParseTree<MusicGrammar> musicTree = musicParser.parse(musicString);
         Music music = MusicParser.buildMusic(musicTree, header);
-        Music C = new Note(new Pitch('C'), 192);
-        Music E = new Note(new Pitch('E'), 192);
+        Music C = new Note(new Pitch('C'), 1);
+        Music E = new Note(new Pitch('E'), 1);
 
         Music chord = Music.addVoice(C, E);
         assertEquals("expected correctly parsed chord [EC]", Music.concat(new Rest(0), Music.concat(new Rest(0), chord)), music);        
@@ -195,8 +195,8 @@ public class MusicParserTests {
         Parser<MusicGrammar> musicParser = GrammarCompiler.compile(musicGrammarFile, MusicGrammar.ROOT);
         ParseTree<MusicGrammar> musicTree = musicParser.parse(musicString);
         Music music = MusicParser.buildMusic(musicTree, header);
-        Music midA = new Note(new Pitch('A').transpose(-1), 192);
-        Music highA = new Note(new Pitch('A').transpose(11), 192);
+        Music midA = new Note(new Pitch('A').transpose(-1), 1);
+        Music highA = new Note(new Pitch('A').transpose(11), 1);
 
         Music bar = Music.concat(Music.concat(new Rest(0), midA), highA);
         assertEquals("expected correctly parsed key signature effect", Music.concat(new Rest(0), bar), music);               
@@ -211,10 +211,10 @@ public class MusicParserTests {
         String musicString = String.join("", header.getVoices().get(""));
         Parser<MusicGrammar> musicParser = GrammarCompiler.compile(musicGrammarFile, MusicGrammar.ROOT);
         ParseTree<MusicGrammar> musicTree = musicParser.parse(musicString);
-        Music midAFlat = new Note(new Pitch('A').transpose(-1), 192);
-        Music midASharp = new Note(new Pitch('A').transpose(1), 192);
-        Music midANatural = new Note(new Pitch('A'), 192);
-        Music highA = new Note(new Pitch('A').transpose(11), 192);
+        Music midAFlat = new Note(new Pitch('A').transpose(-1), 1);
+        Music midASharp = new Note(new Pitch('A').transpose(1), 1);
+        Music midANatural = new Note(new Pitch('A'), 1);
+        Music highA = new Note(new Pitch('A').transpose(11), 1);
 
         Music expected = Music.concat(Music.concat(Music.concat(Music.concat(Music.concat(Music.concat(Music.concat(Music.concat(new Rest(0), midAFlat), highA), midASharp), midASharp), highA), midANatural), midANatural), midAFlat);
 
@@ -233,16 +233,16 @@ public class MusicParserTests {
         Parser<MusicGrammar> musicParser = GrammarCompiler.compile(musicGrammarFile, MusicGrammar.ROOT);
         ParseTree<MusicGrammar> musicTree = musicParser.parse(musicString);
         Music output = MusicParser.buildMusic(musicTree, header);
-        Music midCSharp = new Note(new Pitch('C').transpose(1), 192);
-        Music highGSharp = new Note(new Pitch('G').transpose(13), 192);
-        Music midAFlat = new Note(new Pitch('A').transpose(-1), 192);
-        Music midBSharp = new Note(new Pitch('B').transpose(1), 192);
-        Music midCNatural = new Note(new Pitch('C'), 192);
-        Music highCSharp = new Note(new Pitch('C').transpose(13), 192);
-        Music midESharp = new Note(new Pitch('E').transpose(1), 192);
-        Music midASharp = new Note(new Pitch('A').transpose(1), 192);
-        Music highESharp = new Note(new Pitch('E').transpose(13), 192);
-        Music midENatural = new Note(new Pitch('E'), 192);
+        Music midCSharp = new Note(new Pitch('C').transpose(1), 1);
+        Music highGSharp = new Note(new Pitch('G').transpose(13), 1);
+        Music midAFlat = new Note(new Pitch('A').transpose(-1), 1);
+        Music midBSharp = new Note(new Pitch('B').transpose(1), 1);
+        Music midCNatural = new Note(new Pitch('C'), 1);
+        Music highCSharp = new Note(new Pitch('C').transpose(13), 1);
+        Music midESharp = new Note(new Pitch('E').transpose(1), 1);
+        Music midASharp = new Note(new Pitch('A').transpose(1), 1);
+        Music highESharp = new Note(new Pitch('E').transpose(13), 1);
+        Music midENatural = new Note(new Pitch('E'), 1);
         
         Music expected = Music.concat(Music.concat(Music.concat(Music.concat(Music.concat(Music.concat(Music.concat(Music.concat(Music.concat(Music.concat(Music.concat(Music.concat(new Rest(0), midCSharp), highGSharp), midAFlat), highCSharp), midASharp), midBSharp), midCNatural), midCNatural), midESharp), midESharp), highESharp), midENatural);
         
@@ -259,13 +259,13 @@ public class MusicParserTests {
         String musicString = String.join("", header.getVoices().get("Repeat Major Section"));
         Parser<MusicGrammar> musicParser = GrammarCompiler.compile(musicGrammarFile, MusicGrammar.ROOT);
         ParseTree<MusicGrammar> musicTree = musicParser.parse(musicString);
-        Music A = new Note(new Pitch('A'), 192.0);
-        Music B = new Note(new Pitch('B'), 192.0);
-        Music C = new Note(new Pitch('C'), 192.0);
-        Music D = new Note(new Pitch('D'), 192.0);
+        Music A = new Note(new Pitch('A'), 1);
+        Music B = new Note(new Pitch('B'), 1);
+        Music C = new Note(new Pitch('C'), 1);
+        Music D = new Note(new Pitch('D'), 1);
         
         Music oneBlock =Music.concat(Music.concat(Music.concat(Music.concat(new Rest(0), A), C), D) , B);
-        Music expected = Music.concat(new Rest(0), Music.concat(oneBlock, oneBlock));
+        Music expected = Music.concat(new Rest(0), Music.repeat(oneBlock, new Rest(0), new Rest(0)));
         Music music = MusicParser.buildMusic(musicTree, header);
         assertEquals("expected correctly parsed repeat", expected, music);                       
     }
@@ -279,14 +279,14 @@ public class MusicParserTests {
         String musicString = String.join("", header.getVoices().get("Repeat Within Repeat Block"));
         Parser<MusicGrammar> musicParser = GrammarCompiler.compile(musicGrammarFile, MusicGrammar.ROOT);
         ParseTree<MusicGrammar> musicTree = musicParser.parse(musicString);
-        Music A = new Note(new Pitch('A'), 192.0);
-        Music B = new Note(new Pitch('B'), 192.0);
-        Music C = new Note(new Pitch('C'), 192.0);
-        Music D = new Note(new Pitch('D'), 192.0);
-        Music E = new Note(new Pitch('E'), 192.0);
+        Music A = new Note(new Pitch('A'), 1);
+        Music B = new Note(new Pitch('B'), 1);
+        Music C = new Note(new Pitch('C'), 1);
+        Music D = new Note(new Pitch('D'), 1);
+        Music E = new Note(new Pitch('E'), 1);
                 
         Music repeatBlock = Music.concat(Music.concat(Music.concat(Music.concat(new Rest(0), C), D), C), E);
-        Music repeat = Music.concat(repeatBlock, repeatBlock);
+        Music repeat = Music.repeat(repeatBlock, new Rest(0), new Rest(0));
         Music expected =Music.concat(new Rest(0), Music.concat(Music.concat(Music.concat(new Rest(0), A), B), repeat));
         Music music = MusicParser.buildMusic(musicTree, header);
         assertEquals("expected correctly parsed repeat", expected, music);                               
@@ -301,14 +301,13 @@ public class MusicParserTests {
         String musicString = String.join("", header.getVoices().get("Two Endings"));
         Parser<MusicGrammar> musicParser = GrammarCompiler.compile(musicGrammarFile, MusicGrammar.ROOT);
         ParseTree<MusicGrammar> musicTree = musicParser.parse(musicString);
-        Music A = new Note(new Pitch('A'), 192.0);
-        Music B = new Note(new Pitch('B'), 192.0);
-        Music C = new Note(new Pitch('C'), 192.0);
-        Music D = new Note(new Pitch('D'), 192.0);
+        Music A = new Note(new Pitch('A'), 1);
+        Music B = new Note(new Pitch('B'), 1);
+        Music C = new Note(new Pitch('C'), 1);
+        Music D = new Note(new Pitch('D'), 1);
                 
-        Music firstRepeatBlock = Music.concat(Music.concat(Music.concat(Music.concat(new Rest(0), A), B), new Rest(0)), C);
-        Music secondRepeatBlock = Music.concat(Music.concat(Music.concat(new Rest(0), A), B), new Rest(0));
-        Music repeat = Music.concat(firstRepeatBlock, secondRepeatBlock);
+        Music repeatBlock = Music.concat(Music.concat(new Rest(0), A), B);
+        Music repeat = Music.repeat(repeatBlock, C, new Rest(0));
         Music expected = Music.concat(new Rest(0), Music.concat(Music.concat(new Rest(0), repeat), D));
         Music music = MusicParser.buildMusic(musicTree, header);
         assertEquals("expected correctly parsed repeat", expected, music);                               
@@ -323,8 +322,8 @@ public class MusicParserTests {
         String musicString = String.join("", header.getVoices().get(""));
         Parser<MusicGrammar> musicParser = GrammarCompiler.compile(musicGrammarFile, MusicGrammar.ROOT);
         ParseTree<MusicGrammar> musicTree = musicParser.parse(musicString);
-        Music midAQuarterNote = new Note(new Pitch('A'), 192.0*2);
-        Music midAHalfNote = new Note(new Pitch('A'), 192.0*4);
+        Music midAQuarterNote = new Note(new Pitch('A'), 2);
+        Music midAHalfNote = new Note(new Pitch('A'), 4);
 
         Music expected = Music.concat(Music.concat(new Rest(0), midAQuarterNote), midAHalfNote);
 
@@ -0,0 +1,291 @@
+package abc.parser;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import abc.sound.*;
+import lib6005.parser.UnableToParseException;
+
+/** This file contains tests on the hand-written MusicScanner, mostly by comparing it with the
+ *  ParseTree based MusicParser.buildMusic
+ *
+ */
+public class MusicScannerTests {
+
+    /*
+     * Testing strategy:
+     *  buildMusic(voiceText, header) --> music
+     *      voiceText is every voice of every file in sample_abc
+     *      voiceText contains notes, rests, chords, tuplets, accidentals, octaves, note lengths
+     *      voiceText contains repeats, nth repeats, major sections
+     *      voiceText contains comment lines, voice fields
+     *      voiceText doesn't match the grammar: empty, missing new line, unclosed chord, tuplet without notes;
+     *          error on the first line, a later line
+     *      voiceText is randomly generated from the grammar's terminals
+     *      voiceText contains accidentals on the same pitch written with different letter cases, carried to the
+     *          end of the bar, on octaves past those of MIDI
+     *
+     *      voiceText is a long voice of notes a fifth of the default note long
+     *      voiceText is a long voice of tuplets, ended by the next tuplet, a bar line, an nth repeat, a lone
+     *          accidental, a new line
+     *
+     *  ticksPerBeat(length, tempoBaseNote, body) --> resolution
+     *      body has no note lengths, denominators, lone "/", tuplets of every spec, both
+     *      body has '/' and '(' in comment lines and voice fields
+     *      default note a beat long, shorter than a beat; resolution more than an int holds
+     */
+
+    // header of no voices, whose beat lasts a single tick: a default note long
+    private static final Header HEADER = header();
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers every voice of every file in sample_abc
+    @Test
+    public void testSampleCorpusMatchesParseTree() throws UnableToParseException {
+        File[] tunes = new File("sample_abc").listFiles((dir, name) -> name.endsWith(".abc"));
+        Arrays.sort(tunes);
+        for (File tune : tunes) {
+            Header header = Music.parseHeader(tune);
+            for (Map.Entry<String, List<String>> voice : header.getVoices().entrySet()) {
+                String voiceText = String.join("", voice.getValue());
+                assertEquals("expected same music for voice " + voice.getKey() + " of " + tune,
+                        BodyParser.PARSE_TREE.parse(voiceText, header), MusicScanner.buildMusic(voiceText, header));
+            }
+            assertEquals("expected same music for " + tune,
+                    Music.parseMusic(header, BodyParser.PARSE_TREE), Music.parseMusic(header, BodyParser.SCANNER));
+        }
+    }
+
+    // covers notes, tuplets, chords
+    @Test
+    public void testTupletAndChord() throws UnableToParseException {
+        // a triplet divides the beat in three ticks
+        String voiceText = "(3CE4G3 [CE]\n";
+        Music C = new Note(new Pitch('C'), 2);
+        Music E = new Note(new Pitch('E'), 8);
+        Music G = new Note(new Pitch('G'), 6);
+        Music tuplet = Music.concat(Music.concat(C, E), G);
+        Music chord = Music.addVoice(new Note(new Pitch('E'), 3), new Note(new Pitch('C'), 3));
+        Music expected = Music.concat(new Rest(0), Music.concat(Music.concat(new Rest(0), tuplet), chord));
+        assertEquals("expected correct music", expected, MusicScanner.buildMusic(voiceText, header(voiceText)));
+    }
+
+    // covers a long voice of notes a fifth of the default note long
+    @Test
+    public void testNoDriftOverLongVoice() throws UnableToParseException {
+        // 9000 beats: an hour and a half at 100 beats a minute
+        int notes = 45000;
+        StringBuilder voiceText = new StringBuilder();
+        for (int i = 0; i < notes; i++) {
+            voiceText.append(i % 2 == 0 ? "C/5 " : "z/5 ");
+        }
+        voiceText.append("\n");
+        Header header = header(voiceText.toString());
+        assertEquals("expected five ticks a beat", 5, header.getTicksPerBeat());
+        CompiledScore score = CompiledScore.compile(MusicScanner.buildMusic(voiceText.toString(), header));
+        assertEquals("expected every other note", notes / 2, score.size());
+        for (int i = 0; i < score.size(); i++) {
+            assertEquals("expected note " + i + " on its exact tick", 2 * i, score.getStartTick(i));
+            assertEquals("expected note " + i + " a tick long", 1, score.getDurationTicks(i));
+        }
+        assertEquals("expected the voice to end on its exact tick", notes - 1, score.getEndTick());
+    }
+
+    // covers a long voice of tuplets, each ended by the next tuplet, a bar line, an nth repeat, a lone accidental,
+    // a new line (the nth repeat in a line of its own); the end of a tuplet is found by looking ahead, so the time to read one doesn't grow with the voice
+    @Test(timeout=10000)
+    public void testLongTupletVoice() throws UnableToParseException {
+        int lines = 40000;
+        StringBuilder voiceText = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            voiceText.append("(3CDE(3=F_Ga|(2zC|(3CG,c'^ [CE] (3^^DE/F2\n");
+        }
+        Header header = header(voiceText.toString());
+        CompiledScore score = CompiledScore.compile(MusicScanner.buildMusic(voiceText.toString(), header));
+        assertEquals("expected every note of every tuplet", 15 * lines, score.size());
+
+        String line = "|:(3CDE[1(3CG,c'^:|[2(3^^DE/F2|]\n";
+        assertEquals("expected same music as the ParseTree walk", BodyParser.PARSE_TREE.parse(line, header(line)),
+                MusicScanner.buildMusic(line, header(line)));
+    }
+
+    // covers body has no note lengths, denominators, lone "/", tuplets of every spec, both; default note a beat long
+    @Test
+    public void testTicksPerBeat() {
+        assertEquals("expected a tick a beat", 1, MusicScanner.ticksPerBeat("1/8", "1/8", "A B2 c3 |\n"));
+        assertEquals("expected denominators", 12, MusicScanner.ticksPerBeat("1/8", "1/8", "A/4 B/3 c3/2 d/6\n"));
+        assertEquals("expected a lone / halving", 2, MusicScanner.ticksPerBeat("1/8", "1/8", "A/ B//\n"));
+        assertEquals("expected tuplets", 12, MusicScanner.ticksPerBeat("1/8", "1/8", "(2AB (3ABC (4ABCD\n"));
+        assertEquals("expected lengths in a tuplet", 2 * 3, MusicScanner.ticksPerBeat("1/8", "1/8", "(3A/B/C/\n"));
+    }
+
+    // covers '/' and '(' in comment lines and voice fields; default note shorter than a beat
+    @Test
+    public void testTicksPerBeatCommentsAndVoiceFields() {
+        String body = "A B|\n% (3 a/7 comment\n  V: 1/5 (3\nc/ d|\n";
+        assertEquals("expected comments and voice fields skipped", 2 * 2, MusicScanner.ticksPerBeat("1/8", "1/4", body));
+    }
+
+    // covers resolution more than an int holds
+    @Test(expected=IllegalArgumentException.class)
+    public void testTicksPerBeatTooFine() {
+        MusicScanner.ticksPerBeat("1/8", "1/8", "A/65521 B/65519\n");
+    }
+
+    // covers rests, accidentals, octaves, note lengths
+    @Test
+    public void testAccidentalsOctavesLengths() throws UnableToParseException {
+        String voiceText = "^C,, _d' =e'' ^^f __G z3/ A/4 B2 c/ C c |\n";
+        Header header = header(voiceText);
+        assertEquals("expected same music as the parse tree",
+                BodyParser.PARSE_TREE.parse(voiceText, header), MusicScanner.buildMusic(voiceText, header));
+    }
+
+    // covers accidentals on the same pitch written with different letter cases, carried to the end of the bar
+    @Test
+    public void testAccidentalsLastUntilBarLine() throws UnableToParseException {
+        Pitch c = new Pitch('C');
+        Pitch highC = c.transpose(Pitch.OCTAVE);
+        Music expected = voice(new Note(c.transpose(1), 1), new Note(c.transpose(1), 1), new Note(highC.transpose(-1), 1),
+                new Note(highC.transpose(-1), 1), new Note(highC, 1), new Note(c, 1), new Note(highC, 1));
+        assertEquals("expected accidentals on the same pitches until the bar line", expected,
+                MusicScanner.buildMusic("^C c, _c C' =C' | C c\n", HEADER));
+    }
+
+    // covers accidentals on octaves past those of MIDI
+    @Test
+    public void testAccidentalsFarOctaves() throws UnableToParseException {
+        Pitch high = new Pitch('E').transpose(10 * Pitch.OCTAVE);
+        Pitch low = new Pitch('E').transpose(-10 * Pitch.OCTAVE);
+        Music expected = voice(new Note(high.transpose(-1), 1), new Note(low.transpose(1), 1),
+                new Note(high.transpose(-1), 1), new Note(low.transpose(1), 1), new Note(new Pitch('E'), 1));
+        assertEquals("expected accidentals kept far from the middle octave", expected,
+                MusicScanner.buildMusic("_e''''''''' ^E,,,,,,,,,, e''''''''' E,,,,,,,,,, E\n", HEADER));
+    }
+
+    /**
+     * @param voiceTexts bodies of the voices of the header
+     * @return a header of default fields, with a voice of every one of voiceTexts
+     */
+    private static Header header(String... voiceTexts) {
+        Map<String, List<String>> voices = new HashMap<>();
+        for (int i = 0; i < voiceTexts.length; i++) {
+            voices.put(Integer.toString(i + 1), Arrays.asList(voiceTexts[i]));
+        }
+        return new Header("scanner", "1", "C", Music.DEFAULT_COMPOSER, Music.DEFAULT_METER, Music.DEFAULT_LENGTH,
+                Music.DEFAULT_LENGTH, Music.DEFAULT_TEMPO_BPM, voices,
+                MusicScanner.ticksPerBeat(Music.DEFAULT_LENGTH, Music.DEFAULT_LENGTH, String.join("", voiceTexts)));
+    }
+
+    /**
+     * @return the music of a voice of a single bar of notes
+     */
+    private static Music voice(Music... notes) {
+        Music section = new Rest(0);
+        for (Music note : notes) {
+            section = Music.concat(section, note);
+        }
+        return Music.concat(new Rest(0), section);
+    }
+
+    // covers repeats, nth repeats, major sections
+    @Test
+    public void testRepeatsAndEndings() throws UnableToParseException {
+        String voiceText = "A B |: C D | C E :| A B |[1 C :|[2 D || E |] F G :|\n";
+        assertEquals("expected same music as the parse tree",
+                BodyParser.PARSE_TREE.parse(voiceText, HEADER), MusicScanner.buildMusic(voiceText, HEADER));
+    }
+
+    // covers comment lines, voice fields
+    @Test
+    public void testCommentsAndVoiceFields() throws UnableToParseException {
+        String voiceText = "A B C|\n%a comment\nV: 2 % trailing\n  D E F|\r\n";
+        assertEquals("expected same music as the parse tree",
+                BodyParser.PARSE_TREE.parse(voiceText, HEADER), MusicScanner.buildMusic(voiceText, HEADER));
+    }
+
+    // covers empty voice
+    @Test(expected=UnableToParseException.class)
+    public void testEmptyVoice() throws UnableToParseException {
+        MusicScanner.buildMusic("", HEADER);
+    }
+
+    // covers missing new line
+    @Test(expected=UnableToParseException.class)
+    public void testMissingNewline() throws UnableToParseException {
+        MusicScanner.buildMusic("A B C", HEADER);
+    }
+
+    // covers unclosed chord
+    @Test(expected=UnableToParseException.class)
+    public void testUnclosedChord() throws UnableToParseException {
+        MusicScanner.buildMusic("[CEG A\n", HEADER);
+    }
+
+    // covers tuplet without notes
+    @Test(expected=UnableToParseException.class)
+    public void testTupletWithoutNotes() throws UnableToParseException {
+        MusicScanner.buildMusic("(3 C D E\n", HEADER);
+    }
+
+    // covers error on the first line, a later line
+    @Test
+    public void testErrorLineAndColumn() {
+        try {
+            MusicScanner.buildMusic("(3 C\n", HEADER);
+            fail("expected UnableToParseException");
+        } catch (UnableToParseException expected) {
+            assertTrue("expected the line and column", expected.getMessage().contains("line 1 col 2"));
+        }
+        try {
+            String voiceText = "C D\n%comment\nE (3CDE :\n";
+            MusicScanner.buildMusic(voiceText, header(voiceText));
+            fail("expected UnableToParseException");
+        } catch (UnableToParseException expected) {
+            assertTrue("expected the line and column", expected.getMessage().contains("line 3 col 8"));
+        }
+    }
+
+    // covers randomly generated voices; both parsers must reject the same strings and agree on the rest
+    @Test
+    public void testRandomVoicesMatchParseTree() {
+        String[] terminals = { "A", "c", "z", "^", "_", "=", "'", ",", "2", "/", "4", " ", "|", "||", "|]", "|:", ":|",
+                               "[1", "[2", "[", "]", "(3", "(2", "\n", "%\n" };
+        Random random = new Random(6005);
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder voiceText = new StringBuilder();
+            int length = 1 + random.nextInt(12);
+            for (int j = 0; j < length; j++) {
+                voiceText.append(terminals[random.nextInt(terminals.length)]);
+            }
+            voiceText.append("\n");
+            Music expected;
+            try {
+                expected = BodyParser.PARSE_TREE.parse(voiceText.toString(), header(voiceText.toString()));
+            } catch (UnableToParseException ex) {
+                expected = null;
+            } catch (AssertionError ae) {
+                continue; // the ParseTree walk can't build chords inside tuplets
+            }
+            Music actual;
+            try {
+                actual = MusicScanner.buildMusic(voiceText.toString(), header(voiceText.toString()));
+            } catch (UnableToParseException ex) {
+                actual = null;
+            }
+            assertEquals("expected same result for \"" + voiceText + "\"", expected, actual);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package abc.sound;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiUnavailableException;
+
+import org.junit.Test;
+
+/**
+ * This file contains tests on the immutable CompiledScore datatype
+ *
+ */
+public class CompiledScoreTests {
+
+    /*
+     * Testing strategy:
+     *  compile(music) --> score
+     *      music is an empty rest, a rest, a single note, a sequence of notes and rests, a chord,
+     *               multiple voices as built by Music.parseMusic, a piece from sample_abc
+     *      notes start on the same tick in different voices
+     *      a note ends on the last tick an int can hold, past it
+     *
+     *  getEndTick(), getNumberOfVoices() --> result
+     *      score has no notes, one voice, multiple voices
+     *
+     *  getLowestMidiPitch(), getHighestMidiPitch() --> result
+     *      score has no notes, one note, notes of different pitches
+     *
+     *  footprintBytes() --> result
+     *      score has no notes, many notes
+     *
+     *  equals(), hashCode()
+     *      scores compiled from equal music, from different music
+     *
+     *  SequencePlayer.addNotes(compile(music), atTick)
+     *      music is a piece of multiple voices from sample_abc; same events as music.play(player, atTick)
+     */
+
+    private final static Pitch C = new Pitch('C');
+    private final static Pitch E = new Pitch('E');
+    private final static Pitch G = new Pitch('G');
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers music is an empty rest, a rest; score has no notes
+    @Test
+    public void testCompileRests() {
+        CompiledScore empty = CompiledScore.compile(new Rest(0));
+        assertEquals("expected no notes", 0, empty.size());
+        assertEquals("expected a single voice", 1, empty.getNumberOfVoices());
+        assertEquals("expected end at tick 0", 0, empty.getEndTick());
+        assertEquals("expected no lowest pitch", 0, empty.getLowestMidiPitch());
+        assertEquals("expected no highest pitch", 0, empty.getHighestMidiPitch());
+        assertEquals("expected no notes", 0, CompiledScore.compile(new Rest(96)).size());
+    }
+
+    // covers music is a single note, whole duration; one note
+    @Test
+    public void testCompileSingleNote() {
+        CompiledScore score = CompiledScore.compile(new Note(E, 96));
+        assertEquals("expected one note", 1, score.size());
+        assertEquals("expected MIDI note of E", E.toMidiNote(), score.getMidiPitch(0));
+        assertEquals("expected start at tick 0", 0, score.getStartTick(0));
+        assertEquals("expected duration", 96, score.getDurationTicks(0));
+        assertEquals("expected voice 0", 0, score.getVoice(0));
+        assertEquals("expected end after the note", 96, score.getEndTick());
+        assertEquals("expected lowest pitch of E", E.toMidiNote(), score.getLowestMidiPitch());
+        assertEquals("expected highest pitch of E", E.toMidiNote(), score.getHighestMidiPitch());
+    }
+
+    // covers a note ends on the last tick an int can hold, past it
+    @Test
+    public void testCompileEndPastLastTick() {
+        long half = Integer.MAX_VALUE / 2 + 1;
+        CompiledScore last = CompiledScore.compile(Music.concat(new Rest(half), new Note(E, Integer.MAX_VALUE - half)));
+        assertEquals("expected end on the last tick", Integer.MAX_VALUE, last.getEndTick());
+        try {
+            // starts and lasts fewer ticks than an int can hold, but ends past it
+            CompiledScore.compile(Music.concat(new Rest(half), new Note(E, half)));
+            fail("expected ArithmeticException");
+        } catch (ArithmeticException expected) {
+        }
+    }
+
+    // covers music is a sequence of notes and rests, a chord; notes of different pitches
+    @Test
+    public void testCompileSequenceAndChord() {
+        Music chord = Music.addVoice(new Note(G, 64), new Note(E, 64));
+        Music music = new Rest(0);
+        music = Music.concat(music, new Note(C, 64));
+        music = Music.concat(music, new Rest(32));
+        music = Music.concat(music, chord);
+        CompiledScore score = CompiledScore.compile(Music.concat(music, new Note(C, 192)));
+
+        assertEquals("expected every note", 4, score.size());
+        assertEquals("expected notes in order", Arrays.asList(C.toMidiNote(), G.toMidiNote(), E.toMidiNote(), C.toMidiNote()),
+                pitches(score));
+        assertEquals("expected starts like play", Arrays.asList(0, 96, 96, 160), starts(score));
+        assertEquals("expected durations like play", 64, score.getDurationTicks(0));
+        assertEquals("expected chord in the same voice", 1, score.getNumberOfVoices());
+        assertEquals("expected end after last note", 160 + 192, score.getEndTick());
+        assertEquals("expected lowest pitch of C", C.toMidiNote(), score.getLowestMidiPitch());
+        assertEquals("expected highest pitch of G", G.toMidiNote(), score.getHighestMidiPitch());
+    }
+
+    // covers multiple voices as built by Music.parseMusic, notes starting on the same tick in different voices
+    @Test
+    public void testCompileMultipleVoices() {
+        Music melody = Music.concat(Music.concat(new Note(E, 96), new Note(G, 96)), new Note(C, 192));
+        Music bass = Music.concat(new Note(C, 192), new Note(G, 192));
+        Music music = new MultipleVoices(bass, new MultipleVoices(melody, new Rest(0)));
+        CompiledScore score = CompiledScore.compile(music);
+
+        assertEquals("expected two voices", 2, score.getNumberOfVoices());
+        assertEquals("expected sorted by start", Arrays.asList(0, 0, 96, 192, 192), starts(score));
+        // on the same tick, the most recently added voice comes first, as it does when played
+        assertEquals("expected pitches", Arrays.asList(C.toMidiNote(), E.toMidiNote(), G.toMidiNote(), G.toMidiNote(), C.toMidiNote()),
+                pitches(score));
+        List<Integer> voices = new ArrayList<>();
+        for (int i = 0; i < score.size(); i++) {
+            voices.add(score.getVoice(i));
+        }
+        assertEquals("expected voices numbered in the order they were added", Arrays.asList(1, 0, 0, 1, 0), voices);
+        assertEquals("expected end of the longer voice", 384, score.getEndTick());
+    }
+
+    // covers every piece in sample_abc
+    @Test
+    public void testCompileSampleCorpus() {
+        File[] tunes = new File("sample_abc").listFiles((dir, name) -> name.endsWith(".abc"));
+        Arrays.sort(tunes);
+        for (File tune : tunes) {
+            Piece piece = Music.parsePiece(tune);
+            CompiledScore score = CompiledScore.compile(piece.getMusic());
+            int[] notes = new int[1];
+            MusicTraversal.forEachLeaf(piece.getMusic(), 0, (leaf, beat) -> {
+                if (leaf instanceof Note) {
+                    notes[0]++;
+                }
+            });
+            assertEquals("expected every note of " + tune, notes[0], score.size());
+            assertEquals("expected a voice per voice of " + tune, Math.max(1, piece.getHeader().getVoices().size()),
+                    score.getNumberOfVoices());
+            assertTrue("expected end within the music of " + tune, score.getEndTick() <= piece.getMusic().duration());
+            assertEquals("expected same score every time for " + tune, score, CompiledScore.compile(piece.getMusic()));
+        }
+    }
+
+    // covers footprintBytes with no notes, many notes
+    @Test
+    public void testFootprint() {
+        long empty = CompiledScore.compile(new Rest(0)).footprintBytes();
+        Music music = new Rest(0);
+        for (int i = 0; i < 1000; i++) {
+            music = Music.concat(music, new Note(C, 1));
+        }
+        long thousand = CompiledScore.compile(music).footprintBytes();
+        assertTrue("expected some bytes for no notes", empty > 0);
+        assertEquals("expected four ints per note", 4 * Integer.BYTES * 1000, thousand - empty);
+    }
+
+    // covers equals and hashCode of scores compiled from equal music, from different music
+    @Test
+    public void testEquals() {
+        Music music = Music.concat(new Note(C, 96), new Note(E, 96));
+        CompiledScore score = CompiledScore.compile(music);
+        CompiledScore same = CompiledScore.compile(Music.concat(new Note(C, 96), new Note(E, 96)));
+        assertEquals("expected equal scores", score, same);
+        assertEquals("expected equal hash codes", score.hashCode(), same.hashCode());
+        assertNotEquals("expected different scores", score, CompiledScore.compile(Music.concat(new Note(C, 96), new Note(G, 96))));
+    }
+
+    private static List<Integer> pitches(CompiledScore score) {
+        List<Integer> pitches = new ArrayList<>();
+        for (int i = 0; i < score.size(); i++) {
+            pitches.add(score.getMidiPitch(i));
+        }
+        return pitches;
+    }
+
+    private static List<Integer> starts(CompiledScore score) {
+        List<Integer> starts = new ArrayList<>();
+        for (int i = 0; i < score.size(); i++) {
+            starts.add(score.getStartTick(i));
+        }
+        return starts;
+    }
+
+    // covers addNotes of a piece of multiple voices from sample_abc, same events as play
+    @Test
+    public void testAddNotesSameEventsAsPlay() throws MidiUnavailableException, InvalidMidiDataException {
+        Piece piece = Music.parsePiece(new File("sample_abc/invention.abc"));
+        Music music = piece.getMusic();
+        int ticksPerBeat = piece.getHeader().getTicksPerBeat();
+        SequencePlayer played = new SequencePlayer(Music.DEFAULT_TEMPO_BPM, ticksPerBeat);
+        music.play(played, 12);
+        SequencePlayer compiled = new SequencePlayer(Music.DEFAULT_TEMPO_BPM, ticksPerBeat);
+        compiled.addNotes(CompiledScore.compile(music), 12);
+
+        // events on the same tick may be in a different order
+        List<String> playedEvents = new ArrayList<>(Arrays.asList(played.toString().split("\n")));
+        List<String> compiledEvents = new ArrayList<>(Arrays.asList(compiled.toString().split("\n")));
+        Collections.sort(playedEvents);
+        Collections.sort(compiledEvents);
+        assertTrue("expected notes played", playedEvents.size() > 2);
+        assertEquals("expected same events", playedEvents, compiledEvents);
+    }
+}
@@ -23,7 +23,9 @@ public class HeaderTests {
      *  hashCode() --> result
      *      check if hashCodes are equal when two headers are equal
      *  equals() --> result
-     *      result = true; result = false
+     *      result = true; result = false; headers differ only in their resolution
+     *  getTicksPerBeat() --> result
+     *      the resolution given, found by the parser (see MusicScannerTests for how it is found)
      */
     
     private final String index = "1000";
@@ -34,6 +36,7 @@ public class HeaderTests {
     private final String tempoBaseNote = "1/8";
     private final String composer = "Unknown";
     private final int tempoBPM = 120;
+    private final int ticksPerBeat = 1;
     
     
     @Test(expected=AssertionError.class)
@@ -45,7 +48,7 @@ public class HeaderTests {
     public void testObservers() {
         Map<String, List<String>> voices = new HashMap<>();
         voices.put("voice 1", Arrays.asList("C ","D ", "E ", "F ", "|"));
-        Header header = new Header(title, index, key, composer, meter, length, tempoBaseNote, tempoBPM, voices);
+        Header header = new Header(title, index, key, composer, meter, length, tempoBaseNote, tempoBPM, voices, ticksPerBeat);
         assertEquals("expected correct index", index, header.getIndex());
         assertEquals("expected correct title", title, header.getTitle());
         assertEquals("expected correct key", key, header.getKey());
@@ -63,7 +66,7 @@ public class HeaderTests {
     public void testToStringOneVoice() {
         Map<String, List<String>> voices = new HashMap<>();
         voices.put("", Arrays.asList("C ","D ", "E ", "F ", "|"));
-        Header header = new Header(title, index, key, composer, meter, length, tempoBaseNote, tempoBPM, voices);
+        Header header = new Header(title, index, key, composer, meter, length, tempoBaseNote, tempoBPM, voices, ticksPerBeat);
         String expected = "X: 1000\nT: Test\nC: Unknown\nL: 1/4\nM: 4/4\nQ: 1/8=120\nV: \nK: Abm";
         assertEquals("expected correct string representation", expected, header.toString());
     }
@@ -73,7 +76,7 @@ public class HeaderTests {
         Map<String, List<String>> voices = new HashMap<>();
         voices.put("voice 1", Arrays.asList("C ","D ", "E ", "F ", "|"));
         voices.put("voice 2", Arrays.asList("C ","D ", "E ", "F ", "|"));
-        Header header = new Header(title, index, key, composer, meter, length, tempoBaseNote, tempoBPM, voices);
+        Header header = new Header(title, index, key, composer, meter, length, tempoBaseNote, tempoBPM, voices, ticksPerBeat);
         String possible_value = "X: 1000\nT: Test\nC: Unknown\nL: 1/4\nM: 4/4\nQ: 1/8=120\nV: voice 1\nV: voice 2\nK: Abm";
         String possible_value2 = "X: 1000\nT: Test\nC: Unknown\nL: 1/4\nM: 4/4\nQ: 1/8=120\nV: voice 2\nV: voice 1\nK: Abm";
         assertTrue("expected correct string representation", header.toString().equals(possible_value) || header.toString().equals(possible_value2));
@@ -83,8 +86,8 @@ public class HeaderTests {
     public void testEqualsSameHeader() {
         Map<String, List<String>> voices = new HashMap<>();
         voices.put("", Arrays.asList("C ","D ", "E ", "F ", "|"));
-        Header header = new Header(title, index, key, composer, meter, length, tempoBaseNote, tempoBPM, voices);
-        Header header2 = new Header(title, index, key, composer, meter, length, tempoBaseNote, tempoBPM, voices);
+        Header header = new Header(title, index, key, composer, meter, length, tempoBaseNote, tempoBPM, voices, ticksPerBeat);
+        Header header2 = new Header(title, index, key, composer, meter, length, tempoBaseNote, tempoBPM, voices, ticksPerBeat);
         assertTrue("expected the two headers to be equal", header.equals(header2));
         assertTrue("expected hashCodes to be the same", header.hashCode() == header2.hashCode());
     }
@@ -97,9 +100,21 @@ public class HeaderTests {
         Map<String, List<String>> voices2 = new HashMap<>();
         voices2.put("voice 1", Arrays.asList("C ","D ", "E ", "F ", "|"));
 
-        Header header = new Header(title, index, key, composer, meter, length, tempoBaseNote, tempoBPM, voices);
-        Header header2 = new Header(title, index, key, composer, meter, length, tempoBaseNote, tempoBPM, voices2);
+        Header header = new Header(title, index, key, composer, meter, length, tempoBaseNote, tempoBPM, voices, ticksPerBeat);
+        Header header2 = new Header(title, index, key, composer, meter, length, tempoBaseNote, tempoBPM, voices2, ticksPerBeat);
         assertFalse("expected the two headers to not be equal", header.equals(header2));        
     }
+    
+    // covers getTicksPerBeat(), headers that differ only in their resolution
+    @Test
+    public void testTicksPerBeat() {
+        Map<String, List<String>> voices = new HashMap<>();
+        voices.put("voice 1", Arrays.asList("(3C/D/E/ ", "F3/4 |"));
+        // a default note is half a beat, a note of it as short as a quarter, and a triplet two thirds of that
+        Header header = new Header(title, index, key, composer, meter, "1/8", "1/4", tempoBPM, voices, 2 * 4 * 3);
+        assertEquals("expected the resolution given", 2 * 4 * 3, header.getTicksPerBeat());
+        Header finer = new Header(title, index, key, composer, meter, "1/8", "1/4", tempoBPM, voices, 2 * 2 * 4 * 3);
+        assertFalse("expected headers of different resolutions to differ", header.equals(finer));
+    }
 
 }
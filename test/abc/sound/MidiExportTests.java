@@ -0,0 +1,156 @@
+package abc.sound;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import org.junit.Test;
+
+/**
+ * This file contains tests on exporting music as Standard MIDI Files. None of them needs a MIDI device.
+ *
+ */
+public class MidiExportTests {
+
+    /*
+     * Testing strategy:
+     *  write(piece, out), write(piece, channel) --> Standard MIDI File
+     *      piece is a single note, has multiple voices, is every file in sample_abc
+     *      out is an OutputStream, channel is a FileChannel
+     *
+     *  SequencePlayer(bpm, ticksPerBeat), addNotes, write(out)
+     *      on a machine without MIDI devices; track before and after writing
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers a single note, written to an OutputStream
+    @Test
+    public void testWriteSingleNote() throws IOException, InvalidMidiDataException {
+        Piece piece = Music.parsePiece(new File("sample_abc/single_note.abc"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MidiExport.write(piece, out);
+
+        byte[] file = out.toByteArray();
+        assertEquals("expected a MIDI file header", "MThd", new String(file, 0, 4, "US-ASCII"));
+        Sequence sequence = MidiSystem.getSequence(new ByteArrayInputStream(file));
+        assertEquals("expected ticks per beat", piece.getHeader().getTicksPerBeat(), sequence.getResolution());
+        assertEquals("expected a single track", 1, sequence.getTracks().length);
+        assertEquals("expected the tempo of the header", 60000000 / piece.getHeader().getTempoBPM(), tempo(sequence.getTracks()[0]));
+        assertEquals("expected the note on and off", 2, noteEvents(sequence.getTracks()[0]).size());
+    }
+
+    // covers every file in sample_abc, multiple voices
+    @Test
+    public void testWriteSampleCorpus() throws IOException, InvalidMidiDataException {
+        File[] tunes = new File("sample_abc").listFiles((dir, name) -> name.endsWith(".abc"));
+        Arrays.sort(tunes);
+        for (File tune : tunes) {
+            Piece piece = Music.parsePiece(tune);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            MidiExport.write(piece, out);
+
+            Sequence sequence = MidiSystem.getSequence(new ByteArrayInputStream(out.toByteArray()));
+            List<String> expected = new ArrayList<>();
+            CompiledScore score = CompiledScore.compile(piece.getMusic());
+            for (int i = 0; i < score.size(); i++) {
+                expected.add(ShortMessage.NOTE_ON + " " + score.getMidiPitch(i) + " " + score.getStartTick(i));
+                expected.add(ShortMessage.NOTE_OFF + " " + score.getMidiPitch(i) + " " + (score.getStartTick(i) + score.getDurationTicks(i)));
+            }
+            List<String> written = noteEvents(sequence.getTracks()[0]);
+            Collections.sort(expected);
+            Collections.sort(written);
+            assertEquals("expected every note of " + tune, expected, written);
+        }
+    }
+
+    // covers a FileChannel
+    @Test
+    public void testWriteToFileChannel() throws IOException {
+        Piece piece = Music.parsePiece(new File("sample_abc/fur_elise.abc"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MidiExport.write(piece, out);
+
+        Path file = Files.createTempFile("fur_elise", ".mid");
+        try {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                MidiExport.write(piece, channel);
+            }
+            assertArrayEquals("expected same file as written to a stream", out.toByteArray(), Files.readAllBytes(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    // covers a SequencePlayer without MIDI devices, its track before and after writing
+    @Test
+    public void testSequencePlayerWriteLeavesTrack() throws MidiUnavailableException, InvalidMidiDataException, IOException {
+        SequencePlayer player = new SequencePlayer(120, 12);
+        player.addNote(60, 0, 12);
+        player.addNote(64, 12, 12);
+        String track = player.toString();
+
+        ByteArrayOutputStream once = new ByteArrayOutputStream();
+        player.write(once);
+        assertEquals("expected track unchanged by writing", track, player.toString());
+        ByteArrayOutputStream twice = new ByteArrayOutputStream();
+        player.write(twice);
+        assertArrayEquals("expected same file every time", once.toByteArray(), twice.toByteArray());
+        assertEquals("expected tempo of the player", 500000,
+                tempo(MidiSystem.getSequence(new ByteArrayInputStream(once.toByteArray())).getTracks()[0]));
+    }
+
+    /**
+     * @return microseconds per beat of the first set_tempo event of track, -1 if there is none
+     */
+    private static int tempo(Track track) {
+        for (int i = 0; i < track.size(); i++) {
+            if (track.get(i).getMessage() instanceof MetaMessage) {
+                MetaMessage meta = (MetaMessage) track.get(i).getMessage();
+                if (meta.getType() == 0x51) {
+                    byte[] data = meta.getData();
+                    return ((data[0] & 0xFF) << 16) | ((data[1] & 0xFF) << 8) | (data[2] & 0xFF);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return "command note tick" of every note on and note off event of track
+     */
+    private static List<String> noteEvents(Track track) {
+        List<String> events = new ArrayList<>();
+        for (int i = 0; i < track.size(); i++) {
+            MidiEvent event = track.get(i);
+            if (event.getMessage() instanceof ShortMessage) {
+                ShortMessage message = (ShortMessage) event.getMessage();
+                events.add(message.getCommand() + " " + message.getData1() + " " + event.getTick());
+            }
+        }
+        return events;
+    }
+}
@@ -0,0 +1,179 @@
+package abc.sound;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import org.junit.Test;
+
+/**
+ * This file contains tests on writing compiled scores with MidiFileWriter. None of them needs a MIDI device.
+ *
+ */
+public class MidiFileWriterTests {
+
+    /*
+     * Testing strategy:
+     *  write(score, ticksPerBeat, beatsPerMinute, out) --> Standard MIDI File
+     *      score has no notes, a chord, notes of a single tick, every piece in sample_abc
+     *      delta times fit in 1, 2, 3, 4 bytes
+     *      consecutive events of the same kind (running status), of different kinds
+     *      writer used once, reused for several files
+     *      ticksPerBeat, beatsPerMinute out of range; pitch out of range
+     */
+
+    private final static Pitch C = new Pitch('C');
+    private final static Pitch E = new Pitch('E');
+    private final static Pitch G = new Pitch('G');
+
+    // resolution the scores are written at; the tests compare files with each other, so any one does
+    private final static int TICKS_PER_BEAT = 192;
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers score has no notes
+    @Test
+    public void testWriteNoNotes() throws IOException, InvalidMidiDataException {
+        byte[] file = write(new MidiFileWriter(), CompiledScore.compile(new Rest(0)));
+        Track track = MidiSystem.getSequence(new ByteArrayInputStream(file)).getTracks()[0];
+        assertEquals("expected no note events", 0, noteEvents(track).size());
+        assertEquals("expected header, tempo and end of track", 14 + 8 + 7 + 4, file.length);
+    }
+
+    // covers a chord, running status, delta times of 1 byte
+    @Test
+    public void testWriteChordRunningStatus() throws IOException, InvalidMidiDataException {
+        Music chord = Music.addVoice(Music.addVoice(new Note(C, 96), new Note(E, 96)), new Note(G, 96));
+        byte[] file = write(new MidiFileWriter(), CompiledScore.compile(chord));
+
+        // each run of three note ons and three note offs gives its status byte once: 4 + 3 + 3 bytes a run
+        assertEquals("expected header, tempo, two runs of events and end of track", 14 + 8 + 7 + 2 * 10 + 4, file.length);
+        Track track = MidiSystem.getSequence(new ByteArrayInputStream(file)).getTracks()[0];
+        List<String> events = noteEvents(track);
+        assertEquals("expected every note on before every note off", 6, events.size());
+        for (int i = 0; i < 3; i++) {
+            assertTrue("expected note on at 0, got " + events.get(i), events.get(i).startsWith(ShortMessage.NOTE_ON + " ") && events.get(i).endsWith(" 0"));
+            assertTrue("expected note off at 96, got " + events.get(i + 3), events.get(i + 3).startsWith(ShortMessage.NOTE_OFF + " ") && events.get(i + 3).endsWith(" 96"));
+        }
+    }
+
+    // covers delta times of 1, 2, 3, 4 bytes; notes of a single tick; events of different kinds
+    @Test
+    public void testWriteDeltaTimes() throws IOException, InvalidMidiDataException {
+        int[] gaps = { 0, 127, 128, 16383, 16384, 2097151, 2097152, 0 };
+        Music music = new Rest(0);
+        for (int gap : gaps) {
+            music = Music.concat(music, new Rest(gap));
+            music = Music.concat(music, new Note(C, (gap % 2 == 0) ? 1 : 2));
+        }
+        CompiledScore score = CompiledScore.compile(music);
+        byte[] file = write(new MidiFileWriter(), score);
+
+        Track track = MidiSystem.getSequence(new ByteArrayInputStream(file)).getTracks()[0];
+        assertEquals("expected same events as SequencePlayer", noteEvents(playerTrack(score)), noteEvents(track));
+        assertEquals("expected end of track on the last note off", score.getEndTick(), track.ticks());
+    }
+
+    // covers every piece in sample_abc
+    @Test
+    public void testWriteSampleCorpusSameAsSequencePlayer() throws IOException, InvalidMidiDataException {
+        File[] tunes = new File("sample_abc").listFiles((dir, name) -> name.endsWith(".abc"));
+        Arrays.sort(tunes);
+        MidiFileWriter writer = new MidiFileWriter();
+        for (File tune : tunes) {
+            CompiledScore score = CompiledScore.compile(Music.parsePiece(tune).getMusic());
+            byte[] file = write(writer, score);
+            Track track = MidiSystem.getSequence(new ByteArrayInputStream(file)).getTracks()[0];
+            assertEquals("expected same events in the same order for " + tune, noteEvents(playerTrack(score)), noteEvents(track));
+        }
+    }
+
+    // covers writer reused for several files
+    @Test
+    public void testWriterReused() throws IOException {
+        CompiledScore first = CompiledScore.compile(Music.parsePiece(new File("sample_abc/fur_elise.abc")).getMusic());
+        CompiledScore second = CompiledScore.compile(Music.concat(new Note(C, 96), new Note(E, 96)));
+        MidiFileWriter writer = new MidiFileWriter();
+        byte[] once = write(writer, first);
+        write(writer, second);
+        assertArrayEquals("expected same file after writing another", once, write(writer, first));
+        assertArrayEquals("expected same file as a new writer", once, write(new MidiFileWriter(), first));
+    }
+
+    // covers ticksPerBeat, beatsPerMinute out of range
+    @Test
+    public void testWriteBadArguments() throws IOException {
+        CompiledScore score = CompiledScore.compile(new Note(C, 96));
+        MidiFileWriter writer = new MidiFileWriter();
+        for (int[] arguments : new int[][] { { 0, 120 }, { 32768, 120 }, { 192, 0 } }) {
+            try {
+                writer.write(score, arguments[0], arguments[1], new ByteArrayOutputStream());
+                fail("expected IllegalArgumentException for " + Arrays.toString(arguments));
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    // covers pitch out of range
+    @Test(expected=IllegalArgumentException.class)
+    public void testWritePitchOutOfRange() throws IOException {
+        CompiledScore score = CompiledScore.compile(new Note(C.transpose(100), 96));
+        new MidiFileWriter().write(score, TICKS_PER_BEAT, 120, new ByteArrayOutputStream());
+    }
+
+    /**
+     * @return score written by writer as a Standard MIDI File, at 120 beats per minute
+     */
+    private static byte[] write(MidiFileWriter writer, CompiledScore score) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(score, TICKS_PER_BEAT, 120, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * @return track of a SequencePlayer that score was added to
+     */
+    private static Track playerTrack(CompiledScore score) throws IOException, InvalidMidiDataException {
+        SequencePlayer player;
+        try {
+            player = new SequencePlayer(120, TICKS_PER_BEAT);
+        } catch (MidiUnavailableException ex) {
+            throw new AssertionError("a SequencePlayer acquires no device until it plays", ex);
+        }
+        player.addNotes(score, 0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        player.write(out);
+        return MidiSystem.getSequence(new ByteArrayInputStream(out.toByteArray())).getTracks()[0];
+    }
+
+    /**
+     * @return "command note tick" of every note on and note off event of track, in order
+     */
+    private static List<String> noteEvents(Track track) {
+        List<String> events = new ArrayList<>();
+        for (int i = 0; i < track.size(); i++) {
+            MidiEvent event = track.get(i);
+            if (event.getMessage() instanceof ShortMessage) {
+                ShortMessage message = (ShortMessage) event.getMessage();
+                events.add(message.getCommand() + " " + message.getData1() + " " + event.getTick());
+            }
+        }
+        return events;
+    }
+}
@@ -0,0 +1,113 @@
+package abc.sound;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * This file contains tests on the mix kernels: the SIMD kernel must compute what the scalar reference does
+ *
+ */
+public class MixKernelTests {
+
+    /*
+     * Testing strategy:
+     *  mix(mix, source, leftGain, rightGain, length), for float and short sources
+     *      length is 0, one frame, a realistic block, less than the arrays
+     *      gains equal, different, changed between calls, 0, negative
+     *
+     *  toPcm(mix, gain, out, length)
+     *      samples in range, above Short.MAX_VALUE, below Short.MIN_VALUE, fractional; gain 1, < 1
+     *
+     *  length odd, longer than the arrays
+     *
+     *  create()
+     *      abc.sound.mixKernel is unset, "scalar"
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers mix with float and short sources, every length and gains; toPcm of every kind of sample
+    @Test
+    public void testBlockKernelSameAsScalar() {
+        Random random = new Random(6005);
+        MixKernel scalar = new ScalarMixKernel();
+        MixKernel block = new BlockMixKernel();
+        float[][] gains = { { 1, 1 }, { 0.5f, 0.5f }, { 0.3f, 0.7f }, { 0, 1 }, { -1, 0.25f }, { 0.3f, 0.7f } };
+        for (int length : new int[] { 0, 2, 256, 1000, 4096 }) {
+            float[] scalarMix = new float[length + 2];
+            float[] blockMix = new float[length + 2];
+            for (float[] gain : gains) {
+                float[] floats = new float[length + 2];
+                short[] shorts = new short[length + 2];
+                for (int i = 0; i < floats.length; i++) {
+                    floats[i] = (random.nextFloat() - 0.5f) * 40000;
+                    shorts[i] = (short) random.nextInt();
+                }
+                scalar.mix(scalarMix, floats, gain[0], gain[1], length);
+                block.mix(blockMix, floats, gain[0], gain[1], length);
+                scalar.mix(scalarMix, shorts, gain[1], gain[0], length);
+                block.mix(blockMix, shorts, gain[1], gain[0], length);
+            }
+            assertArrayEquals("expected same mix of " + length + " samples", scalarMix, blockMix, 0);
+            assertEquals("expected samples after length untouched", 0, blockMix[length], 0);
+
+            for (float gain : new float[] { 1, 0.4f }) {
+                short[] scalarOut = new short[length + 2];
+                short[] blockOut = new short[length + 2];
+                scalar.toPcm(scalarMix, gain, scalarOut, length);
+                block.toPcm(blockMix, gain, blockOut, length);
+                assertArrayEquals("expected same samples of " + length + " at gain " + gain, scalarOut, blockOut);
+            }
+        }
+    }
+
+    // covers toPcm of samples in range, out of range, fractional
+    @Test
+    public void testToPcm() {
+        float[] mix = { 0, 1.9f, -1.9f, 32767, 32767.5f, 40000, -32768, -32768.5f, -40000, Float.NaN };
+        short[] expected = { 0, 1, -1, 32767, 32767, 32767, -32768, -32768, -32768, 0 };
+        for (MixKernel kernel : new MixKernel[] { new ScalarMixKernel(), new BlockMixKernel() }) {
+            short[] out = new short[mix.length];
+            kernel.toPcm(mix, 1, out, mix.length);
+            assertArrayEquals("expected rounded toward zero and clamped by the " + kernel + " kernel", expected, out);
+        }
+    }
+
+    // covers length odd, longer than the arrays
+    @Test
+    public void testBadLength() {
+        for (MixKernel kernel : new MixKernel[] { new ScalarMixKernel(), new BlockMixKernel() }) {
+            for (int length : new int[] { 3, 6 }) {
+                try {
+                    kernel.mix(new float[4], new float[4], 1, 1, length);
+                    fail("expected IllegalArgumentException for length " + length);
+                } catch (IllegalArgumentException expected) {
+                }
+            }
+        }
+    }
+
+    // covers create with abc.sound.mixKernel unset, "scalar"
+    @Test
+    public void testCreate() {
+        String property = System.getProperty(MixKernel.PROPERTY);
+        try {
+            System.clearProperty(MixKernel.PROPERTY);
+            assertTrue("expected the SIMD kernel by default", MixKernel.create() instanceof BlockMixKernel);
+            System.setProperty(MixKernel.PROPERTY, "scalar");
+            assertTrue("expected the scalar kernel", MixKernel.create() instanceof ScalarMixKernel);
+        } finally {
+            if (property == null) {
+                System.clearProperty(MixKernel.PROPERTY);
+            } else {
+                System.setProperty(MixKernel.PROPERTY, property);
+            }
+        }
+    }
+}
@@ -2,8 +2,24 @@ package abc.sound;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiUnavailableException;
+
 import org.junit.Test;
 
+import abc.parser.BodyParser;
+import abc.parser.MusicScanner;
+
 /**
  * This file contains tests on the immutable Music datatype. Play will be tested in a separate file as it won't be run on didit
  *
@@ -17,6 +33,7 @@ public class MusicTests {
      *      Music is a rest,
      *      Music is a concat
      *      Music is a MultipleVoices
+     *      Music is a concat or MultipleVoices of many notes
      *  
      *  addVoice(voice,rest) --> result
      *      voice is a single note, single rest, is a concat, is a MultipleVoices
@@ -25,11 +42,35 @@ public class MusicTests {
      *  concat(music1, music2) --> result
      *      music1 is a single note, single rest, is a concat, is a MultipleVoices
      *      music2 is a single note, single rest, is a concat, is a MultipleVoices
+     *      music1 or music2 is a rest of no duration
+     *      music1 is a MusicSequence, which was / wasn't appended to before
+     *  
+     *  Pitch.valueOf(c), transpose(semitonesUp), Note.of(pitch, duration), Rest.of(duration) --> result
+     *      result equal to the one constructed
+     *      made twice with equal arguments, with different ones; pitch a MIDI note, outside MIDI notes
+     *      duration 0 (rests), 1, beyond an int
+     *  
+     *  repeat(body, firstEnding, secondEnding) --> result
+     *      endings of no duration, a first ending only, both endings; body of no duration
+     *      body is a note, a sequence, contains a repeat, is a repeat nested 20 deep; result is a part of a sequence, a voice
+     *      result's duration(), notes played (as compiled), equals(), hashCode(), toString()
+     *  
+     *  MusicSequence startOf(i), partAt(beat) --> result
+     *      i is first, middle, last part; beat is the start of a part, inside a part
 
      *      
+     *  play(player, atBeat) on a tune of 200,000 notes
+     *      tune is a chain of concats built left to right (as the parser does), built right to left,
+     *          a chain of 200,000 nested Concats
+     *  
      *  toString() --> result
      *      this is a single note, single rest, concat, MultipleVoices
      *  
+     *  equals(), hashCode(), toString(), duration() on a generated tune of 1,000,000 notes
+     *      tune is a chain of concats built left to right (as the parser does), built right to left
+     *      tune has several voices
+     *      other is equal, differs only in its last note, is the same tune nested differently
+     *  
      *  parseMusic(abcFile) --> Music
      *      abcFile is invalid file
      *      abcFile is a proper file
@@ -38,6 +79,11 @@ public class MusicTests {
      *          contains basic elements (e.g. single notes, rests)
      *          contains more complex elements (e.g. repeats, tuplets, chords)
      *  
+     *  parseMusic(header, bodyParser, pool) --> Music
+     *      header has one voice, multiple voices
+     *      pool parallelism is 1, > 1, > number of voices
+     *      a voice doesn't match the grammar
+     *  
      *  
      */
      
@@ -47,10 +93,12 @@ public class MusicTests {
     private final static Pitch D = new Pitch('D');
     private final static Pitch E = new Pitch('E');
     
-    private final static Note NOTE_1 = new Note(B, 1.0);
+    private final static Note NOTE_1 = new Note(B, 1);
     
     private final static Rest REST_1 = new Rest(1);
     
+    private final static int MILLION = 1000000;
+    
     @Test(expected=AssertionError.class)
     public void testAssertionsEnabled() {
         assert false; // make sure assertions are enabled with VM argument: -ea
@@ -59,13 +107,13 @@ public class MusicTests {
     // test duration() with single note
     @Test
     public void testDurationSingleNote() {
-        assertEquals("expected correct duration for single note", new Double(1.0), new Double(NOTE_1.duration()));
+        assertEquals("expected correct duration for single note", 1, NOTE_1.duration());
     }
     
     // covers duration() with a rest
     @Test
     public void testDurationSingleRest() {
-        assertEquals("expected correct duration for rest", new Double(1.0), new Double(REST_1.duration()));
+        assertEquals("expected correct duration for rest", 1, REST_1.duration());
     }
     
     // covers duration() with a concat
@@ -73,7 +121,7 @@ public class MusicTests {
     @Test
     public void testDurationConcat() {
         Music music = Music.concat(NOTE_1, REST_1);
-        assertEquals("expected correct duration for a concat", new Double(2.0), new Double(music.duration()));
+        assertEquals("expected correct duration for a concat", 2, music.duration());
     }
     
     // covers duration() with multiple voices
@@ -82,32 +130,424 @@ public class MusicTests {
     public void testDurationMultipleVoices() {
         Music music = Music.concat(NOTE_1, REST_1);
         Music together = Music.addVoice(music, NOTE_1);
-        assertEquals("expected correct duration for multiple voices", new Double(2.0), new Double(together.duration()));
+        assertEquals("expected correct duration for multiple voices", 2, together.duration());
     }
     
     // covers toString for Rest
     @Test
     public void testToStringRest() {
-        assertEquals("expected correct string representation", "z" + 1.0, REST_1.toString());
+        assertEquals("expected correct string representation", "z" + 1, REST_1.toString());
     }
     
     // covers toString for Note
     @Test
     public void testToStringNote() {
-        assertEquals("expected correct string representation", B.toString() + 1.0, NOTE_1.toString());
+        assertEquals("expected correct string representation", B.toString() + 1, NOTE_1.toString());
     }
     
     // covers toString for Concat
     @Test
     public void testToStringConcat() {
         Music music = Music.concat(NOTE_1, REST_1);
-        assertEquals("expected correct duration for a concat", B.toString() + 1.0 + " z" + 1.0, music.toString());        
+        assertEquals("expected correct duration for a concat", B.toString() + 1 + " z" + 1, music.toString());        
     }
     
     // covers toString for MultipleVoices
     @Test
     public void testToStringMultipleVoices() {
         Music music = Music.addVoice(NOTE_1, REST_1);
-        assertEquals("expected correct duration for a concat", "Together[" + B.toString() + 1.0 + "||||z" + 1.0 +"]", music.toString());        
+        assertEquals("expected correct duration for a concat", "Together[" + B.toString() + 1 + "||||z" + 1 +"]", music.toString());        
     }      
+    
+    // covers concat music1 or music2 is a rest of no duration
+    @Test
+    public void testConcatLeavesOutEmptyRests() {
+        Rest empty = new Rest(0);
+        assertSame("expected music1 when music2 is empty", NOTE_1, Music.concat(NOTE_1, empty));
+        assertSame("expected music2 when music1 is empty", NOTE_1, Music.concat(empty, NOTE_1));
+        assertEquals("expected empty rests left out", Music.concat(NOTE_1, REST_1),
+                Music.concat(Music.concat(Music.concat(empty, NOTE_1), empty), REST_1));
+    }
+    
+    // covers concat music1 is a MusicSequence appended to before, or not
+    @Test
+    public void testConcatAppendsToSequence() {
+        Note noteC = new Note(C, 2);
+        Note noteD = new Note(D, 2);
+        Music prefix = Music.concat(Music.concat(NOTE_1, REST_1), noteC);
+        Music first = Music.concat(prefix, noteD);
+        Music second = Music.concat(prefix, noteC);
+        Music third = Music.concat(first, noteD);
+        
+        assertEquals("expected prefix unchanged", B.toString() + 1 + " z" + 1 + " " + C.toString() + 2, prefix.toString());
+        assertEquals("expected one level of parts", prefix.toString() + " " + D.toString() + 2, first.toString());
+        assertEquals("expected second append to copy", prefix.toString() + " " + C.toString() + 2, second.toString());
+        assertEquals("expected first extended", first.toString() + " " + D.toString() + 2, third.toString());
+        assertEquals("expected durations", 6, first.duration());
+        assertEquals("expected durations", 8, third.duration());
+        assertEquals("expected equal to the same parts appended afresh",
+                Music.concat(Music.concat(Music.concat(NOTE_1, REST_1), noteC), noteD), first);
+        assertEquals("expected equal hash codes",
+                Music.concat(Music.concat(Music.concat(NOTE_1, REST_1), noteC), noteD).hashCode(), first.hashCode());
+        assertNotEquals("expected nested sequence to differ from flat one", Music.concat(NOTE_1, Music.concat(REST_1, noteC)), prefix);
+    }
+    
+    // covers startOf first, middle, last part; partAt start of a part, inside a part
+    @Test
+    public void testSequenceStartsAndPartAt() {
+        Music music = new Rest(0);
+        long[] durations = { 4, 2, 8, 1 };
+        for (long duration : durations) {
+            music = Music.concat(music, new Note(A, duration));
+        }
+        MusicSequence sequence = (MusicSequence) Music.concat(Music.concat(music, new Rest(1)), NOTE_1);
+        assertEquals("expected number of parts", 6, sequence.size());
+        assertEquals("expected first part at 0", 0, sequence.startOf(0));
+        assertEquals("expected middle part after the ones before", 6, sequence.startOf(2));
+        assertEquals("expected last part after every other", 16, sequence.startOf(5));
+        assertEquals("expected part starting at beat", 2, sequence.partAt(6));
+        assertEquals("expected part playing at beat", 2, sequence.partAt(12));
+        assertEquals("expected first part", 0, sequence.partAt(2));
+        assertEquals("expected last part", 5, sequence.partAt(16));
+    }
+    
+    // test duration() of a long chain of concats and voices built one note at a time
+    @Test
+    public void testDurationLongConcat() {
+        final int numberOfNotes = 100000;
+        Music music = new Rest(0);
+        Music voices = new Rest(0);
+        for (int i = 0; i < numberOfNotes; i++) {
+            music = Music.concat(music, NOTE_1);
+            voices = Music.addVoice(voices, music);
+            assertEquals("expected duration of every note so far", i + 1, music.duration());
+            assertEquals("expected duration of the longest voice", i + 1, voices.duration());
+        }
+    }
+    
+    // covers a left to right chain of 1,000,000 notes, equal tunes and tunes differing in their last note
+    @Test
+    public void testMillionNoteTuneLeftToRight() {
+        Music tune = generatedTune(MILLION, A, true);
+        Music same = generatedTune(MILLION, A, true);
+        Music lastNoteDiffers = generatedTune(MILLION, B, true);
+        
+        assertEquals("expected duration of every note", MILLION, tune.duration());
+        assertEquals("expected equal tunes", tune, same);
+        assertEquals("expected equal hash codes", tune.hashCode(), same.hashCode());
+        assertNotEquals("expected tunes differing in their last note to differ", tune, lastNoteDiffers);
+        
+        String string = tune.toString();
+        assertEquals("expected a note and a space for every note", MILLION * (C.toString() + 1 + " ").length(), string.length() + 1);
+        assertTrue("expected last note last", string.endsWith(" " + A.toString() + 1));
+    }
+    
+    // covers play on a chain of 200,000 notes built left to right, right to left, of nested Concats; deeper than a
+    // recursive walk of it could go on the default stack
+    @Test
+    public void testPlayLongChains() throws MidiUnavailableException, InvalidMidiDataException {
+        final int numberOfNotes = 200000;
+        Music concats = new Note(A, 1);
+        for (int i = 1; i < numberOfNotes; i++) {
+            concats = new Concat(new Note(C, 1), concats);
+        }
+        for (Music tune : new Music[] { generatedTune(numberOfNotes, A, true), generatedTune(numberOfNotes, A, false),
+                concats }) {
+            SequencePlayer player = new SequencePlayer(Music.DEFAULT_TEMPO_BPM, 1);
+            long[] played = { 0 };
+            player.setNoteListener((note, startTick, numTicks) -> {
+                assertEquals("expected the notes one after the other", played[0] + 3, startTick);
+                assertEquals("expected notes of a tick", 1, numTicks);
+                played[0]++;
+            });
+            tune.play(player, 3);
+            assertEquals("expected every note played", numberOfNotes, played[0]);
+        }
+    }
+    
+    // covers a right to left chain of 1,000,000 notes, the same notes nested differently, several voices
+    @Test
+    public void testMillionNoteTuneRightToLeftAndVoices() {
+        Music rightToLeft = generatedTune(MILLION, A, false);
+        Music leftToRight = generatedTune(MILLION, A, true);
+        
+        assertEquals("expected duration of every note", MILLION, rightToLeft.duration());
+        assertNotEquals("expected differently nested concats to differ", leftToRight, rightToLeft);
+        assertEquals("expected same notes in the same order", leftToRight.toString(), rightToLeft.toString());
+        
+        Music voices = Music.addVoice(rightToLeft, Music.addVoice(leftToRight, REST_1));
+        Music sameVoices = Music.addVoice(generatedTune(MILLION, A, false), Music.addVoice(leftToRight, REST_1));
+        assertEquals("expected duration of the longest voice", MILLION, voices.duration());
+        assertEquals("expected equal voices", voices, sameVoices);
+        assertEquals("expected equal hash codes", voices.hashCode(), sameVoices.hashCode());
+        assertTrue("expected voices in order", voices.toString().startsWith("Together[" + C.toString() + 1 + " "));
+    }
+    
+    // covers one voice, multiple voices, parallelism 1, > 1, > number of voices
+    @Test
+    public void testParseMusicParallelSameAsOneVoiceAtATime() {
+        File[] tunes = new File("sample_abc").listFiles((dir, name) -> name.endsWith(".abc"));
+        Arrays.sort(tunes);
+        ForkJoinPool sequential = new ForkJoinPool(1);
+        ForkJoinPool parallel = new ForkJoinPool(4);
+        ForkJoinPool wide = new ForkJoinPool(64);
+        try {
+            for (File tune : tunes) {
+                Header header = Music.parseHeader(tune);
+                Music expected = Music.parseMusic(header, BodyParser.PARSE_TREE, sequential);
+                assertEquals("expected same music for " + tune, expected, Music.parseMusic(header, BodyParser.SCANNER, sequential));
+                assertEquals("expected same music for " + tune, expected, Music.parseMusic(header, BodyParser.SCANNER, parallel));
+                assertEquals("expected same music for " + tune, expected, Music.parseMusic(header, BodyParser.SCANNER, wide));
+                assertEquals("expected same music for " + tune, expected, Music.parseMusic(header));
+            }
+        } finally {
+            sequential.shutdown();
+            parallel.shutdown();
+            wide.shutdown();
+        }
+    }
+    
+    // covers multiple voices, parallelism > 1, voices finishing out of order
+    @Test
+    public void testParseMusicParallelDeterministicOrder() {
+        Header header = generatedHeader(12, 50);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Music expected = Music.parseMusic(header, BodyParser.PARSE_TREE, pool);
+            for (int i = 0; i < 20; i++) {
+                Music music = Music.parseMusic(header, BodyParser.SCANNER, pool);
+                assertEquals("expected same music every time", expected, music);
+                assertEquals("expected same string every time", expected.toString(), music.toString());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    // covers a voice that doesn't match the grammar
+    @Test(expected=IllegalArgumentException.class)
+    public void testParseMusicParallelInvalidVoice() {
+        Map<String, List<String>> voices = new HashMap<>();
+        voices.put("1", new ArrayList<>(Arrays.asList("C D E F|\n")));
+        voices.put("2", new ArrayList<>(Arrays.asList("C ( D|\n")));
+        Header header = new Header("invalid", "1", "C", Music.DEFAULT_COMPOSER, Music.DEFAULT_METER, Music.DEFAULT_LENGTH,
+                Music.DEFAULT_LENGTH, Music.DEFAULT_TEMPO_BPM, voices,
+                MusicScanner.ticksPerBeat(Music.DEFAULT_LENGTH, Music.DEFAULT_LENGTH, "C D E F|\nC ( D|\n"));
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            Music.parseMusic(header, BodyParser.SCANNER, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    // covers result equal to the one constructed, made twice with equal arguments, with different ones,
+    // pitch a MIDI note, outside MIDI notes
+    @Test
+    public void testSharedPitches() {
+        assertEquals("expected middle C", C, Pitch.valueOf('C'));
+        assertSame("expected middle C shared", Pitch.valueOf('C'), Pitch.valueOf('C'));
+        assertSame("expected MIDDLE_C shared", Pitch.MIDDLE_C, C.transpose(0));
+        assertSame("expected high C shared", Pitch.valueOf('C').transpose(Pitch.OCTAVE), C.transpose(Pitch.OCTAVE));
+        assertEquals("expected E flat", E.transpose(-1), D.transpose(1));
+        assertSame("expected E flat shared", E.transpose(-1), D.transpose(1));
+        assertNotSame("expected different pitches", Pitch.valueOf('C'), Pitch.valueOf('D'));
+        
+        Pitch lowest = C.transpose(-60);
+        assertEquals("expected MIDI note 0", 0, lowest.toMidiNote());
+        assertSame("expected the lowest MIDI note shared", lowest, D.transpose(-62));
+        Pitch highest = C.transpose(67);
+        assertEquals("expected MIDI note 127", 127, highest.toMidiNote());
+        assertSame("expected the highest MIDI note shared", highest, D.transpose(65));
+        
+        Pitch belowMidi = C.transpose(-61);
+        assertEquals("expected equal pitches outside MIDI notes", belowMidi, D.transpose(-63));
+        assertEquals("expected MIDI note -1", -1, belowMidi.toMidiNote());
+        assertEquals("expected MIDI note 128", 128, C.transpose(68).toMidiNote());
+    }
+    
+    // covers result equal to the one constructed, made twice with equal arguments, with different ones,
+    // duration 0, 1, beyond an int
+    @Test
+    public void testSharedNotesAndRests() {
+        assertEquals("expected equal note", NOTE_1, Note.of(B, 1));
+        assertSame("expected note shared", Note.of(B, 1), Note.of(new Pitch('B'), 1));
+        assertNotEquals("expected different durations", Note.of(B, 1), Note.of(B, 2));
+        assertNotEquals("expected different pitches", Note.of(B, 1), Note.of(C, 1));
+        long beyondInt = Integer.MAX_VALUE + 1L;
+        assertSame("expected long note shared", Note.of(B, beyondInt), Note.of(B, beyondInt));
+        assertEquals("expected long note", beyondInt, Note.of(B, beyondInt).duration());
+        
+        assertEquals("expected equal rest", REST_1, Rest.of(1));
+        assertSame("expected rest shared", Rest.of(1), Rest.of(1));
+        assertSame("expected empty rest shared", Rest.of(0), Rest.of(0));
+        assertEquals("expected empty rest", 0, Rest.of(0).duration());
+        assertNotEquals("expected different durations", Rest.of(1), Rest.of(2));
+        
+        // many more notes than the cache has room for are still made right, and equal to constructed ones
+        for (int duration = 1; duration <= 5000; duration++) {
+            assertEquals("expected equal note", new Note(A, duration), Note.of(A, duration));
+            assertEquals("expected equal rest", new Rest(duration), Rest.of(duration));
+        }
+    }
+    
+    // covers endings of no duration, a first ending only, both endings, body is a note, a sequence,
+    // result's duration(), notes played, toString()
+    @Test
+    public void testRepeat() {
+        Music empty = new Rest(0);
+        Music body = Music.concat(Music.concat(new Note(A, 1), new Note(B, 2)), REST_1);
+        Music first = new Note(C, 1);
+        Music second = Music.concat(new Note(D, 1), new Note(E, 3));
+        
+        Music plain = Music.repeat(body, empty, empty);
+        assertEquals("expected body twice", 8, plain.duration());
+        assertEquals("expected body played twice", CompiledScore.compile(Music.concat(body, body)),
+                CompiledScore.compile(plain));
+        assertEquals("expected body twice", body + " " + body, plain.toString());
+        
+        Music firstOnly = Music.repeat(body, first, empty);
+        assertEquals("expected body, ending, body", 9, firstOnly.duration());
+        assertEquals("expected the ending after the first pass",
+                CompiledScore.compile(Music.concat(Music.concat(body, first), body)), CompiledScore.compile(firstOnly));
+        assertEquals("expected body, ending, body", body + " " + first + " " + body, firstOnly.toString());
+        
+        Music both = Music.repeat(body, first, second);
+        assertEquals("expected body, both endings", 13, both.duration());
+        assertEquals("expected an ending after each pass",
+                CompiledScore.compile(Music.concat(Music.concat(Music.concat(body, first), body), second)),
+                CompiledScore.compile(both));
+        assertEquals("expected body, both endings", body + " " + first + " " + body + " " + second, both.toString());
+        
+        Music note = Music.repeat(first, second, empty);
+        assertEquals("expected a note repeated", CompiledScore.compile(Music.concat(Music.concat(first, second), first)),
+                CompiledScore.compile(note));
+    }
+    
+    // covers body of no duration, body contains a repeat, result is a part of a sequence, a voice
+    @Test
+    public void testNestedRepeat() {
+        Music empty = new Rest(0);
+        Music first = new Note(C, 1);
+        Music second = new Note(D, 2);
+        assertEquals("expected the endings alone", Music.concat(first, second), Music.repeat(empty, first, second));
+        
+        Music inner = Music.repeat(Music.concat(new Note(A, 1), new Note(B, 1)), first, empty);
+        Music outer = Music.repeat(Music.concat(new Note(E, 4), inner), empty, second);
+        Music expandedInner = Music.concat(Music.concat(Music.concat(new Note(A, 1), new Note(B, 1)), first),
+                Music.concat(new Note(A, 1), new Note(B, 1)));
+        Music expandedBody = Music.concat(new Note(E, 4), expandedInner);
+        Music expanded = Music.concat(Music.concat(expandedBody, expandedBody), second);
+        assertEquals("expected the inner repeat in both passes", expanded.duration(), outer.duration());
+        assertEquals("expected the inner repeat in both passes", CompiledScore.compile(expanded),
+                CompiledScore.compile(outer));
+        assertEquals("expected the inner repeat in both passes", expanded.toString(), outer.toString());
+        
+        Music tune = Music.concat(Music.concat(NOTE_1, outer), NOTE_1);
+        assertEquals("expected the repeat in place", CompiledScore.compile(Music.concat(Music.concat(NOTE_1, expanded), NOTE_1)),
+                CompiledScore.compile(tune));
+        Music voices = Music.addVoice(tune, Music.addVoice(outer, REST_1));
+        assertEquals("expected the longest voice", tune.duration(), voices.duration());
+        assertEquals("expected every voice played",
+                CompiledScore.compile(Music.addVoice(Music.concat(Music.concat(NOTE_1, expanded), NOTE_1),
+                        Music.addVoice(expanded, REST_1))),
+                CompiledScore.compile(voices));
+    }
+    
+    // covers body is a repeat nested 20 deep, as parsed from 20 ":|" in a row
+    @Test
+    public void testDeeplyNestedRepeats() {
+        final int depth = 20;
+        Music music = Music.concat(Music.concat(Music.concat(new Note(C, 1), new Note(D, 1)), new Note(E, 1)),
+                new Note(A, 1));
+        Music same = music;
+        for (int i = 0; i < depth; i++) {
+            music = Music.repeat(music, new Rest(0), new Rest(0));
+            same = Music.repeat(same, new Rest(0), new Rest(0));
+            // every repeat lists its inner repeat as a single part, rather than both passes through it
+            assertEquals("expected the parts of the body", i == 0 ? 4 : 1, ((Repeat) music).bodySize());
+        }
+        assertEquals("expected every pass", 4L << depth, music.duration());
+        assertEquals("expected equal repeats", same, music);
+        
+        long[] notes = { 0 };
+        MusicTraversal.forEachLeaf(music, 0, (leaf, beat) -> {
+            if (leaf instanceof Note) {
+                assertEquals("expected the notes one after the other", notes[0], beat);
+                notes[0]++;
+            }
+        });
+        assertEquals("expected every pass played", 4L << depth, notes[0]);
+        
+        StringBuilder voice = new StringBuilder("C D E A ");
+        for (int i = 0; i < depth; i++) {
+            voice.append(":| ");
+        }
+        Map<String, List<String>> voices = new HashMap<>();
+        voices.put("1", Collections.singletonList(voice.append('\n').toString()));
+        Header header = new Header("nested", "1", "C", Music.DEFAULT_COMPOSER, Music.DEFAULT_METER, "1/4", "1/4",
+                Music.DEFAULT_TEMPO_BPM, voices, MusicScanner.ticksPerBeat("1/4", "1/4", voice.toString()));
+        Music parsed = Music.parseMusic(header);
+        assertEquals("expected every pass", 4L << depth, parsed.duration());
+        assertEquals("expected the same repeats", Music.addVoice(music, new Rest(0)), parsed);
+    }
+    
+    // covers result's equals(), hashCode()
+    @Test
+    public void testRepeatEquality() {
+        Music empty = new Rest(0);
+        Music body = Music.concat(new Note(A, 1), new Note(B, 2));
+        Music sameBody = Music.concat(new Note(A, 1), new Note(B, 2));
+        Music repeat = Music.repeat(body, NOTE_1, empty);
+        Music same = Music.repeat(sameBody, new Note(B, 1), new Rest(0));
+        assertEquals("expected equal repeats", repeat, same);
+        assertEquals("expected equal hash codes", repeat.hashCode(), same.hashCode());
+        assertNotEquals("expected endings swapped to differ", repeat, Music.repeat(body, empty, NOTE_1));
+        assertNotEquals("expected different bodies to differ", repeat, Music.repeat(NOTE_1, NOTE_1, empty));
+        assertNotEquals("expected a repeat to differ from its notes played out", Music.repeat(body, empty, empty),
+                Music.concat(body, body));
+    }
+    
+    /**
+     * @return header of a piece of numberOfVoices voices, each of numberOfBars random bars of notes, rests and chords
+     */
+    private static Header generatedHeader(int numberOfVoices, int numberOfBars) {
+        Random random = new Random(6005);
+        String[] elements = { "C", "^D", "e'", "F,2", "z", "G/2", "[CEG]", "_B3/4", "(3ABc" };
+        Map<String, List<String>> voices = new HashMap<>();
+        StringBuilder body = new StringBuilder();
+        for (int voice = 0; voice < numberOfVoices; voice++) {
+            StringBuilder line = new StringBuilder();
+            for (int bar = 0; bar < numberOfBars; bar++) {
+                for (int note = 0; note < 4; note++) {
+                    line.append(elements[random.nextInt(elements.length)]).append(' ');
+                }
+                line.append(bar % 8 == 7 ? "|]" : "|");
+            }
+            voices.put("voice" + voice, Collections.singletonList(line.append('\n').toString()));
+            body.append(line);
+        }
+        return new Header("generated", "1", "D", Music.DEFAULT_COMPOSER, Music.DEFAULT_METER, Music.DEFAULT_LENGTH,
+                Music.DEFAULT_LENGTH, Music.DEFAULT_TEMPO_BPM, voices,
+                MusicScanner.ticksPerBeat(Music.DEFAULT_LENGTH, Music.DEFAULT_LENGTH, body.toString()));
+    }
+    
+    /**
+     * @return tune of numberOfNotes notes of duration 1, cycling through C D E and ending in lastNote, built as a
+     *         chain of concats left to right (each note appended to the tune so far) or right to left
+     */
+    private static Music generatedTune(int numberOfNotes, Pitch lastNote, boolean leftToRight) {
+        Pitch[] pitches = { C, D, E };
+        Music tune = null;
+        for (int i = 0; i < numberOfNotes; i++) {
+            int index = leftToRight ? i : numberOfNotes - 1 - i;
+            Music note = new Note(index == numberOfNotes - 1 ? lastNote : pitches[index % pitches.length], 1);
+            if (tune == null) {
+                tune = note;
+            } else {
+                tune = leftToRight ? Music.concat(tune, note) : Music.concat(note, tune);
+            }
+        }
+        return tune;
+    }
 }
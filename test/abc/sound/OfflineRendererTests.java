@@ -0,0 +1,208 @@
+package abc.sound;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import org.junit.Test;
+
+/**
+ * This file contains tests on rendering music to WAV audio offline. None of them needs a sound device, but from
+ * Java 9 on they need the VM argument: --add-exports java.desktop/com.sun.media.sound=ALL-UNNAMED
+ *
+ */
+public class OfflineRendererTests {
+
+    /*
+     * Testing strategy:
+     *  SequencePlayer.render(out), OfflineRenderer.render(piece, out) --> WAV audio, stats
+     *      no notes, a single note after a rest, a piece from sample_abc
+     *      audio before, during, after the notes
+     *
+     *  OfflineRenderer.renderVoices(piece, out, pool) --> WAV audio, stats
+     *      piece has one voice, several voices; pool has one thread, several threads
+     *      a voice fails with an unchecked exception; calling thread interrupted while voices render
+     *
+     *  RenderStats
+     *      getAudioSeconds, getRenderSeconds, getSpeed, toString
+     */
+
+    private final static Pitch C = new Pitch('C');
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers no notes
+    @Test
+    public void testRenderNoNotes() throws MidiUnavailableException, InvalidMidiDataException, IOException, UnsupportedAudioFileException {
+        SequencePlayer player = new SequencePlayer(120, 4);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RenderStats stats = player.render(out);
+
+        short[] samples = samples(out.toByteArray());
+        assertEquals("expected just the release", OfflineRenderer.frames(OfflineRenderer.RELEASE_SECONDS), stats.getFrames());
+        assertEquals("expected a sample per channel per frame", 2 * stats.getFrames(), samples.length);
+        assertEquals("expected silence", 0, peak(samples, 0, samples.length));
+    }
+
+    // covers a single note after a rest; audio before, during, after the notes
+    @Test
+    public void testRenderSingleNote() throws MidiUnavailableException, InvalidMidiDataException, IOException, UnsupportedAudioFileException {
+        // at 120 beats per minute and 4 ticks per beat, a tick is 1/8 s: the note plays from 0.5 s to 1 s
+        SequencePlayer player = new SequencePlayer(120, 4);
+        player.addNote(C.toMidiNote(), 4, 4);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RenderStats stats = player.render(out);
+
+        assertEquals("expected a second of notes and the release", 1 + OfflineRenderer.RELEASE_SECONDS, stats.getAudioSeconds(), 1e-3);
+        short[] samples = samples(out.toByteArray());
+        int samplesPerSecond = 2 * (int) OfflineRenderer.FORMAT.getSampleRate();
+        assertEquals("expected silence before the note", 0, peak(samples, 0, samplesPerSecond / 2 - 2));
+        assertTrue("expected sound during the note", peak(samples, samplesPerSecond / 2, samplesPerSecond) > 1000);
+        assertTrue("expected the note to die away", peak(samples, samples.length - samplesPerSecond / 10, samples.length) < 100);
+    }
+
+    // covers a piece from sample_abc; RenderStats
+    @Test
+    public void testRenderPiece() throws MidiUnavailableException, IOException, UnsupportedAudioFileException {
+        Piece piece = Music.parsePiece(new File("sample_abc/piece1.abc"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RenderStats stats = OfflineRenderer.render(piece, out);
+
+        double beats = CompiledScore.compile(piece.getMusic()).getEndTick() / (double) piece.getHeader().getTicksPerBeat();
+        double seconds = beats * 60 / piece.getHeader().getTempoBPM() + OfflineRenderer.RELEASE_SECONDS;
+        assertEquals("expected the length of the piece", seconds, stats.getAudioSeconds(), 1e-3);
+        assertEquals("expected every frame written", 2 * stats.getFrames(), samples(out.toByteArray()).length);
+        assertTrue("expected some time to render", stats.getRenderSeconds() > 0);
+        assertEquals("expected speed as audio over render time", stats.getAudioSeconds() / stats.getRenderSeconds(), stats.getSpeed(), 1e-9);
+        assertTrue("expected speed in the report", stats.toString().endsWith("x real time"));
+    }
+
+    // covers renderVoices, piece has one voice
+    @Test
+    public void testRenderVoicesOneVoice() throws MidiUnavailableException, IOException {
+        Piece piece = Music.parsePiece(new File("sample_abc/piece1.abc"));
+        ByteArrayOutputStream together = new ByteArrayOutputStream();
+        OfflineRenderer.render(piece, together);
+        ByteArrayOutputStream byVoice = new ByteArrayOutputStream();
+        OfflineRenderer.renderVoices(piece, byVoice, ForkJoinPool.commonPool());
+        assertArrayEquals("expected same audio as rendered on one synthesizer", together.toByteArray(), byVoice.toByteArray());
+    }
+
+    // covers renderVoices, piece has several voices, pool has one thread, several threads
+    @Test
+    public void testRenderVoicesSeveralVoices() throws MidiUnavailableException, IOException, UnsupportedAudioFileException {
+        Piece piece = Music.parsePiece(new File("sample_abc/sample3.abc"));
+        assertTrue("expected several voices", CompiledScore.compile(piece.getMusic()).getNumberOfVoices() > 1);
+        ByteArrayOutputStream together = new ByteArrayOutputStream();
+        RenderStats togetherStats = OfflineRenderer.render(piece, together);
+
+        ForkJoinPool one = new ForkJoinPool(1);
+        ForkJoinPool four = new ForkJoinPool(4);
+        try {
+            ByteArrayOutputStream oneThread = new ByteArrayOutputStream();
+            RenderStats stats = OfflineRenderer.renderVoices(piece, oneThread, one);
+            ByteArrayOutputStream fourThreads = new ByteArrayOutputStream();
+            OfflineRenderer.renderVoices(piece, fourThreads, four);
+
+            assertEquals("expected as long as rendered together", togetherStats.getFrames(), stats.getFrames());
+            assertArrayEquals("expected same mix on any number of threads", oneThread.toByteArray(), fourThreads.toByteArray());
+            short[] samples = samples(oneThread.toByteArray());
+            assertTrue("expected sound", peak(samples, 0, samples.length) > 1000);
+        } finally {
+            one.shutdown();
+            four.shutdown();
+        }
+    }
+
+    // covers renderVoices, a voice fails with an unchecked exception
+    @Test
+    public void testRenderVoicesVoiceFails() {
+        Piece voices = Music.parsePiece(new File("sample_abc/sample3.abc"));
+        Music music = new MultipleVoices(new Note(C, 4), new Note(C.transpose(200), 4));
+        Piece piece = new Piece(voices.getHeader(), music);
+        try {
+            OfflineRenderer.renderVoices(piece, new ByteArrayOutputStream(), ForkJoinPool.commonPool());
+            fail("expected a pitch no synthesizer can play to fail");
+        } catch (IOException | MidiUnavailableException ex) {
+            throw new AssertionError("expected the voice's own exception", ex);
+        } catch (RuntimeException re) {
+            assertTrue("expected the voice's own exception, got " + re, re.getMessage().startsWith("Cannot add note"));
+        }
+    }
+
+    // covers renderVoices, calling thread interrupted while voices render
+    @Test
+    public void testRenderVoicesInterrupted() throws MidiUnavailableException, IOException, InterruptedException {
+        Piece piece = Music.parsePiece(new File("sample_abc/sample3.abc"));
+        ForkJoinPool one = new ForkJoinPool(1);
+        CountDownLatch busy = new CountDownLatch(1);
+        // the only thread of the pool is kept busy, so no voice has rendered when the caller is interrupted
+        one.execute(() -> {
+            try {
+                busy.await();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        try {
+            Thread.currentThread().interrupt();
+            OfflineRenderer.renderVoices(piece, new ByteArrayOutputStream(), one);
+            fail("expected interrupted");
+        } catch (IllegalStateException ise) {
+            assertTrue("expected the interrupt status set again", Thread.interrupted());
+        } finally {
+            Thread.interrupted();
+            busy.countDown();
+            one.shutdown();
+        }
+        assertTrue("expected the pool to finish once released", one.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * @return the samples of a 16-bit WAV file, channels interleaved
+     */
+    private static short[] samples(byte[] wav) throws UnsupportedAudioFileException, IOException {
+        AudioInputStream in = AudioSystem.getAudioInputStream(new ByteArrayInputStream(wav));
+        AudioFormat format = in.getFormat();
+        assertEquals("expected the format rendered", OfflineRenderer.FORMAT.toString(), format.toString());
+        byte[] bytes = new byte[(int) in.getFrameLength() * format.getFrameSize()];
+        int read = 0;
+        while (read < bytes.length) {
+            int n = in.read(bytes, read, bytes.length - read);
+            assertTrue("expected as many frames as the header gives", n > 0);
+            read += n;
+        }
+        short[] samples = new short[bytes.length / 2];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) ((bytes[2 * i] & 0xFF) | (bytes[2 * i + 1] << 8));
+        }
+        return samples;
+    }
+
+    /**
+     * @return largest magnitude of samples[from..to)
+     */
+    private static int peak(short[] samples, int from, int to) {
+        int peak = 0;
+        for (int i = from; i < to; i++) {
+            peak = Math.max(peak, Math.abs(samples[i]));
+        }
+        return peak;
+    }
+}
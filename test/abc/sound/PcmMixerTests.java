@@ -0,0 +1,124 @@
+package abc.sound;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * This file contains tests on the mutable PcmMixer datatype
+ *
+ */
+public class PcmMixerTests {
+
+    /*
+     * Testing strategy:
+     *  PcmMixer(length)
+     *      length is 0, even, odd; a single block, several blocks, not a whole number of blocks
+     *
+     *  add(samples), add(samples, leftGain, rightGain)
+     *      no tracks, one track, several tracks; short samples, float samples
+     *      gains of 1, equal, different for the two channels; samples of the wrong length
+     *
+     *  mixdown(clipping) --> samples
+     *      clipping is SATURATE, ATTENUATE
+     *      every sum fits in 16 bits; sums above Short.MAX_VALUE, below Short.MIN_VALUE
+     *
+     *  peak() --> result
+     *      loudest sample positive, negative
+     */
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers no tracks, length 0 and even
+    @Test
+    public void testMixNoTracks() {
+        PcmMixer mixer = new PcmMixer(4);
+        assertEquals("expected length", 4, mixer.length());
+        assertEquals("expected silence", 0, mixer.peak(), 0);
+        assertArrayEquals("expected silence", new short[4], mixer.mixdown(PcmMixer.Clipping.SATURATE));
+        assertArrayEquals("expected nothing", new short[0], new PcmMixer(0).mixdown(PcmMixer.Clipping.ATTENUATE));
+    }
+
+    // covers length odd
+    @Test(expected=IllegalArgumentException.class)
+    public void testMixOddLength() {
+        new PcmMixer(3);
+    }
+
+    // covers one track, every sum fits, both clippings, loudest sample negative
+    @Test
+    public void testMixOneTrack() {
+        short[] track = { 0, 1, -1, Short.MAX_VALUE, Short.MIN_VALUE, 5 };
+        PcmMixer mixer = new PcmMixer(track.length);
+        mixer.add(track);
+        assertArrayEquals("expected the track", track, mixer.mixdown(PcmMixer.Clipping.SATURATE));
+        assertArrayEquals("expected the track", track, mixer.mixdown(PcmMixer.Clipping.ATTENUATE));
+        assertEquals("expected peak of the negative sample", 32768, mixer.peak(), 0);
+    }
+
+    // covers several tracks, sums above and below 16 bits, SATURATE, loudest sample positive
+    @Test
+    public void testMixSaturate() {
+        PcmMixer mixer = new PcmMixer(4);
+        mixer.add(new short[] { 30000, -30000, 100, 0 });
+        mixer.add(new short[] { 30000, -30000, -50, 0 });
+        assertEquals("expected peak of the sum", 60000, mixer.peak(), 0);
+        assertArrayEquals("expected loud sums clamped, others kept", new short[] { Short.MAX_VALUE, Short.MIN_VALUE, 50, 0 },
+                mixer.mixdown(PcmMixer.Clipping.SATURATE));
+    }
+
+    // covers several tracks, sums above and below 16 bits, ATTENUATE
+    @Test
+    public void testMixAttenuate() {
+        PcmMixer mixer = new PcmMixer(4);
+        mixer.add(new short[] { 30000, -20000, 100, 0 });
+        mixer.add(new short[] { 30000, -20000, 100, 0 });
+        short[] mix = mixer.mixdown(PcmMixer.Clipping.ATTENUATE);
+        assertEquals("expected loudest sample at full scale", Short.MAX_VALUE, mix[0], 1);
+        assertEquals("expected every sample scaled alike", -40000 * (Short.MAX_VALUE / 60000.0), mix[1], 1);
+        assertEquals("expected every sample scaled alike", 200 * (Short.MAX_VALUE / 60000.0), mix[2], 1);
+
+        PcmMixer louder = new PcmMixer(2);
+        louder.add(new short[] { 30000, 0 });
+        louder.add(new short[] { 30000, 0 });
+        short[] louderMix = louder.mixdown(PcmMixer.Clipping.ATTENUATE);
+        assertEquals("expected a mix with no negative samples scaled to fit", Short.MAX_VALUE, louderMix[0], 1);
+        assertEquals("expected silence kept", 0, louderMix[1]);
+    }
+
+    // covers gains equal and different for the two channels, float samples
+    @Test
+    public void testMixGains() {
+        PcmMixer mixer = new PcmMixer(4);
+        mixer.add(new short[] { 1000, 1000, -1000, -1000 }, 0.5f, 0.5f);
+        mixer.add(new float[] { 1000, 1000, 1000, 1000 }, 1, 0);
+        assertArrayEquals("expected each channel scaled by its gain", new short[] { 1500, 500, 500, -500 },
+                mixer.mixdown(PcmMixer.Clipping.SATURATE));
+    }
+
+    // covers several blocks, not a whole number of blocks
+    @Test
+    public void testMixSeveralBlocks() {
+        int length = 3 * 2048 + 6;
+        short[] ramp = new short[length];
+        for (int i = 0; i < length; i++) {
+            ramp[i] = (short) (i - length / 2);
+        }
+        PcmMixer mixer = new PcmMixer(length);
+        mixer.add(ramp);
+        mixer.add(ramp, -1, 0);
+        short[] mix = mixer.mixdown(PcmMixer.Clipping.SATURATE);
+        for (int i = 0; i < length; i++) {
+            assertEquals("expected sample " + i, (i % 2 == 0) ? 0 : ramp[i], mix[i]);
+        }
+    }
+
+    // covers samples of the wrong length
+    @Test(expected=IllegalArgumentException.class)
+    public void testAddWrongLength() {
+        new PcmMixer(4).add(new short[2]);
+    }
+}
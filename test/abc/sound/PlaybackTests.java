@@ -0,0 +1,126 @@
+package abc.sound;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Sequencer;
+
+import org.junit.Test;
+
+/**
+ * This file contains tests on the future SequencePlayer.play returns. They play on sequencers connected to no
+ * synthesizer, so none of them needs a sound device.
+ *
+ */
+public class PlaybackTests {
+
+    /*
+     * Testing strategy:
+     *  play(sequencer) --> future
+     *      track has no notes, some notes
+     *      future completes at the end of the track, is cancelled, is stopped by stop()
+     *      sequencer closed once future is done
+     *      played while playing; played again once done, on the same sequencer, back to back
+     *
+     *  stop()
+     *      while playing, before any playback
+     */
+
+    private final static Pitch C = new Pitch('C');
+
+    // on this machine the end of a track may be reported this many milliseconds late, and still pass
+    private final static long TOLERANCE_MILLIS = 300;
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers track has no notes, future completes, sequencer closed
+    @Test
+    public void testPlayNoNotes() throws Exception {
+        SequencePlayer player = new SequencePlayer(600, 4);
+        Sequencer sequencer = MidiSystem.getSequencer(false);
+        CompletableFuture<Void> playback = player.play(sequencer);
+        playback.get(TOLERANCE_MILLIS, TimeUnit.MILLISECONDS);
+        assertFalse("expected the sequencer closed", sequencer.isOpen());
+    }
+
+    // covers track has some notes, future completes at the end of the track, sequencer closed
+    @Test
+    public void testPlayCompletesAtEnd() throws Exception {
+        // 4 ticks a beat at 600 beats a minute: 25 ms a tick, the track ends after 200 ms
+        SequencePlayer player = player(8);
+        Sequencer sequencer = MidiSystem.getSequencer(false);
+        long start = System.nanoTime();
+        CompletableFuture<Void> playback = player.play(sequencer);
+        assertFalse("expected the music playing", playback.isDone());
+        playback.get(200 + TOLERANCE_MILLIS, TimeUnit.MILLISECONDS);
+        long millis = (System.nanoTime() - start) / 1000000;
+        assertTrue("expected the future completed at the end of the track, not after " + millis + " ms", millis >= 150);
+        assertFalse("expected the sequencer closed", sequencer.isOpen());
+        assertFalse("expected completed normally", playback.isCompletedExceptionally());
+    }
+
+    // covers future cancelled, sequencer closed; played again once done, on the same sequencer
+    @Test
+    public void testCancel() throws Exception {
+        SequencePlayer player = player(400);
+        Sequencer sequencer = MidiSystem.getSequencer(false);
+        CompletableFuture<Void> playback = player.play(sequencer);
+        assertTrue("expected the future cancelled", playback.cancel(true));
+        assertTrue("expected the future done", playback.isCancelled());
+        assertFalse("expected the sequencer closed", sequencer.isOpen());
+
+        CompletableFuture<Void> again = player.play(sequencer);
+        assertTrue("expected the sequencer open again", sequencer.isOpen());
+        playback.cancel(true);
+        assertTrue("expected the new playback untouched by the old", sequencer.isOpen() && !again.isDone());
+        again.cancel(false);
+    }
+
+    // covers stop() while playing, before any playback; played while playing
+    @Test
+    public void testStop() throws Exception {
+        SequencePlayer player = player(400);
+        player.stop();
+        Sequencer sequencer = MidiSystem.getSequencer(false);
+        CompletableFuture<Void> playback = player.play(sequencer);
+        try {
+            player.play(MidiSystem.getSequencer(false));
+            fail("expected IllegalStateException while playing");
+        } catch (IllegalStateException expected) {
+        }
+        player.stop();
+        assertTrue("expected the future cancelled", playback.isCancelled());
+        assertFalse("expected the sequencer closed", sequencer.isOpen());
+    }
+
+    // covers played back to back
+    @Test
+    public void testPlayBackToBack() throws Exception {
+        // each track ends after 100 ms; played three times, with no gap between them but the time to start
+        SequencePlayer player = player(4);
+        Sequencer sequencer = MidiSystem.getSequencer(false);
+        long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            player.play(sequencer).join();
+        }
+        long millis = (System.nanoTime() - start) / 1000000;
+        assertTrue("expected no gaps between the tracks, played in " + millis + " ms", millis < 300 + TOLERANCE_MILLIS);
+    }
+
+    /**
+     * @return a player at 600 beats a minute, 4 ticks a beat, of a note of ticks ticks
+     */
+    private static SequencePlayer player(int ticks) throws MidiUnavailableException, InvalidMidiDataException {
+        SequencePlayer player = new SequencePlayer(600, 4);
+        player.addNote(C.toMidiNote(), 0, ticks);
+        return player;
+    }
+}
@@ -0,0 +1,266 @@
+package abc.sound;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequencer;
+import javax.sound.midi.ShortMessage;
+
+import org.junit.Test;
+
+/**
+ * This file contains tests on playing tunes one after another with Playlist. The tunes play on sequencers
+ * connected to no synthesizer but a receiver that records when every note starts and ends, so none of them needs
+ * a sound device.
+ *
+ */
+public class PlaylistTests {
+
+    /*
+     * Testing strategy:
+     *  Playlist(pool, files), Playlist(pool, tunes)
+     *      one tune, many tunes; no tunes
+     *
+     *  play() --> future
+     *      tunes prepared faster than the tune before plays, slower
+     *      future completes once the last tune has played; a tune fails to prepare
+     *      played twice
+     *
+     *  stop(), future.cancel(), future completed by the caller
+     *      while a tune plays, while the first tune is prepared, before play()
+     */
+
+    private final static int C = new Pitch('C').toMidiNote();
+
+    // gap allowed between the last note of a tune ending and the first note of the next starting
+    private final static long MAX_GAP_MILLIS = 50;
+
+    // on this machine a playlist may end this many milliseconds late, and still pass
+    private final static long TOLERANCE_MILLIS = 300;
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers many tunes, prepared faster than the tune before plays, future completes once the last tune has played
+    @Test
+    public void testGapless() throws Exception {
+        Recorder recorder = new Recorder();
+        try (SequencerPool pool = pool(recorder)) {
+            // three tunes of 200 ms, each taking 100 ms to prepare
+            Playlist playlist = new Playlist(pool, Arrays.asList(tune(C, 8, 100), tune(C + 1, 8, 100), tune(C + 2, 8, 100)));
+            playlist.play().get(700 + TOLERANCE_MILLIS, TimeUnit.MILLISECONDS);
+            assertEquals("expected every tune played in order",
+                    Arrays.asList("on " + C, "off " + C, "on " + (C + 1), "off " + (C + 1), "on " + (C + 2), "off " + (C + 2)),
+                    recorder.events());
+            for (int i = 1; i < 5; i += 2) {
+                long gapMillis = (recorder.nanoTime(i + 1) - recorder.nanoTime(i)) / 1000000;
+                assertTrue("expected no gap between tunes, got " + gapMillis + " ms", gapMillis < MAX_GAP_MILLIS);
+            }
+            assertEquals("expected one sequencer for every tune", 1, pool.getSize());
+            assertEquals("expected the sequencer given back", 1, pool.getIdle());
+        }
+    }
+
+    // covers tunes prepared slower than the tune before plays
+    @Test
+    public void testSlowPreparation() throws Exception {
+        Recorder recorder = new Recorder();
+        try (SequencerPool pool = pool(recorder)) {
+            Playlist playlist = new Playlist(pool, Arrays.asList(tune(C, 2, 0), tune(C + 1, 2, 200)));
+            playlist.play().get(300 + TOLERANCE_MILLIS, TimeUnit.MILLISECONDS);
+            assertEquals("expected every tune played, once prepared", 4, recorder.events().size());
+        }
+    }
+
+    // covers Playlist(pool, files), one tune
+    @Test
+    public void testFiles() throws Exception {
+        Recorder recorder = new Recorder();
+        try (SequencerPool pool = pool(recorder)) {
+            Playlist playlist = new Playlist(pool, new File("sample_abc/single_note.abc"), new File("sample_abc/note-rest.abc"));
+            playlist.play().get(5, TimeUnit.SECONDS);
+            assertEquals("expected every note of every file",
+                    Arrays.asList("on " + C, "off " + C, "on " + C, "off " + C, "on " + (C - 3), "off " + (C - 3)),
+                    recorder.events());
+        }
+        try (SequencerPool pool = pool(recorder)) {
+            new Playlist(pool, new File("sample_abc/single_note.abc")).play().get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    // covers no tunes
+    @Test(expected=IllegalArgumentException.class)
+    public void testNoTunes() {
+        new Playlist(new SequencerPool(1));
+    }
+
+    // covers a tune fails to prepare
+    @Test
+    public void testPreparationFails() throws Exception {
+        Recorder recorder = new Recorder();
+        try (SequencerPool pool = pool(recorder)) {
+            IllegalArgumentException failure = new IllegalArgumentException("could not be parsed");
+            Playlist.Tune failing = () -> {
+                throw failure;
+            };
+            Playlist playlist = new Playlist(pool, Arrays.asList(tune(C, 2, 0), failing, tune(C + 2, 2, 0)));
+            try {
+                playlist.play().get(1, TimeUnit.SECONDS);
+                fail("expected ExecutionException");
+            } catch (ExecutionException expected) {
+                assertSame("expected the failure of the tune", failure, expected.getCause());
+            }
+            assertEquals("expected no tune played after the failing one", Arrays.asList("on " + C, "off " + C), recorder.events());
+            assertEquals("expected the sequencer given back", 1, pool.getIdle());
+        }
+    }
+
+    // covers stop() while a tune plays, played twice
+    @Test
+    public void testStop() throws Exception {
+        Recorder recorder = new Recorder();
+        try (SequencerPool pool = pool(recorder)) {
+            Playlist playlist = new Playlist(pool, Arrays.asList(tune(C, 400, 0), tune(C + 1, 400, 0)));
+            CompletableFuture<Void> playing = playlist.play();
+            recorder.await(1);
+            playlist.stop();
+            assertTrue("expected the playlist stopped", playing.isCancelled());
+            assertEquals("expected the sequencer given back", 1, pool.getIdle());
+            Thread.sleep(100);
+            assertEquals("expected no more tunes", Arrays.asList("on " + C, "off " + C), recorder.events());
+            try {
+                playlist.play();
+                fail("expected IllegalStateException");
+            } catch (IllegalStateException expected) {
+            }
+        }
+    }
+
+    // covers future completed by the caller while a tune plays
+    @Test
+    public void testCompletedByCaller() throws Exception {
+        Recorder recorder = new Recorder();
+        try (SequencerPool pool = pool(recorder)) {
+            Playlist playlist = new Playlist(pool, Arrays.asList(tune(C, 400, 0), tune(C + 1, 400, 0)));
+            CompletableFuture<Void> playing = playlist.play();
+            recorder.await(1);
+            assertTrue("expected the playlist completed", playing.complete(null));
+            assertFalse("expected the caller's completion kept", playing.isCompletedExceptionally());
+            assertEquals("expected the sequencer given back", 1, pool.getIdle());
+            Thread.sleep(100);
+            assertEquals("expected no more tunes", Arrays.asList("on " + C, "off " + C), recorder.events());
+        }
+    }
+
+    // covers future.cancel() while the first tune is prepared, stop() before play()
+    @Test
+    public void testCancel() throws Exception {
+        Recorder recorder = new Recorder();
+        try (SequencerPool pool = pool(recorder)) {
+            CompletableFuture<Void> playing = new Playlist(pool, Arrays.asList(tune(C, 4, 100))).play();
+            assertTrue("expected the playlist cancelled", playing.cancel(false));
+            try {
+                playing.join();
+                fail("expected CancellationException");
+            } catch (CancellationException expected) {
+            }
+            Thread.sleep(200);
+            assertEquals("expected no tune played", 0, recorder.events().size());
+            assertEquals("expected no sequencer leased", pool.getSize(), pool.getIdle());
+
+            Playlist stopped = new Playlist(pool, Arrays.asList(tune(C, 4, 0)));
+            stopped.stop();
+            try {
+                stopped.play();
+                fail("expected IllegalStateException");
+            } catch (IllegalStateException expected) {
+            }
+        }
+    }
+
+    /**
+     * @param note MIDI note of the tune
+     * @param ticks length of its only note, 25 ms a tick
+     * @param prepareMillis time it takes to prepare
+     * @return a tune of a single note, at 600 beats a minute, 4 ticks a beat
+     */
+    private static Playlist.Tune tune(int note, int ticks, long prepareMillis) {
+        return () -> {
+            Thread.sleep(prepareMillis);
+            SequencePlayer player = new SequencePlayer(600, 4);
+            player.addNote(note, 0, ticks);
+            return player;
+        };
+    }
+
+    /**
+     * @return a pool of a single sequencer, connected to recorder
+     */
+    private static SequencerPool pool(Recorder recorder) {
+        return new SequencerPool(1, () -> {
+            Sequencer sequencer = MidiSystem.getSequencer(false);
+            sequencer.getTransmitter().setReceiver(recorder);
+            return sequencer;
+        }, leak -> fail("expected no leaks"));
+    }
+
+    /**
+     * Receiver that records every note that starts and ends, and when
+     */
+    private static class Recorder implements Receiver {
+        private final List<String> events = new ArrayList<>();
+        private final List<Long> nanoTimes = new ArrayList<>();
+
+        @Override
+        public synchronized void send(MidiMessage message, long timeStamp) {
+            if (!(message instanceof ShortMessage)) {
+                return;
+            }
+            ShortMessage shortMessage = (ShortMessage) message;
+            // a sequencer stopped ends its notes with NOTE_ON messages of no velocity
+            if (shortMessage.getCommand() == ShortMessage.NOTE_ON && shortMessage.getData2() > 0) {
+                events.add("on " + shortMessage.getData1());
+            } else if (shortMessage.getCommand() == ShortMessage.NOTE_OFF || shortMessage.getCommand() == ShortMessage.NOTE_ON) {
+                events.add("off " + shortMessage.getData1());
+            } else {
+                return;
+            }
+            nanoTimes.add(System.nanoTime());
+            notifyAll();
+        }
+
+        @Override
+        public void close() {
+        }
+
+        synchronized List<String> events() {
+            return new ArrayList<>(events);
+        }
+
+        synchronized long nanoTime(int i) {
+            return nanoTimes.get(i);
+        }
+
+        /**
+         * Waits until at least n notes have started or ended
+         */
+        synchronized void await(int n) throws InterruptedException {
+            while (events.size() < n) {
+                wait();
+            }
+        }
+    }
+}
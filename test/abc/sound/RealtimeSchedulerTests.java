@@ -0,0 +1,285 @@
+package abc.sound;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import org.junit.Test;
+
+/**
+ * This file contains tests on playing scores in real time with RealtimeScheduler. They send to a mock Receiver
+ * that records what it is sent and when, so none of them needs a MIDI device.
+ *
+ */
+public class RealtimeSchedulerTests {
+
+    /*
+     * Testing strategy:
+     *  RealtimeScheduler(receiver), RealtimeScheduler(receiver, clock, lookahead)
+     *      no clock and no lookahead; a clock and lookahead 0, > 0; lookahead < 0, > 0 with no clock
+     *
+     *  play(score, ticksPerBeat, beatsPerMinute), join(), isPlaying()
+     *      score has no notes, a chord, notes of a single tick, a piece from sample_abc
+     *      events sent in the order SequencePlayer.addNotes tracks them, when they are due
+     *      events sent unstamped, stamped; played while playing; pitch out of range
+     *
+     *  setTempo(beatsPerMinute)
+     *      while playing, faster
+     *
+     *  stop()
+     *      while playing, after the end; unstamped, with notes sent ahead of time
+     *
+     *  getJitter() --> JitterStats, getLastTimestamp() --> timestamp
+     *      no events sent, some sent; unstamped, stamped
+     */
+
+    private final static Pitch C = new Pitch('C');
+    private final static Pitch E = new Pitch('E');
+    private final static Pitch G = new Pitch('G');
+
+    // on this machine a thread may wake this many microseconds late, and still pass the timing tests
+    private final static long TOLERANCE_MICROS = 15000;
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers score has no notes, no events sent, no clock
+    @Test
+    public void testPlayNoNotes() throws InterruptedException {
+        RecordingReceiver receiver = new RecordingReceiver();
+        RealtimeScheduler scheduler = new RealtimeScheduler(receiver);
+        assertEquals("expected nothing sent", 0, scheduler.getJitter().getEvents());
+        scheduler.play(CompiledScore.compile(new Rest(0)), 4, 120);
+        scheduler.join();
+        assertFalse("expected the score over", scheduler.isPlaying());
+        assertEquals("expected no events", 0, receiver.size());
+        assertEquals("expected no lateness", 0, scheduler.getJitter().getMaxMicros(), 0);
+    }
+
+    // covers a piece from sample_abc, notes of a single tick; events in the order of SequencePlayer.addNotes
+    @Test
+    public void testPlaySameOrderAsSequencePlayer() throws InterruptedException, MidiUnavailableException, InvalidMidiDataException {
+        Music music = Music.addVoice(Music.parsePiece(new File("sample_abc/sample1.abc")).getMusic(),
+                new Concat(new Note(C, 1), new Note(E, 4)));
+        CompiledScore score = CompiledScore.compile(music);
+        RecordingReceiver receiver = new RecordingReceiver();
+        RealtimeScheduler scheduler = new RealtimeScheduler(receiver);
+        // 64 ticks a beat at 6000 beats a minute: 156 microseconds a tick
+        scheduler.play(score, 64, 6000);
+        scheduler.join();
+
+        SequencePlayer player = new SequencePlayer(6000, 64);
+        player.addNotes(score, 0);
+        List<String> expected = new ArrayList<>();
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        try {
+            player.write(file);
+            Track track = MidiSystem.getSequence(new ByteArrayInputStream(file.toByteArray())).getTracks()[0];
+            for (int i = 0; i < track.size(); i++) {
+                MidiEvent event = track.get(i);
+                if (event.getMessage() instanceof ShortMessage) {
+                    ShortMessage message = (ShortMessage) event.getMessage();
+                    expected.add(message.getCommand() + " " + message.getData1());
+                }
+            }
+        } catch (IOException ioe) {
+            throw new AssertionError(ioe);
+        }
+        assertEquals("expected the events of SequencePlayer, in its order", expected, receiver.events());
+        assertEquals("expected every event measured", expected.size(), scheduler.getJitter().getEvents());
+    }
+
+    // covers a chord, events sent unstamped when they are due; some events sent
+    @Test
+    public void testPlayOnTime() throws InterruptedException {
+        // 4 ticks a beat at 600 beats a minute: 25 ms a tick, a note every 2 ticks
+        Music music = new Concat(new Concat(new Note(C, 2), new Note(E, 2)), Music.addVoice(new Note(G, 2), new Note(C, 2)));
+        RecordingReceiver receiver = new RecordingReceiver();
+        RealtimeScheduler scheduler = new RealtimeScheduler(receiver);
+        long start = System.nanoTime();
+        scheduler.play(CompiledScore.compile(music), 4, 600);
+        assertTrue("expected the score playing", scheduler.isPlaying());
+        scheduler.join();
+
+        long[] dueMicros = { 0, 50000, 50000, 100000, 100000, 100000, 150000, 150000 };
+        assertEquals("expected every event", dueMicros.length, receiver.size());
+        for (int i = 0; i < dueMicros.length; i++) {
+            assertEquals("expected unstamped", -1, receiver.timestamp(i));
+            long sentMicros = (receiver.nanoTime(i) - start) / 1000;
+            assertTrue("expected event " + i + " not early, at " + sentMicros, sentMicros >= dueMicros[i]);
+            assertTrue("expected event " + i + " on time, at " + sentMicros, sentMicros < dueMicros[i] + TOLERANCE_MICROS);
+        }
+        JitterStats jitter = scheduler.getJitter();
+        assertEquals("expected every event measured", dueMicros.length, jitter.getEvents());
+        assertEquals("expected no timestamp", -1, scheduler.getLastTimestamp());
+        assertTrue("expected mean no more than max: " + jitter, 0 <= jitter.getMeanMicros() && jitter.getMeanMicros() <= jitter.getMaxMicros());
+        assertTrue("expected lateness within tolerance: " + jitter, jitter.getMaxMicros() < TOLERANCE_MICROS);
+        assertTrue("expected the stats in toString", jitter.toString().startsWith("8 events"));
+    }
+
+    // covers a clock and lookahead > 0, events sent stamped
+    @Test
+    public void testPlayLookahead() throws InterruptedException {
+        // 4 ticks a beat at 600 beats a minute: 25 ms a tick; a note every 4 ticks
+        Music music = new Concat(new Concat(new Note(C, 4), new Note(E, 4)), new Note(G, 4));
+        RecordingReceiver receiver = new RecordingReceiver();
+        long lookahead = 30000;
+        RealtimeScheduler scheduler = new RealtimeScheduler(receiver, () -> 1000000, lookahead);
+        long start = System.nanoTime();
+        scheduler.play(CompiledScore.compile(music), 4, 600);
+        scheduler.join();
+
+        long[] dueMicros = { 0, 100000, 100000, 200000, 200000, 300000 };
+        assertEquals("expected every event", dueMicros.length, receiver.size());
+        for (int i = 0; i < dueMicros.length; i++) {
+            assertEquals("expected stamped with the due time on the clock", 1000000 + lookahead + dueMicros[i], receiver.timestamp(i));
+            long sentMicros = (receiver.nanoTime(i) - start) / 1000;
+            assertTrue("expected event " + i + " sent a lookahead early, at " + sentMicros, sentMicros >= dueMicros[i]);
+            assertTrue("expected event " + i + " sent a lookahead early, at " + sentMicros, sentMicros < dueMicros[i] + TOLERANCE_MICROS);
+        }
+        assertEquals("expected the timestamp of the last event", 1000000 + lookahead + 300000, scheduler.getLastTimestamp());
+    }
+
+    // covers setTempo while playing, faster
+    @Test
+    public void testSetTempo() throws InterruptedException {
+        // 1 tick a beat at 60 beats a minute: 1 s a tick, until the tempo is 6000 beats a minute, 10 ms a tick
+        Music music = new Note(C, 1);
+        for (int i = 0; i < 9; i++) {
+            music = new Concat(music, new Note(C, 1));
+        }
+        RecordingReceiver receiver = new RecordingReceiver();
+        RealtimeScheduler scheduler = new RealtimeScheduler(receiver);
+        long start = System.nanoTime();
+        scheduler.play(CompiledScore.compile(music), 1, 60);
+        receiver.await(1);
+        scheduler.setTempo(6000);
+        scheduler.join();
+        long millis = (System.nanoTime() - start) / 1000000;
+        assertEquals("expected every event", 20, receiver.size());
+        assertTrue("expected the score to speed up, played in " + millis + " ms", millis < 500);
+    }
+
+    // covers stop while playing, after the end
+    @Test
+    public void testStop() throws InterruptedException {
+        Music music = new Concat(new Note(C, 1), new Note(E, 100));
+        RecordingReceiver receiver = new RecordingReceiver();
+        RealtimeScheduler scheduler = new RealtimeScheduler(receiver);
+        scheduler.play(CompiledScore.compile(music), 1, 600);
+        receiver.await(3);
+        scheduler.stop();
+        assertFalse("expected stopped", scheduler.isPlaying());
+        List<String> events = receiver.events();
+        assertEquals("expected C played, E started, every note silenced",
+                "[144 60, 128 60, 144 64, " + ShortMessage.CONTROL_CHANGE + " 123]", events.toString());
+        scheduler.stop();
+        assertEquals("expected nothing more sent", 4, receiver.size());
+    }
+
+    // covers stop while playing, with notes sent ahead of time
+    @Test
+    public void testStopLookahead() throws InterruptedException {
+        // 1 tick a beat at 600 beats a minute: 100 ms a tick, E starting a tick after C and sent 30 ms early
+        Music music = new Concat(new Note(C, 1), new Note(E, 100));
+        RecordingReceiver receiver = new RecordingReceiver();
+        RealtimeScheduler scheduler = new RealtimeScheduler(receiver, () -> 1000000, 30000);
+        scheduler.play(CompiledScore.compile(music), 1, 600);
+        receiver.await(3);
+        scheduler.stop();
+        assertEquals("expected C played, E started, every note silenced",
+                "[144 60, 128 60, 144 64, " + ShortMessage.CONTROL_CHANGE + " 123]", receiver.events().toString());
+        assertEquals("expected E stamped a tick after C", 1130000, receiver.timestamp(2));
+        assertTrue("expected every note silenced after E starts, at " + receiver.timestamp(3),
+                receiver.timestamp(3) >= receiver.timestamp(2));
+    }
+
+    // covers played while playing, pitch out of range, lookahead < 0 and > 0 with no clock
+    @Test
+    public void testBadArguments() throws InterruptedException {
+        RealtimeScheduler scheduler = new RealtimeScheduler(new RecordingReceiver());
+        scheduler.play(CompiledScore.compile(new Note(C, 100)), 1, 600);
+        try {
+            scheduler.play(CompiledScore.compile(new Note(C, 1)), 1, 600);
+            fail("expected IllegalStateException while playing");
+        } catch (IllegalStateException expected) {
+        }
+        scheduler.stop();
+
+        CompiledScore tooHigh = CompiledScore.compile(new Note(C.transpose(7 * Pitch.OCTAVE), 1));
+        for (Runnable bad : new Runnable[] {
+                () -> scheduler.play(tooHigh, 1, 600),
+                () -> new RealtimeScheduler(new RecordingReceiver(), () -> 0, -1),
+                () -> new RealtimeScheduler(new RecordingReceiver(), null, 1000) }) {
+            try {
+                bad.run();
+                fail("expected IllegalArgumentException");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    /**
+     * Mock receiver that records every message it is sent, its timestamp and when it came
+     */
+    private static class RecordingReceiver implements Receiver {
+        private final List<String> events = new ArrayList<>();
+        private final List<Long> timestamps = new ArrayList<>();
+        private final List<Long> nanoTimes = new ArrayList<>();
+
+        @Override
+        public synchronized void send(MidiMessage message, long timeStamp) {
+            long now = System.nanoTime();
+            ShortMessage shortMessage = (ShortMessage) message;
+            events.add(shortMessage.getCommand() + " " + shortMessage.getData1());
+            timestamps.add(timeStamp);
+            nanoTimes.add(now);
+            notifyAll();
+        }
+
+        @Override
+        public void close() {
+        }
+
+        synchronized int size() {
+            return events.size();
+        }
+
+        synchronized List<String> events() {
+            return new ArrayList<>(events);
+        }
+
+        synchronized long timestamp(int i) {
+            return timestamps.get(i);
+        }
+
+        synchronized long nanoTime(int i) {
+            return nanoTimes.get(i);
+        }
+
+        /**
+         * Waits until at least n events have been sent
+         */
+        synchronized void await(int n) throws InterruptedException {
+            while (events.size() < n) {
+                wait();
+            }
+        }
+    }
+}
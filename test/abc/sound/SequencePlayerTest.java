@@ -2,6 +2,11 @@ package abc.sound;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MidiUnavailableException;
 
@@ -203,4 +208,109 @@ public class SequencePlayerTest {
             e.printStackTrace();
         }
     }
+    
+    /*
+     * Testing strategy for setNoteListener(listener):
+     *  listener is the default, a listener recording notes; notes added by addNote, by addNotes
+     */
+    
+    // covers the default listener, a recording listener, notes added by addNote and by addNotes
+    @Test
+    public void testNoteListener() throws MidiUnavailableException, InvalidMidiDataException {
+        SequencePlayer player = new SequencePlayer(140, 12);
+        player.addNote(60, 0, 12); // told to no one
+        
+        List<String> heard = new ArrayList<>();
+        player.setNoteListener((note, startTick, numTicks) -> heard.add(note + "@" + startTick + "+" + numTicks));
+        player.addNote(62, 12, 6);
+        player.addNotes(new int[] { 64, 65 }, new int[] { 24, 18 }, new int[] { 12, 6 });
+        assertEquals("expected every note added since the listener was set, in order",
+                Arrays.asList("62@12+6", "64@24+12", "65@18+6"), heard);
+        
+        player.setNoteListener(NoteListener.NONE);
+        player.addNote(67, 36, 12);
+        assertEquals("expected no more notes", 3, heard.size());
+    }
+    
+    /*
+     * Testing strategy for addNotes(notes, startTicks, numTicks):
+     *  notes are in order of start tick, out of order (voice after voice, as MultipleVoices plays them)
+     *  a note ends on the tick another one starts; a note has no duration
+     *  arrays of different lengths; a negative tick; a note ending past the last tick an int can hold
+     */
+    
+    // covers notes out of order, a note ending on the tick another starts
+    @Test
+    public void testAddNotesSameEventsInTickOrder() throws MidiUnavailableException, InvalidMidiDataException {
+        int c = new Pitch('C').toMidiNote();
+        int e = new Pitch('E').toMidiNote();
+        int[] notes = { c, e, c, e, c };
+        int[] startTicks = { 0, 12, 24, 0, 12 };
+        int[] numTicks = { 12, 12, 12, 12, 12 };
+        SequencePlayer oneAtATime = new SequencePlayer(140, 12);
+        for (int i = 0; i < notes.length; i++) {
+            oneAtATime.addNote(notes[i], startTicks[i], numTicks[i]);
+        }
+        SequencePlayer atOnce = new SequencePlayer(140, 12);
+        atOnce.addNotes(notes, startTicks, numTicks);
+        
+        List<String> events = Arrays.asList(atOnce.toString().split("\n"));
+        List<String> expected = new ArrayList<>(Arrays.asList(oneAtATime.toString().split("\n")));
+        List<String> sorted = new ArrayList<>(events);
+        Collections.sort(expected);
+        Collections.sort(sorted);
+        assertEquals("expected same events", expected, sorted);
+        
+        // the C ending on tick 12 ends before the C starting on tick 12
+        assertEquals("Event: NOTE_OFF Pitch: " + c + "  Tick: 12", events.get(2));
+        assertEquals("Event: NOTE_ON  Pitch: " + c + "  Tick: 12", events.get(5));
+    }
+    
+    // covers a note of no duration
+    @Test
+    public void testAddNotesNoDuration() throws MidiUnavailableException, InvalidMidiDataException {
+        int c = new Pitch('C').toMidiNote();
+        SequencePlayer player = new SequencePlayer(140, 12);
+        player.addNotes(new int[] { c }, new int[] { 5 }, new int[] { 0 });
+        String[] events = player.toString().split("\n");
+        assertEquals("Event: NOTE_ON  Pitch: " + c + "  Tick: 5", events[0]);
+        assertEquals("Event: NOTE_OFF Pitch: " + c + "  Tick: 5", events[1]);
+    }
+    
+    // covers arrays of different lengths
+    @Test(expected=IllegalArgumentException.class)
+    public void testAddNotesDifferentLengths() throws MidiUnavailableException, InvalidMidiDataException {
+        new SequencePlayer(140, 12).addNotes(new int[] { 60, 62 }, new int[] { 0, 12 }, new int[] { 12 });
+    }
+    
+    // covers a negative tick
+    @Test(expected=IllegalArgumentException.class)
+    public void testAddNotesNegativeTick() throws MidiUnavailableException, InvalidMidiDataException {
+        new SequencePlayer(140, 12).addNotes(new int[] { 60, 62 }, new int[] { 0, -12 }, new int[] { 12, 12 });
+    }
+    
+    // covers a note ending past the last tick an int can hold
+    @Test
+    public void testAddNotesPastLastTick() throws MidiUnavailableException, InvalidMidiDataException {
+        SequencePlayer player = new SequencePlayer(140, 12);
+        int[] notes = { 60, 62 };
+        int[] startTicks = { 0, Integer.MAX_VALUE - 5 };
+        int[] numTicks = { 12, 12 };
+        try {
+            player.addNotes(notes, startTicks, numTicks);
+            fail("expected ArithmeticException");
+        } catch (ArithmeticException expected) {
+        }
+        try {
+            player.addNotes(CompiledScore.compile(new Note(new Pitch('C'), 12)), Integer.MAX_VALUE - 5);
+            fail("expected ArithmeticException");
+        } catch (ArithmeticException expected) {
+        }
+        try {
+            player.addNote(60, Integer.MAX_VALUE - 5, 12);
+            fail("expected ArithmeticException");
+        } catch (ArithmeticException expected) {
+        }
+        assertFalse("expected no notes", player.toString().contains("NOTE_"));
+    }
 }
@@ -0,0 +1,280 @@
+package abc.sound;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Sequencer;
+
+import org.junit.Test;
+
+/**
+ * This file contains tests on pooling sequencers with SequencerPool. The pools make sequencers connected to no
+ * synthesizer, so none of them needs a sound device.
+ *
+ */
+public class SequencerPoolTests {
+
+    /*
+     * Testing strategy:
+     *  SequencerPool(maxSize, factory, leakListener)
+     *      maxSize 1, > 1, 0
+     *
+     *  acquire(), tryAcquire(timeout, unit) --> lease
+     *      a sequencer idle, none idle and pool below its size, pool at its size; pool closed
+     *      factory fails
+     *      timeout short, too long to add to System.nanoTime()
+     *
+     *  Lease.close()
+     *      sequencer open, closed by whoever leased it; lease closed twice; pool closed while leased
+     *
+     *  leaks: a lease garbage collected without being closed; reported outside the pool's lock
+     *
+     *  close()
+     *      sequencers idle, leased
+     *
+     *  SequencePlayer.play(pool)
+     *      tunes played one after another, on the same sequencer; cancelled
+     *      future completed by the caller: complete, completeExceptionally, obtrudeValue
+     */
+
+    private final static Pitch C = new Pitch('C');
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers maxSize 1, none idle and pool below its size, a sequencer idle, sequencer open
+    @Test
+    public void testAcquireReusesSequencer() throws Exception {
+        Counting factory = new Counting();
+        SequencerPool pool = new SequencerPool(1, factory, leak -> fail("expected no leaks"));
+        SequencerPool.Lease lease = pool.acquire();
+        Sequencer sequencer = lease.getSequencer();
+        assertTrue("expected the sequencer open", sequencer.isOpen());
+        lease.close();
+        assertEquals("expected the sequencer idle", 1, pool.getIdle());
+
+        try (SequencerPool.Lease again = pool.acquire()) {
+            assertSame("expected the same sequencer", sequencer, again.getSequencer());
+            assertTrue("expected the sequencer still open", sequencer.isOpen());
+        }
+        assertEquals("expected one sequencer made", 1, factory.made.size());
+        assertEquals("expected one sequencer in the pool", 1, pool.getSize());
+        pool.close();
+    }
+
+    // covers maxSize > 1, pool at its size, lease closed twice
+    @Test
+    public void testAcquireBounded() throws Exception {
+        SequencerPool pool = new SequencerPool(2, new Counting(), leak -> fail("expected no leaks"));
+        SequencerPool.Lease first = pool.acquire();
+        SequencerPool.Lease second = pool.acquire();
+        assertNotSame("expected different sequencers", first.getSequencer(), second.getSequencer());
+        assertNull("expected no sequencer free", pool.tryAcquire(50, TimeUnit.MILLISECONDS));
+
+        CompletableFuture<SequencerPool.Lease> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.acquire();
+            } catch (MidiUnavailableException | InterruptedException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        Thread.sleep(50);
+        assertFalse("expected acquire to wait for a sequencer", waiting.isDone());
+        second.close();
+        second.close();
+        SequencerPool.Lease third = waiting.get(1, TimeUnit.SECONDS);
+        assertSame("expected the sequencer given back", second.getSequencer(), third.getSequencer());
+        assertEquals("expected no more sequencers than the size", 2, pool.getSize());
+        third.close();
+        first.close();
+        pool.close();
+    }
+
+    // covers timeout too long to add to System.nanoTime()
+    @Test
+    public void testTryAcquireLongTimeout() throws Exception {
+        SequencerPool pool = new SequencerPool(1, new Counting(), leak -> fail("expected no leaks"));
+        for (TimeUnit unit : new TimeUnit[] { TimeUnit.NANOSECONDS, TimeUnit.DAYS }) {
+            SequencerPool.Lease lease = pool.acquire();
+            CompletableFuture<SequencerPool.Lease> waiting = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return pool.tryAcquire(Long.MAX_VALUE, unit);
+                } catch (MidiUnavailableException | InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+            });
+            Thread.sleep(50);
+            assertFalse("expected tryAcquire to wait for a sequencer", waiting.isDone());
+            lease.close();
+            SequencerPool.Lease again = waiting.get(1, TimeUnit.SECONDS);
+            assertNotNull("expected the sequencer given back", again);
+            again.close();
+        }
+        pool.close();
+    }
+
+    // covers sequencer closed by whoever leased it; factory fails
+    @Test
+    public void testDiscardClosedAndFailed() throws Exception {
+        Counting factory = new Counting();
+        SequencerPool pool = new SequencerPool(1, factory, leak -> fail("expected no leaks"));
+        SequencerPool.Lease lease = pool.acquire();
+        lease.getSequencer().close();
+        lease.close();
+        assertEquals("expected the closed sequencer dropped", 0, pool.getSize());
+
+        factory.fail = true;
+        try {
+            pool.acquire();
+            fail("expected MidiUnavailableException");
+        } catch (MidiUnavailableException expected) {
+        }
+        assertEquals("expected no room taken by the failure", 0, pool.getSize());
+        factory.fail = false;
+        try (SequencerPool.Lease again = pool.acquire()) {
+            assertNotSame("expected a new sequencer", lease.getSequencer(), again.getSequencer());
+        }
+        pool.close();
+    }
+
+    // covers a lease garbage collected without being closed, reported outside the pool's lock
+    @Test
+    public void testLeakDetected() throws Exception {
+        List<Throwable> leaks = new ArrayList<>();
+        Counting factory = new Counting();
+        SequencerPool[] pools = new SequencerPool[1];
+        SequencerPool pool = new SequencerPool(1, factory, leak -> {
+            assertFalse("expected the leak reported outside the lock", Thread.holdsLock(pools[0]));
+            leaks.add(leak);
+        });
+        pools[0] = pool;
+        leak(pool);
+        for (int i = 0; i < 50 && pool.getLeaks() == 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals("expected the leak found", 1, pool.getLeaks());
+        boolean fromLeak = false;
+        for (StackTraceElement frame : leaks.get(0).getStackTrace()) {
+            fromLeak |= frame.getMethodName().equals("leak");
+        }
+        assertTrue("expected the leak reported with where the sequencer was leased", fromLeak);
+        assertFalse("expected the leaked sequencer closed", factory.made.get(0).isOpen());
+        try (SequencerPool.Lease lease = pool.tryAcquire(1, TimeUnit.SECONDS)) {
+            assertNotNull("expected the room of the leak taken back", lease);
+        }
+        pool.close();
+    }
+
+    /**
+     * Leases a sequencer from pool, and drops the lease
+     */
+    private static void leak(SequencerPool pool) throws Exception {
+        pool.acquire().getSequencer();
+    }
+
+    // covers close with sequencers idle and leased, pool closed while leased, acquire once closed
+    @Test
+    public void testClose() throws Exception {
+        SequencerPool pool = new SequencerPool(2, new Counting(), leak -> fail("expected no leaks"));
+        SequencerPool.Lease idle = pool.acquire();
+        SequencerPool.Lease leased = pool.acquire();
+        idle.close();
+        pool.close();
+        assertFalse("expected the idle sequencer closed", idle.getSequencer().isOpen());
+        assertTrue("expected the leased sequencer still open", leased.getSequencer().isOpen());
+        leased.close();
+        assertFalse("expected the sequencer closed once given back", leased.getSequencer().isOpen());
+        assertEquals("expected no sequencers", 0, pool.getSize());
+        try {
+            pool.acquire();
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    // covers maxSize 0
+    @Test(expected=IllegalArgumentException.class)
+    public void testSizeZero() {
+        new SequencerPool(0);
+    }
+
+    // covers SequencePlayer.play(pool), tunes one after another on the same sequencer, cancelled
+    @Test
+    public void testPlayFromPool() throws Exception {
+        Counting factory = new Counting();
+        SequencerPool pool = new SequencerPool(1, factory, leak -> fail("expected no leaks"));
+        for (int i = 0; i < 3; i++) {
+            // 4 ticks a beat at 600 beats a minute: each tune ends after 100 ms
+            SequencePlayer player = new SequencePlayer(600, 4);
+            player.addNote(C.toMidiNote() + i, 0, 4);
+            player.play(pool).get(1, TimeUnit.SECONDS);
+            assertEquals("expected the sequencer given back", 1, pool.getIdle());
+        }
+        SequencePlayer player = new SequencePlayer(600, 4);
+        player.addNote(C.toMidiNote(), 0, 400);
+        CompletableFuture<Void> playback = player.play(pool);
+        assertEquals("expected the sequencer leased", 0, pool.getIdle());
+        playback.cancel(false);
+        assertEquals("expected the sequencer given back", 1, pool.getIdle());
+        try (SequencerPool.Lease lease = pool.acquire()) {
+            assertFalse("expected the sequencer still", lease.getSequencer().isRunning());
+        }
+        assertEquals("expected one sequencer for every tune", 1, factory.made.size());
+        pool.close();
+    }
+
+    // covers SequencePlayer.play(pool), future completed by the caller: complete, completeExceptionally, obtrudeValue
+    @Test
+    public void testPlayFromPoolCompletedByCaller() throws Exception {
+        SequencerPool pool = new SequencerPool(1, new Counting(), leak -> fail("expected no leaks"));
+        SequencePlayer player = new SequencePlayer(600, 4);
+        player.addNote(C.toMidiNote(), 0, 400);
+        List<Consumer<CompletableFuture<Void>>> completions = Arrays.asList(
+                playback -> playback.complete(null),
+                playback -> playback.completeExceptionally(new Exception("completed by the caller")),
+                playback -> playback.obtrudeValue(null));
+        for (Consumer<CompletableFuture<Void>> complete : completions) {
+            CompletableFuture<Void> playback = player.play(pool);
+            assertEquals("expected the sequencer leased", 0, pool.getIdle());
+            complete.accept(playback);
+            assertTrue("expected the playback done", playback.isDone());
+            assertEquals("expected the sequencer given back", 1, pool.getIdle());
+        }
+        // the player is free to play again, and the sequencer was stopped before it was given back
+        CompletableFuture<Void> playback = player.play(pool);
+        playback.cancel(false);
+        try (SequencerPool.Lease lease = pool.acquire()) {
+            assertFalse("expected the sequencer stopped", lease.getSequencer().isRunning());
+        }
+        pool.close();
+    }
+
+    /**
+     * Factory of sequencers connected to no synthesizer, that keeps every sequencer it makes, and fails if told to
+     */
+    private static class Counting implements SequencerPool.SequencerFactory {
+        final List<Sequencer> made = new ArrayList<>();
+        boolean fail = false;
+
+        @Override
+        public Sequencer create() throws MidiUnavailableException {
+            if (fail) {
+                throw new MidiUnavailableException("told to fail");
+            }
+            Sequencer sequencer = MidiSystem.getSequencer(false);
+            made.add(sequencer);
+            return sequencer;
+        }
+    }
+}
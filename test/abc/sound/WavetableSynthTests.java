@@ -0,0 +1,222 @@
+package abc.sound;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.zip.CRC32;
+
+import org.junit.Test;
+
+/**
+ * This file contains tests on the built-in WavetableSynth, and on rendering pieces with it. None of them needs a
+ * sound device or a soundbank.
+ *
+ */
+public class WavetableSynthTests {
+
+    /*
+     * Testing strategy:
+     *  WavetableSynth(sampleRate)
+     *      sampleRate positive, 0
+     *
+     *  start(score, framesPerTick)
+     *      score has no notes, one note, a note of a single tick, more notes at once than MAX_VOICES, a piece from
+     *      sample_abc; pitch out of range; framesPerTick positive, 0
+     *      started once, started again after rendering
+     *
+     *  render(block, frames), getPosition(), isFinished()
+     *      frames 0, less than block holds, more than block holds
+     *      audio before, during, after a note; pitch of a note
+     *      rendered in one block, in blocks of different sizes; the same score twice
+     *      allocation while rendering
+     *
+     *  OfflineRenderer.renderBuiltIn(piece, out) --> WAV audio, stats
+     *      golden checksum of a piece from sample_abc
+     */
+
+    private final static Pitch C = new Pitch('C');
+    private final static Pitch A = new Pitch('A');
+    private final static int SAMPLE_RATE = 44000;
+
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+    // covers score has no notes, frames 0, less than block holds
+    @Test
+    public void testRenderNoNotes() {
+        WavetableSynth synth = new WavetableSynth(SAMPLE_RATE);
+        assertTrue("expected nothing to play", synth.isFinished());
+        float[] block = { 1, 1, 1, 1, 1, 1 };
+        synth.render(block, 0);
+        assertEquals("expected nothing rendered", 0, synth.getPosition());
+        synth.render(block, 2);
+        assertArrayEquals("expected silence, and the rest of block untouched", new float[] { 0, 0, 0, 0, 1, 1 }, block, 0);
+        assertEquals("expected position after the frames", 2, synth.getPosition());
+    }
+
+    // covers one note; audio before, during, after a note; pitch of a note; isFinished
+    @Test
+    public void testRenderSingleNote() {
+        // 1000 frames a tick: A440 plays from frame 1000 to frame 5000, 100 frames a period
+        WavetableSynth synth = new WavetableSynth(SAMPLE_RATE);
+        synth.start(CompiledScore.compile(new Concat(new Rest(1), new Note(A, 4))), 1000);
+        float[] samples = render(synth, 10000);
+
+        assertEquals("expected silence before the note", 0, peak(samples, 0, 1000), 0);
+        assertTrue("expected sound during the note", peak(samples, 1000, 5000) > WavetableSynth.VOICE_GAIN / 2);
+        assertTrue("expected sound no louder than a voice", peak(samples, 1000, 5000) <= WavetableSynth.VOICE_GAIN);
+        for (int i = 2000; i < 2100; i++) {
+            assertEquals("expected both channels alike", samples[2 * i], samples[2 * i + 1], 0);
+            assertEquals("expected a period of 100 frames", samples[2 * i], samples[2 * (i + 100)], 10);
+        }
+        assertTrue("expected the note to die away", synth.isFinished());
+        assertEquals("expected silence after the release", 0, peak(samples, 5000 + (int) (WavetableSynth.RELEASE_SECONDS * SAMPLE_RATE) + 1, 10000), 0);
+        for (int i = 0; i < 2 * 10000; i++) {
+            assertEquals("expected left and right alike", samples[i - i % 2], samples[i], 0);
+        }
+    }
+
+    // covers a note of a single tick
+    @Test
+    public void testRenderSingleTick() {
+        WavetableSynth synth = new WavetableSynth(SAMPLE_RATE);
+        synth.start(CompiledScore.compile(Music.addVoice(new Note(C, 1), new Note(A, 2))), 1000);
+        float[] samples = render(synth, 3000);
+        WavetableSynth alone = new WavetableSynth(SAMPLE_RATE);
+        alone.start(CompiledScore.compile(new Note(A, 2)), 1000);
+        float[] aloneSamples = render(alone, 3000);
+        boolean heard = false;
+        for (int i = 0; i < 1000; i++) {
+            heard |= samples[i] != aloneSamples[i];
+        }
+        assertTrue("expected the note of a single tick heard during its tick", heard);
+    }
+
+    // covers more notes at once than MAX_VOICES
+    @Test
+    public void testRenderTooManyNotes() {
+        Music chord = new Note(C, 2);
+        for (int i = 1; i < WavetableSynth.MAX_VOICES + 10; i++) {
+            chord = Music.addVoice(chord, new Note(C.transpose(i % 48), 2));
+        }
+        WavetableSynth synth = new WavetableSynth(SAMPLE_RATE);
+        synth.start(CompiledScore.compile(chord), 1000);
+        float[] samples = render(synth, 8000);
+        assertTrue("expected no more voices than MAX_VOICES", peak(samples, 0, 8000) <= WavetableSynth.MAX_VOICES * WavetableSynth.VOICE_GAIN);
+        assertTrue("expected every voice released", synth.isFinished());
+    }
+
+    // covers rendered in one block, in blocks of different sizes, more frames than block holds; started again
+    @Test
+    public void testRenderBlockSizes() {
+        Piece piece = Music.parsePiece(new File("sample_abc/sample1.abc"));
+        CompiledScore score = CompiledScore.compile(piece.getMusic());
+        WavetableSynth synth = new WavetableSynth(SAMPLE_RATE);
+        synth.start(score, 100);
+        float[] whole = render(synth, 200000);
+
+        synth.start(score, 100);
+        float[] blocks = new float[whole.length];
+        float[] block = new float[2 * 1000];
+        int frame = 0;
+        for (int frames = 1; frame < 200000; frames = frames * 7 % 1000 + 1) {
+            frames = Math.min(frames, 200000 - frame);
+            synth.render(block, frames);
+            System.arraycopy(block, 0, blocks, 2 * frame, 2 * frames);
+            frame += frames;
+        }
+        assertArrayEquals("expected the same samples whatever the blocks", whole, blocks, 0);
+
+        try {
+            synth.render(block, 1001);
+            fail("expected IllegalArgumentException for more frames than block holds");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    // covers pitch out of range, framesPerTick 0, sampleRate 0
+    @Test
+    public void testBadArguments() {
+        WavetableSynth synth = new WavetableSynth(SAMPLE_RATE);
+        CompiledScore tooHigh = CompiledScore.compile(new Note(C.transpose(7 * Pitch.OCTAVE), 1));
+        for (Runnable bad : new Runnable[] {
+                () -> synth.start(tooHigh, 1),
+                () -> synth.start(CompiledScore.compile(new Note(C, 1)), 0),
+                () -> new WavetableSynth(0) }) {
+            try {
+                bad.run();
+                fail("expected IllegalArgumentException");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    // covers allocation while rendering
+    @Test
+    public void testRenderAllocatesNothing() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        CompiledScore score = CompiledScore.compile(Music.parsePiece(new File("sample_abc/invention.abc")).getMusic());
+        WavetableSynth synth = new WavetableSynth(SAMPLE_RATE);
+        float[] block = new float[2 * 512];
+        synth.start(score, 20);
+        synth.render(block, 512);
+
+        long allocated = threads.getThreadAllocatedBytes(threadId);
+        while (!synth.isFinished()) {
+            synth.render(block, 512);
+        }
+        long renderBytes = threads.getThreadAllocatedBytes(threadId) - allocated;
+        assertTrue("expected a render of " + synth.getPosition() + " frames to allocate nothing, got " + renderBytes + " bytes",
+                renderBytes < 1024);
+    }
+
+    // covers OfflineRenderer.renderBuiltIn; the same score twice
+    @Test
+    public void testRenderBuiltInGolden() throws IOException {
+        Piece piece = Music.parsePiece(new File("sample_abc/sample1.abc"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RenderStats stats = OfflineRenderer.renderBuiltIn(piece, out);
+        byte[] wav = out.toByteArray();
+        assertEquals("expected a WAV header and the samples", 44 + OfflineRenderer.FORMAT.getFrameSize() * stats.getFrames(), wav.length);
+
+        CRC32 crc = new CRC32();
+        crc.update(wav, 44, wav.length - 44);
+        assertEquals("expected the golden render of sample1.abc", GOLDEN_SAMPLE1_CRC, crc.getValue());
+
+        ByteArrayOutputStream again = new ByteArrayOutputStream();
+        OfflineRenderer.renderBuiltIn(piece, again);
+        assertArrayEquals("expected the same render every time", wav, again.toByteArray());
+    }
+
+    // CRC-32 of the samples of sample1.abc rendered by OfflineRenderer.renderBuiltIn; change it only on purpose
+    private static final long GOLDEN_SAMPLE1_CRC = 2368082672L;
+
+    /**
+     * @return the samples of the next frames frames synth renders
+     */
+    private static float[] render(WavetableSynth synth, int frames) {
+        float[] samples = new float[2 * frames];
+        synth.render(samples, frames);
+        return samples;
+    }
+
+    /**
+     * @return largest magnitude of the samples of frames from, ..., to-1
+     */
+    private static float peak(float[] samples, int from, int to) {
+        float peak = 0;
+        for (int i = 2 * from; i < 2 * to; i++) {
+            peak = Math.max(peak, Math.abs(samples[i]));
+        }
+        return peak;
+    }
+}